@@ -0,0 +1,55 @@
+package model;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/***
+ * Checks that LocalSearcher accepts the same ops with the incremental agenda as when it rescores
+ * every op after each step, on the fixture recipes under the fixture models and under the uniform
+ * models FixtureModelBuilder starts from. Exits with 1 if a search differs.
+ *
+ * To run (with the test classpath of this module):
+ * java model.AgendaCheck
+ */
+public class AgendaCheck {
+
+	// Ops accepted by the search of the recipe, as strings since each search has its own diagram.
+	private static List<String> search(String recipe, ScoringModels models, boolean incremental) throws IOException {
+		LocalSearcher.INCREMENTAL_AGENDA = incremental;
+		LocalSearcher searcher = SearchBenchmark.initialSearcher(BenchmarkFixtures.loadRecipe(recipe), models);
+		searcher.run();
+		List<String> steps = new ArrayList<String>();
+		for (SearchOp op : searcher.steps()) {
+			steps.add(op.toString());
+		}
+		return steps;
+	}
+
+	public static void main(String args[]) {
+		try {
+			BenchmarkFixtures.loadLexicon();
+			ScoringModels[] models = new ScoringModels[]{BenchmarkFixtures.loadModels(),
+					FixtureModelBuilder.learnModels(new HardEMStatistics(), null)};
+			String[] model_names = new String[]{"fixture models", "uniform models"};
+
+			boolean same = true;
+			for (int m = 0; m < models.length; m++) {
+				for (String recipe : BenchmarkFixtures.RECIPES) {
+					List<String> incremental = search(recipe, models[m], true);
+					List<String> full = search(recipe, models[m], false);
+					System.out.println(model_names[m] + ", " + recipe + ": " + full.size() + " steps, " +
+							(incremental.equals(full) ? "same" : "different: " + incremental + " vs " + full));
+					same &= incremental.equals(full);
+				}
+			}
+			LocalSearcher.INCREMENTAL_AGENDA = true;
+			if (!same) {
+				System.exit(1);
+			}
+		} catch (IOException ex) {
+			ex.printStackTrace();
+			System.exit(1);
+		}
+	}
+}
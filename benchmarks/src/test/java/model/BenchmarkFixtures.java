@@ -0,0 +1,88 @@
+package model;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import utils.Utils;
+import utils.WordNetLexicon;
+import data.ActionDiagram;
+
+/***
+ * The recipes, models and WordNet lexicon the benchmarks run on, read from fixtures/ on the test
+ * classpath. Each recipe is a chunked args file, recipes/NAME-args.txt, and its parsed
+ * ingredients, one per line, in recipes/NAME-ingredients.txt. The models are those written by
+ * FixtureModelBuilder, and the lexicon covers every word the benchmarks look up in WordNet.
+ */
+public class BenchmarkFixtures {
+	public static final String[] RECIPES = new String[]{"banana-muffins", "coleslaw", "french-toast"};
+
+	public static final String STR_CLASSIFIER = "models/str_classifier.model";
+	public static final String PREF_MODEL = "models/pref_model.model";
+	public static final String REV_PREF_MODEL = "models/rev_pref_model.model";
+	public static final String MIX_MODEL = "models/mix_model.model";
+	public static final String CONN_MODEL = "models/conn_model.model";
+
+	public static final String LEXICON = "wordnet_lexicon.bin";
+
+	// File of a fixture on the test classpath.
+	public static File file(String name) throws IOException {
+		URL url = BenchmarkFixtures.class.getResource("/fixtures/" + name);
+		if (url == null) {
+			throw new IOException("missing fixture " + name);
+		}
+		try {
+			return new File(url.toURI());
+		} catch (URISyntaxException ex) {
+			throw new IOException(ex);
+		}
+	}
+
+	public static void loadLexicon() throws IOException {
+		Utils.setWordNetLexicon(WordNetLexicon.readFromFile(file(LEXICON).getPath()));
+	}
+
+	public static Set<String> loadIngredients(String recipe) throws IOException {
+		Set<String> ingredients = new HashSet<String>();
+		BufferedReader br = new BufferedReader(new FileReader(file("recipes/" + recipe + "-ingredients.txt")));
+		String line;
+		while ((line = br.readLine()) != null) {
+			if (!line.trim().equals("")) {
+				ingredients.add(line.trim());
+			}
+		}
+		br.close();
+		return ingredients;
+	}
+
+	// Naive diagram of a fixture recipe, as RecipeCorpus.naiveActionDiagram makes it.
+	public static ActionDiagram loadRecipe(String recipe) throws IOException {
+		BufferedReader br = new BufferedReader(new FileReader(file("recipes/" + recipe + "-args.txt")));
+		return ActionDiagram.generateNaiveActionDiagram(recipe + "-args.txt", loadIngredients(recipe), br, false, false);
+	}
+
+	public static List<ActionDiagram> loadRecipes() throws IOException {
+		List<ActionDiagram> recipes = new ArrayList<ActionDiagram>();
+		for (String recipe : RECIPES) {
+			recipes.add(loadRecipe(recipe));
+		}
+		return recipes;
+	}
+
+	// The fixture models, without a chunker since scoring does not use one.
+	public static ScoringModels loadModels() throws IOException {
+		return new ScoringModels(null,
+				ThreeWayStringClassifier.readPhraseIdentifierFromFile(file(STR_CLASSIFIER).getPath()),
+				SelectionalPreferenceModel.readModelFromFile(file(PREF_MODEL).getPath()),
+				RevSelectionalPreferenceModel.readModelFromFile(file(REV_PREF_MODEL).getPath()),
+				IBM1MixturesModel.readModelFromFile(file(MIX_MODEL).getPath()),
+				ConnectionsModel.readFromFile(file(CONN_MODEL).getPath()));
+	}
+}
@@ -0,0 +1,41 @@
+package model;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+import utils.WordNetLexicon;
+
+/***
+ * Writes the fixture WordNet lexicon, fixture_directory/wordnet_lexicon.bin, for the words of
+ * fixture_directory/wordnet_vocabulary.txt, one per line. Needs JAWS and the WordNet
+ * dictionary, as WordNetLexicon.main does.
+ *
+ * To run (with the test classpath of this module):
+ * java model.FixtureLexiconBuilder fixture_directory
+ */
+public class FixtureLexiconBuilder {
+
+	public static void main(String args[]) {
+		if (args.length != 1) {
+			System.out.println("Usage: FixtureLexiconBuilder fixture_directory");
+			System.exit(1);
+		}
+		try {
+			Set<String> words = new HashSet<String>();
+			BufferedReader br = new BufferedReader(new FileReader(args[0] + "/wordnet_vocabulary.txt"));
+			String line;
+			while ((line = br.readLine()) != null) {
+				words.add(line);
+			}
+			br.close();
+			System.out.println("words: " + words.size());
+			WordNetLexicon.build(words, args[0] + "/" + BenchmarkFixtures.LEXICON);
+		} catch (IOException ex) {
+			ex.printStackTrace();
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,73 @@
+package model;
+
+import java.io.File;
+import java.util.List;
+import java.util.Set;
+
+import model.SelectionalPreferenceModel.PrefType;
+import utils.Pair;
+import data.ActionDiagram;
+
+/***
+ * Writes the fixture models: hard EM as in GraphScorerHardEMLearner on the fixture recipes,
+ * starting from the uniform models learned from no counts. The models of the last iteration
+ * and the IBM1 data they were learned from are written to fixture_directory/models/.
+ *
+ * To run (with the test classpath of this module):
+ * java model.FixtureModelBuilder fixture_directory [num_iterations]
+ */
+public class FixtureModelBuilder {
+
+	// M-step of GraphScorerHardEMLearner, in memory. A node of every preference type is added,
+	// since the scorer needs a prior for each and a few recipes do not have them all.
+	static ScoringModels learnModels(HardEMStatistics stats, IBM1MixturesModel mixtures_model) {
+		for (PrefType pref : PrefType.values()) {
+			stats.rev_model_learner.ttl++;
+			stats.rev_model_learner.pref_cnt[pref.ordinal()]++;
+		}
+		return new ScoringModels(null, stats.str_stats.classifier(), stats.pref_stats.computeModel(),
+				stats.rev_model_learner.computeModel(), mixtures_model, stats.conn_model_learner.compute());
+	}
+
+	public static void main(String args[]) {
+		if (args.length < 1) {
+			System.out.println("Usage: FixtureModelBuilder fixture_directory [num_iterations]");
+			System.exit(1);
+		}
+		String model_dir = args[0] + "/models/";
+		int num_iters = 2;
+		if (args.length >= 2) {
+			num_iters = Integer.parseInt(args[1]);
+		}
+		try {
+			BenchmarkFixtures.loadLexicon();
+
+			ScoringModels models = learnModels(new HardEMStatistics(), null);
+			List<Pair<String, Set<String>>> mix_data = null;
+			for (int iter = 0; iter < num_iters; iter++) {
+				// parsing commits the connections to the diagrams, so each iteration starts from new ones
+				List<ActionDiagram> recipes = BenchmarkFixtures.loadRecipes();
+				HardEMStatistics stats = GraphScorerHardEMLearner.parseRecipes(recipes, models, 1);
+				// the mix_and_loc model, since few recipes give next to no mix data of their own
+				stats.mix_part_pairs.addAll(stats.loc_part_pairs);
+				stats.mix_tkns.addAll(stats.loc_tkns);
+				models = learnModels(stats,
+						IBM1MixturesModel.learnModelFromData(stats.mix_tkns, stats.mix_part_pairs, models.mixtures_model));
+				mix_data = stats.mix_part_pairs;
+				System.out.println("iteration " + iter + ": " + stats.search_steps + " search steps, " +
+						models.mixtures_model.emSummary());
+			}
+
+			new File(model_dir).mkdirs();
+			models.str_classifier.writeToFile(model_dir + "str_classifier.model");
+			models.selectional_pref_model.writeToFile(model_dir + "pref_model.model");
+			models.rev_selectional_pref_model.writeToFile(model_dir + "rev_pref_model.model");
+			models.mixtures_model.writeToFile(model_dir + "mix_model.model");
+			IBM1MixturesModel.writeDataToFile(mix_data, model_dir + "mix_data.model");
+			models.connection_model.writeToFile(model_dir + "conn_model.model");
+		} catch (Exception ex) {
+			ex.printStackTrace();
+			System.exit(1);
+		}
+	}
+}
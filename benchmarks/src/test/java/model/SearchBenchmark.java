@@ -0,0 +1,188 @@
+package model;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import model.SelectionalPreferenceModel.PrefType;
+import model.SelectionalPreferenceModel.SelectionalPreference;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import utils.Pair;
+import data.ActionDiagram;
+import data.ActionDiagram.ActionNode;
+import data.RecipeEvent.Argument;
+
+/***
+ * The local search and scoring hot paths on each fixture recipe: LocalSearcher.run,
+ * GraphScorer.getGraphScore(SearchOp), GraphInfo.applySearchOp/popSearchOp, GraphInfo.updateNode
+ * and the model lookups they make. Except for LocalSearcher.run, a benchmark op is one pass over
+ * the agenda ops, nodes or lookups of the recipe.
+ *
+ * The graphs are set up as GraphScorerHardEMLearner.parseRecipe sets them up before the search.
+ * The lookups are those made for the graph it finds: its verbs and preferences, the last token
+ * of each of its argument spans, and each span that is not an ingredient span as a mixture of
+ * the ingredients of each earlier node, as the scorer looks it up for an op connecting the two.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SearchBenchmark {
+
+	@Param({"banana-muffins", "coleslaw", "french-toast"})
+	public String recipe;
+
+	private ScoringModels models;
+	private ActionDiagram ad;
+	private GraphInfo gi;
+	private GraphScorer scorer;
+	private List<SearchOp> ops;
+
+	// arguments of the model lookups
+	private List<Pair<String, PrefType>> verb_prefs = new ArrayList<Pair<String, PrefType>>();
+	private List<String> phrases = new ArrayList<String>();
+	private List<Pair<String, Set<String>>> mixes = new ArrayList<Pair<String, Set<String>>>();
+
+	// The initialized searcher of the recipe's linear graph.
+	static LocalSearcher initialSearcher(ActionDiagram ad, ScoringModels models) {
+		GraphInfo gi = new GraphInfo(ad, true, true, models.str_classifier, models.selectional_pref_model);
+		GraphScorer scorer = new GraphScorer(models, gi);
+		gi.update(scorer);
+		LinearGraphInfoInitializer.initialize(gi, scorer, true, true);
+		scorer.initNodeScores();
+		LocalSearcher searcher = new LocalSearcher(gi, scorer);
+		searcher.initialize();
+		return searcher;
+	}
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		BenchmarkFixtures.loadLexicon();
+		models = BenchmarkFixtures.loadModels();
+
+		ad = BenchmarkFixtures.loadRecipe(recipe);
+		LocalSearcher searcher = initialSearcher(ad, models);
+		gi = searcher.graphInfo();
+		scorer = new GraphScorer(models, gi);
+		ops = searcher.agendaOps();
+
+		// parsing commits the connections to its diagram, so it gets its own
+		GraphInfo parsed = GraphScorerHardEMLearner.parseRecipe(BenchmarkFixtures.loadRecipe(recipe), models);
+		ActionDiagram parsed_ad = parsed.actionDiagram();
+		SpanScoreCache span_cache = parsed.spanScoreCache(models.str_classifier, models.mixtures_model);
+		for (int n = 0; n < parsed_ad.numNodes(); n++) {
+			ActionNode node = parsed_ad.getNodeAtIndex(n);
+			SelectionalPreference pref = parsed.getSelectionalPreferencesOfNode(node);
+			verb_prefs.add(new Pair<String, PrefType>(node.event().predicate(), pref.pref_type));
+			List<Argument> args = new ArrayList<Argument>(Arrays.asList(pref.arg_arr));
+			args.addAll(pref.other_args);
+			for (Argument arg : args) {
+				addLastTokens(arg.ingredientSpans());
+				addLastTokens(arg.nonIngredientSpans());
+				// the span as a mixture of the ingredients of each earlier node it could be connected to
+				for (String span : arg.nonIngredientSpans()) {
+					if (span.trim().equals("")) {
+						continue;
+					}
+					String mix = span_cache.spanTerms(span).noun_stem_string;
+					for (int o = 0; o < n; o++) {
+						Set<String> ings = parsed.getIngSpansForNode(parsed_ad.getNodeAtIndex(o));
+						if (ings != null && ings.size() != 0) {
+							mixes.add(new Pair<String, Set<String>>(mix, ings));
+						}
+					}
+				}
+			}
+		}
+		if (phrases.isEmpty() || mixes.isEmpty()) {
+			throw new IllegalStateException("No phrases or mixtures in recipe " + recipe + ": " + phrases + ", " + mixes);
+		}
+	}
+
+	private void addLastTokens(List<String> spans) {
+		for (String span : spans) {
+			if (!span.trim().equals("")) {
+				String[] split = span.trim().split(" ");
+				phrases.add(split[split.length - 1]);
+			}
+		}
+	}
+
+	// A searcher that has not run yet, for each call of localSearcherRun.
+	@State(Scope.Thread)
+	public static class SearcherState {
+		public LocalSearcher searcher;
+
+		@Setup(Level.Invocation)
+		public void setup(SearchBenchmark benchmark) {
+			searcher = initialSearcher(benchmark.ad, benchmark.models);
+		}
+	}
+
+	@Benchmark
+	public int localSearcherRun(SearcherState state) {
+		state.searcher.run();
+		return state.searcher.numSteps();
+	}
+
+	@Benchmark
+	public void graphScorerGetGraphScore(Blackhole bh) {
+		for (SearchOp op : ops) {
+			bh.consume(scorer.getGraphScore(op));
+		}
+	}
+
+	@Benchmark
+	public void graphInfoApplyAndPopSearchOp() {
+		for (SearchOp op : ops) {
+			gi.applySearchOp(op, scorer);
+			gi.popSearchOp(scorer);
+		}
+	}
+
+	@Benchmark
+	public void graphInfoUpdateNode() {
+		for (int n = 0; n < ad.numNodes(); n++) {
+			gi.updateNode(scorer, ad.getNodeAtIndex(n));
+		}
+	}
+
+	@Benchmark
+	public void revSelectionalPreferenceModelLprobVerbGivenPref(Blackhole bh) {
+		for (Pair<String, PrefType> verb_pref : verb_prefs) {
+			bh.consume(models.rev_selectional_pref_model.lprobVerbGivenPref(verb_pref.getFirst(), verb_pref.getSecond()));
+		}
+	}
+
+	@Benchmark
+	public void threeWayStringClassifierLprobPhraseGivenRaw(Blackhole bh) {
+		for (String phrase : phrases) {
+			bh.consume(models.str_classifier.lprobPhraseGivenRaw(phrase, true));
+		}
+	}
+
+	@Benchmark
+	public void ibm1MixturesModelLogProbOfMixGivenIngs(Blackhole bh) {
+		for (Pair<String, Set<String>> mix : mixes) {
+			bh.consume(models.mixtures_model.logProbOfMixGivenIngs("", mix.getFirst(), mix.getSecond()));
+		}
+	}
+}
@@ -681,7 +681,7 @@ public class ActionDiagram implements Serializable {
 					for (String arg : args) {
 						int space = arg.indexOf(' ');
 						if (space == -1) {
-							List<String> tags = Utils.lemmatizer_.tag(arg);
+							List<String> tags = Utils.lemmatizer().tag(arg);
 							if (tags.size() == 0 || tags.get(0).equals("RB")) {
 								Argument a = event.addOtherArgument(arg);
 								String[] split = arg.split(",| and ");
@@ -744,7 +744,7 @@ public class ActionDiagram implements Serializable {
 							}
 						} else {
 							String first = arg.substring(0, space);
-							List<String> tags = Utils.lemmatizer_.tag(first);
+							List<String> tags = Utils.lemmatizer().tag(first);
 							if (tags.get(0).matches("IN|TO")) {
 								if (tags.get(0).matches("TO")) {
 									String prep_str = arg.substring(space + 1);
@@ -755,7 +755,7 @@ public class ActionDiagram implements Serializable {
 									} else {
 										next_word = prep_str.substring(0, second_space);
 									}
-									List<String> ts = Utils.lemmatizer_.tag(next_word);
+									List<String> ts = Utils.lemmatizer().tag(next_word);
 									//								System.out.println(next_word + " " +  ts);
 									if (ts.get(0).matches("RB|VB") && !Utils.isMostlyAdjectiveInWordNet(next_word)
 											&& !Utils.isMostlyNounInWordNet(next_word)) {
@@ -894,15 +894,27 @@ public class ActionDiagram implements Serializable {
 	 * @return the ActionDiagram created by parsing arg_file
 	 */
 	public static ActionDiagram generateNaiveActionDiagramFromFile(File arg_file, File fulltext_file, boolean use_ingredient_annotations, boolean use_tokenizer) {
-		String recipe_name = arg_file.getName();
+		Set<String> recipe_ingredients = null;
+		BufferedReader br = null;
+		try {
+			recipe_ingredients = IngredientParser.parseIngredientsFromFullTextFile(fulltext_file);
+			br = new BufferedReader(new FileReader(arg_file));
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.exit(1);
+		}
+		return generateNaiveActionDiagram(arg_file.getName(), recipe_ingredients, br, use_ingredient_annotations, use_tokenizer);
+	}
+
+	// Diagram of a recipe from its parsed ingredients and the lines of its arg file. Closes br.
+	public static ActionDiagram generateNaiveActionDiagram(String recipe_name, Set<String> recipe_ingredients, 
+			BufferedReader br, boolean use_ingredient_annotations, boolean use_tokenizer) {
 		ActionDiagram ad = new ActionDiagram(recipe_name);
 
 
 		try {
-			Set<String> recipe_ingredients = IngredientParser.parseIngredientsFromFullTextFile(fulltext_file);
 			ad.addIngredients(recipe_ingredients);
 
-			BufferedReader br = new BufferedReader(new FileReader(arg_file));
 			String line;
 			String sent_str = "";
 			int sent_id = 0;
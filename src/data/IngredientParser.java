@@ -27,7 +27,19 @@ import utils.Utils;
  */
 public class IngredientParser {
 
-	private static Lemmatizer lemmatizer_ = new Lemmatizer();
+	// loads the CoreNLP tagger models, so it is only created when an ingredient list is first tagged
+	private static volatile Lemmatizer lemmatizer_ = null;
+
+	private static Lemmatizer lemmatizer() {
+		if (lemmatizer_ == null) {
+			synchronized (IngredientParser.class) {
+				if (lemmatizer_ == null) {
+					lemmatizer_ = new Lemmatizer();
+				}
+			}
+		}
+		return lemmatizer_;
+	}
 
 	/**
 	 * Reads in the ingredient list from a file and extracts the ingredients
@@ -73,7 +85,7 @@ public class IngredientParser {
 					}
 					ing = ing.replace(",", "").replace("(", "").replace(")", "").replace(":", "").replace("  ", " ");
 					Pair<String, String> amount_and_ingredient = Measurements.splitAmountString(ing);
-					Pair<List<String>, List<String>> tagsAndTokens = lemmatizer_.tagAndTokenize(amount_and_ingredient.getSecond());
+					Pair<List<String>, List<String>> tagsAndTokens = lemmatizer().tagAndTokenize(amount_and_ingredient.getSecond());
 					//				System.out.println(tagsAndTokens);
 					String new_ingredient_str = "";
 					List<String> tags = tagsAndTokens.getFirst();
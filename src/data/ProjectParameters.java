@@ -16,11 +16,15 @@ public class ProjectParameters {
 	public static String FULLTEXT_SUFFIX = "-fulltext";
 	public static String MODEL_SUFFIX = "-model";
 	public static String CHUNKED_SUFFIX = "-chunked";
+	// WordNetLexicon of the corpus vocabulary, in DEFAULT_DATA_DIRECTORY
+	public static String WORDNET_LEXICON_FILE = "wordnet_lexicon.bin";
 	public static boolean VERBOSE = false;
 	public static boolean INCORPORATE_WHEN_CONNECTING = true;
 	public static boolean ALWAYS_INCORPORATE_IMP_OBJ = false;
 	public static boolean USE_LEXICALIZED_FEATURES = false;
 	public static int TOKEN_NUM = 1;
+	// number of recipes parsed in parallel during training
+	public static int NUM_THREADS = 1;
 	public static String[] ALL_RECIPE_TYPES = {
 		"BananaMuffins", "PulledPork", "PumpkinPie", "VeggiePizza", 
 		"BeefMeatLoaf", "ChickenSalad", "BeefChilli", "BeefStroganoff", "CarrotCake", "MacAndCheese", 
@@ -0,0 +1,255 @@
+package data;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import utils.Pair;
+import utils.Utils;
+
+/***
+ * Preprocessed recipes: for each recipe, the ingredients parsed from its full text file (the
+ * part that needs the tagger) and the text of its arg file. A naive ActionDiagram is rebuilt
+ * from them with ActionDiagram.generateNaiveActionDiagram, giving the same diagram as
+ * generateNaiveActionDiagramFromFile without re-reading or re-tagging the recipe files. The
+ * diagrams are rebuilt every time because parsing a recipe changes its diagram.
+ *
+ * The file is memory-mapped. All numbers are big-endian, strings are an int length and UTF-8:
+ *
+ * int MAGIC, int VERSION, int num_recipes
+ * for each recipe: arg file path, long modified, long length, full text file path, long modified,
+ *   long length, int record offset (from the first record)
+ * for each recipe: int num_ingredients, the ingredients, the arg file text
+ *
+ * A recipe whose files changed since the corpus was written is read from its files again.
+ *
+ * To build:
+ * java RecipeCorpus corpus_file
+ *
+ * which preprocesses the recipes of Utils.getFileList().
+ */
+public class RecipeCorpus {
+	public static final int MAGIC = 0x52435031; // "RCP1"
+	public static final int VERSION = 1;
+
+	// read the recipes through DEFAULT_DATA_DIRECTORY + RECIPE_CORPUS_FILE when it has them
+	public static boolean USE_RECIPE_CORPUS = true;
+	public static String RECIPE_CORPUS_FILE = "recipe_corpus.bin";
+
+	private static RecipeCorpus default_corpus_ = null;
+
+	private ByteBuffer buffer_;
+	private int records_start_;
+	private Map<String, Integer> arg_file_ids_ = new HashMap<String, Integer>();
+	private String[] fulltext_paths_;
+	private long[] file_info_;
+	private int[] offsets_;
+
+	public RecipeCorpus(String filename) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(filename, "r");
+		FileChannel channel = file.getChannel();
+		buffer_ = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		file.close();
+
+		if (buffer_.getInt() != MAGIC) {
+			throw new IOException(filename + " is not a recipe corpus");
+		}
+		int version = buffer_.getInt();
+		if (version != VERSION) {
+			throw new IOException(filename + " has corpus version " + version + ", expected " + VERSION);
+		}
+		int num_recipes = buffer_.getInt();
+		fulltext_paths_ = new String[num_recipes];
+		file_info_ = new long[4 * num_recipes];
+		offsets_ = new int[num_recipes];
+		for (int i = 0; i < num_recipes; i++) {
+			arg_file_ids_.put(readString(buffer_), i);
+			file_info_[4 * i] = buffer_.getLong();
+			file_info_[4 * i + 1] = buffer_.getLong();
+			fulltext_paths_[i] = readString(buffer_);
+			file_info_[4 * i + 2] = buffer_.getLong();
+			file_info_[4 * i + 3] = buffer_.getLong();
+			offsets_[i] = buffer_.getInt();
+		}
+		records_start_ = buffer_.position();
+	}
+
+	public int size() {
+		return offsets_.length;
+	}
+
+	private static String readString(ByteBuffer buffer) throws IOException {
+		byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		return new String(bytes, "UTF-8");
+	}
+
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		byte[] bytes = s.getBytes("UTF-8");
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	// Id of the recipe of these files, or -1 if it is not in the corpus or its files changed.
+	public int find(File arg_file, File fulltext_file) {
+		Integer id = arg_file_ids_.get(arg_file.getAbsolutePath());
+		if (id == null) {
+			return -1;
+		}
+		if (!fulltext_paths_[id].equals(fulltext_file.getAbsolutePath()) ||
+				file_info_[4 * id] != arg_file.lastModified() || file_info_[4 * id + 1] != arg_file.length() ||
+				file_info_[4 * id + 2] != fulltext_file.lastModified() || file_info_[4 * id + 3] != fulltext_file.length()) {
+			return -1;
+		}
+		return id;
+	}
+
+	public ActionDiagram diagram(int id, String recipe_name, boolean use_ingredient_annotations, boolean use_tokenizer) {
+		Set<String> ingredients = new HashSet<String>();
+		String arg_text = null;
+		try {
+			ByteBuffer record = buffer_.duplicate();
+			record.position(records_start_ + offsets_[id]);
+			int num_ingredients = record.getInt();
+			for (int i = 0; i < num_ingredients; i++) {
+				ingredients.add(readString(record));
+			}
+			arg_text = readString(record);
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.exit(1);
+		}
+		return ActionDiagram.generateNaiveActionDiagram(recipe_name, ingredients,
+				new BufferedReader(new StringReader(arg_text)), use_ingredient_annotations, use_tokenizer);
+	}
+
+	// Preprocesses the recipes and writes the corpus.
+	public static void build(List<Pair<File, File>> files, String filename) throws IOException {
+		ByteArrayOutputStream index_bytes = new ByteArrayOutputStream();
+		DataOutputStream index = new DataOutputStream(index_bytes);
+		ByteArrayOutputStream record_bytes = new ByteArrayOutputStream();
+		DataOutputStream records = new DataOutputStream(record_bytes);
+		Set<String> seen = new HashSet<String>();
+		int num_recipes = 0;
+		for (Pair<File, File> instance : files) {
+			File arg_file = instance.getFirst();
+			File fulltext_file = instance.getSecond();
+			if (!seen.add(arg_file.getAbsolutePath())) {
+				continue;
+			}
+			writeString(index, arg_file.getAbsolutePath());
+			index.writeLong(arg_file.lastModified());
+			index.writeLong(arg_file.length());
+			writeString(index, fulltext_file.getAbsolutePath());
+			index.writeLong(fulltext_file.lastModified());
+			index.writeLong(fulltext_file.length());
+			index.writeInt(records.size());
+
+			Set<String> ingredients = IngredientParser.parseIngredientsFromFullTextFile(fulltext_file);
+			records.writeInt(ingredients.size());
+			for (String ingredient : ingredients) {
+				writeString(records, ingredient);
+			}
+			writeString(records, readFile(arg_file));
+			num_recipes++;
+		}
+
+		File file = new File(filename);
+		File tmp_file = new File(filename + ".tmp");
+		DataOutputStream out = new DataOutputStream(new FileOutputStream(tmp_file));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(num_recipes);
+		index_bytes.writeTo(out);
+		record_bytes.writeTo(out);
+		out.close();
+		if (!tmp_file.renameTo(file)) {
+			file.delete();
+			if (!tmp_file.renameTo(file)) {
+				throw new IOException("Could not rename " + tmp_file + " to " + file);
+			}
+		}
+	}
+
+	private static String readFile(File file) throws IOException {
+		StringBuilder text = new StringBuilder();
+		BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(file)));
+		char[] buf = new char[8192];
+		int n;
+		while ((n = br.read(buf)) != -1) {
+			text.append(buf, 0, n);
+		}
+		br.close();
+		return text.toString();
+	}
+
+	// Loads DEFAULT_DATA_DIRECTORY + RECIPE_CORPUS_FILE, first building it from the given recipes
+	// if it does not exist.
+	public static synchronized RecipeCorpus loadDefault(List<Pair<File, File>> files) throws IOException {
+		String filename = ProjectParameters.DEFAULT_DATA_DIRECTORY + RECIPE_CORPUS_FILE;
+		if (!new File(filename).exists()) {
+			System.out.println("Preprocessing " + files.size() + " recipes into " + filename);
+			build(files, filename);
+		}
+		default_corpus_ = new RecipeCorpus(filename);
+		return default_corpus_;
+	}
+
+	private static synchronized RecipeCorpus defaultCorpus() {
+		if (default_corpus_ == null) {
+			String filename = ProjectParameters.DEFAULT_DATA_DIRECTORY + RECIPE_CORPUS_FILE;
+			if (new File(filename).exists()) {
+				try {
+					default_corpus_ = new RecipeCorpus(filename);
+				} catch (IOException e) {
+					e.printStackTrace();
+					System.exit(1);
+				}
+			}
+		}
+		return default_corpus_;
+	}
+
+	// Same as ActionDiagram.generateNaiveActionDiagramFromFile, from the corpus when it has the
+	// recipe.
+	public static ActionDiagram naiveActionDiagram(File arg_file, File fulltext_file,
+			boolean use_ingredient_annotations, boolean use_tokenizer) {
+		RecipeCorpus corpus = (USE_RECIPE_CORPUS ? defaultCorpus() : null);
+		if (corpus != null) {
+			int id = corpus.find(arg_file, fulltext_file);
+			if (id != -1) {
+				return corpus.diagram(id, arg_file.getName(), use_ingredient_annotations, use_tokenizer);
+			}
+		}
+		return ActionDiagram.generateNaiveActionDiagramFromFile(arg_file, fulltext_file, use_ingredient_annotations, use_tokenizer);
+	}
+
+	public static void main(String args[]) {
+		if (args.length != 1) {
+			System.out.println("Usage: RecipeCorpus corpus_file");
+			System.exit(1);
+		}
+		try {
+			List<Pair<File, File>> files = Utils.getFileList();
+			build(files, args[0]);
+			System.out.println("recipes: " + new RecipeCorpus(args[0]).size());
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.exit(1);
+		}
+	}
+}
@@ -1242,7 +1242,7 @@ public class RecipeSentenceSegmenter {
 			String tag = tags.get(i);
 			if (tag.equals(PREDICATE)) {
 				if (!had_coord && has_other_word) {
-					List<String> best_tag = Utils.lemmatizer_.tag(words[i]);
+					List<String> best_tag = Utils.lemmatizer().tag(words[i]);
 					if (!best_tag.get(0).equals("VB")) {
 						return false;
 					}
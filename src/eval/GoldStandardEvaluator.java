@@ -33,6 +33,7 @@ import data.ActionDiagram;
 import data.ActionDiagram.ActionNode;
 import data.RecipeSentenceSegmenter;
 import data.ProjectParameters;
+import data.RecipeCorpus;
 import data.RecipeEvent;
 import data.RecipeEvent.Argument;
 import data.RecipeEvent.Argument.Type;
@@ -1264,7 +1265,7 @@ public class GoldStandardEvaluator {
 			int iter, RecipeSentenceSegmenter chunker, GraphScorer gs) {
 
 		Results results = new Results();
-		ActionDiagram ad = ActionDiagram.generateNaiveActionDiagramFromFile(arg_file, fulltext_file, false, false);
+		ActionDiagram ad = RecipeCorpus.naiveActionDiagram(arg_file, fulltext_file, false, false);
 
 		GraphInfo gi = new GraphInfo(ad, true, true, gs.str_classifier, gs.selectional_pref_model);
 		System.out.println(gi.visible_arg_to_type_);
@@ -1,13 +1,16 @@
 package model;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.Map;
+import java.util.List;
 import java.util.Set;
 
 import model.ConnectionsModel.CONN_TYPE;
 import utils.Triple;
+import data.ActionDiagram;
 import data.ActionDiagram.ActionNode;
 import data.RecipeEvent.Argument;
 
@@ -26,7 +29,6 @@ public class Connections {
 			this.destination = destination;
 			this.type = type;
 			this.loc_flow = false;
-			genString();
 		}
 		
 		public Connection(ActionNode origin, Triple<ActionNode, Argument, String> destination, 
@@ -35,25 +37,67 @@ public class Connections {
 			this.destination = destination;
 			this.type = type;
 			this.loc_flow = loc_flow;
-			genString();
 		}
 		
 		public String toString() {
+			if (str_ == null) {
+				genString();
+			}
 			return str_;
 		}
 		
 		public void genString() {
 			str_ = origin + " -> " + destination + " " + type.toString() + 
-					(loc_flow && type != CONN_TYPE.LOC? "+LOC" : "");
+					(locFlow() ? "+LOC" : "");
+		}
+
+		private boolean locFlow() {
+			return loc_flow && type != CONN_TYPE.LOC;
 		}
 		
+		// Identity is the origin, the destination (node, argument identity, span), the type and
+		// the location flow. Neither hashing nor comparing allocates.
 		public int hashCode() {
-			return str_.hashCode();
+			int hash = origin.index();
+			hash = 31 * hash + destination.getFirst().index();
+			hash = 31 * hash + System.identityHashCode(destination.getSecond());
+			hash = 31 * hash + destination.getThird().hashCode();
+			hash = 31 * hash + type.ordinal();
+			return 2 * hash + (locFlow() ? 1 : 0);
 		}
 
 		@Override
 		public int compareTo(Connection arg0) {
-			return str_.compareTo(arg0.str_);
+			int cmp = origin.index() - arg0.origin.index();
+			if (cmp != 0) {
+				return cmp;
+			}
+			cmp = destination.getFirst().index() - arg0.destination.getFirst().index();
+			if (cmp != 0) {
+				return cmp;
+			}
+			cmp = destination.getThird().compareTo(arg0.destination.getThird());
+			if (cmp != 0) {
+				return cmp;
+			}
+			Argument arg = destination.getSecond();
+			Argument other_arg = arg0.destination.getSecond();
+			if (arg != other_arg) {
+				cmp = arg.type().compareTo(other_arg.type());
+				if (cmp != 0) {
+					return cmp;
+				}
+				cmp = arg.string().compareTo(other_arg.string());
+				if (cmp != 0) {
+					return cmp;
+				}
+				return arg.compareTo(other_arg);
+			}
+			cmp = type.compareTo(arg0.type);
+			if (cmp != 0) {
+				return cmp;
+			}
+			return (locFlow() ? 1 : 0) - (arg0.locFlow() ? 1 : 0);
 		}
 		
 		public boolean equals(Object obj) {
@@ -64,34 +108,96 @@ public class Connections {
 		}
 	}
 	
-	public Map<ActionNode, Set<Connection>> origin_to_connections;
-	public Map<Triple<ActionNode, Argument, String>, Connection> dest_to_connection;
-	public Map<ActionNode, Set<Connection>> dest_node_to_connections;
-	
-	public Connections() {
-		origin_to_connections = new HashMap<ActionNode, Set<Connection>>();
-		dest_to_connection = new HashMap<Triple<ActionNode, Argument, String>, Connection>();
-		dest_node_to_connections = new HashMap<ActionNode, Set<Connection>>();
+	// destinations are dense slot ids; per slot, the connection into it and its origin's index (-1 if none)
+	private DestinationSlots slots_;
+	private Connection[] slot_conn_;
+	private int[] slot_origin_;
+	private int num_connections_ = 0;
+	// per node index: the slots its output flows to, and the connections out of / into it
+	// (null until the node has had a connection)
+	private BitSet[] outgoing_slots_;
+	private List<Set<Connection>> outgoing_;
+	private List<Set<Connection>> incoming_;
+
+	public Connections(ActionDiagram ad) {
+		slots_ = new DestinationSlots(ad);
+		slot_conn_ = new Connection[Math.max(16, slots_.numSlots())];
+		slot_origin_ = new int[slot_conn_.length];
+		Arrays.fill(slot_origin_, -1);
+		outgoing_slots_ = new BitSet[ad.numNodes()];
+		outgoing_ = new ArrayList<Set<Connection>>(ad.numNodes());
+		incoming_ = new ArrayList<Set<Connection>>(ad.numNodes());
+		for (int n = 0; n < ad.numNodes(); n++) {
+			outgoing_slots_[n] = new BitSet();
+			outgoing_.add(null);
+			incoming_.add(null);
+		}
 	}
-	
+
+	public Connections(Connections other) {
+		slots_ = new DestinationSlots(other.slots_);
+		slot_conn_ = other.slot_conn_.clone();
+		slot_origin_ = other.slot_origin_.clone();
+		num_connections_ = other.num_connections_;
+		outgoing_slots_ = new BitSet[other.outgoing_slots_.length];
+		outgoing_ = new ArrayList<Set<Connection>>(outgoing_slots_.length);
+		incoming_ = new ArrayList<Set<Connection>>(outgoing_slots_.length);
+		for (int n = 0; n < outgoing_slots_.length; n++) {
+			outgoing_slots_[n] = (BitSet)other.outgoing_slots_[n].clone();
+			Set<Connection> conns = other.outgoing_.get(n);
+			outgoing_.add(conns == null ? null : new HashSet<Connection>(conns));
+			conns = other.incoming_.get(n);
+			incoming_.add(conns == null ? null : new HashSet<Connection>(conns));
+		}
+	}
+
+	public DestinationSlots slots() {
+		return slots_;
+	}
+
+	public int numConnections() {
+		return num_connections_;
+	}
+
 	public Iterator<Triple<ActionNode, Argument, String>> dest_iterator() {
-		return dest_to_connection.keySet().iterator();
+		List<Triple<ActionNode, Argument, String>> dests = new ArrayList<Triple<ActionNode, Argument, String>>();
+		for (int slot = 0; slot < slots_.numSlots(); slot++) {
+			if (slot_conn_[slot] != null) {
+				dests.add(slots_.destination(slot));
+			}
+		}
+		return dests.iterator();
 	}
-	
+
 	public void addConnection(Connection conn) {
-		Set<Connection> conns = origin_to_connections.get(conn.origin);
+		int slot = slots_.slot(conn.destination);
+		if (slot >= slot_conn_.length) {
+			int capacity = Math.max(2 * slot_conn_.length, slot + 1);
+			slot_conn_ = Arrays.copyOf(slot_conn_, capacity);
+			int old_length = slot_origin_.length;
+			slot_origin_ = Arrays.copyOf(slot_origin_, capacity);
+			Arrays.fill(slot_origin_, old_length, capacity, -1);
+		}
+		if (slot_conn_[slot] == null) {
+			num_connections_++;
+		}
+		slot_conn_[slot] = conn;
+		slot_origin_[slot] = conn.origin.index();
+
+		int origin = conn.origin.index();
+		Set<Connection> conns = outgoing_.get(origin);
 		if (conns == null) {
 			conns = new HashSet<Connection>();
-			origin_to_connections.put(conn.origin, conns);
+			outgoing_.set(origin, conns);
 		}
 		conns.add(conn);
-		
-		dest_to_connection.put(conn.destination, conn);
-		
-		conns = dest_node_to_connections.get(conn.destination.getFirst());
+		outgoing_slots_[origin].set(slot);
+
+		int dest = conn.destination.getFirst().index();
+		conns = incoming_.get(dest);
 		if (conns == null) {
 			conns = new HashSet<Connection>();
-			dest_node_to_connections.put(conn.destination.getFirst(), conns);
+			incoming_.set(dest, conns);
 		}
 		conns.add(conn);
 	}
@@ -103,11 +209,17 @@ public class Connections {
 	}
 	
 	public void removeConnection(Connection conn) {
-		Set<Connection> conns = origin_to_connections.get(conn.origin);
-		conns.remove(conn);
-		dest_to_connection.remove(conn.destination);
-		conns = dest_node_to_connections.get(conn.destination.getFirst());
-		conns.remove(conn);
+		int slot = slots_.find(conn.destination);
+		int origin = conn.origin.index();
+		if (outgoing_.get(origin).remove(conn) && slot != -1) {
+			outgoing_slots_[origin].clear(slot);
+		}
+		if (slot != -1 && slot_conn_[slot] != null) {
+			slot_conn_[slot] = null;
+			slot_origin_[slot] = -1;
+			num_connections_--;
+		}
+		incoming_.get(conn.destination.getFirst().index()).remove(conn);
 	}
 	
 	public Connection removeConnection(ActionNode origin, Triple<ActionNode, Argument, String> dest, CONN_TYPE type) {
@@ -117,54 +229,74 @@ public class Connections {
 	}
 	
 	public Set<Connection> getIncomingConnectionsToNode(ActionNode dest) {
-		return dest_node_to_connections.get(dest);
+		return incoming_.get(dest.index());
 	}
 	
 	public Set<Connection> getOutgoingConnections(ActionNode origin) {
-		return origin_to_connections.get(origin);
+		return outgoing_.get(origin.index());
 	}
-	
-	public ActionNode getOrigin(ActionNode node, Argument arg, String span) {
-		return getOrigin(new Triple<ActionNode, Argument, String>(node, arg, span));
+
+	// Slots the output of the node at origin_index currently flows to.
+	public BitSet getOutgoingSlots(int origin_index) {
+		return outgoing_slots_[origin_index];
 	}
 
-	public ActionNode getOrigin(Triple<ActionNode, Argument, String> dest_triple) {
-		Connection conn = dest_to_connection.get(dest_triple);
+	public int numOutgoingConnections(ActionNode origin) {
+		return outgoing_slots_[origin.index()].cardinality();
+	}
+
+	// Node index of the origin of the slot, or -1 if it has none.
+	public int getOriginIndex(int slot) {
+		if (slot < 0 || slot >= slot_origin_.length) {
+			return -1;
+		}
+		return slot_origin_[slot];
+	}
+
+	public Connection getConnection(int slot) {
+		if (slot < 0 || slot >= slot_conn_.length) {
+			return null;
+		}
+		return slot_conn_[slot];
+	}
+	
+	public ActionNode getOrigin(ActionNode node, Argument arg, String span) {
+		Connection conn = getConnection(slots_.find(node, arg, span));
 		if (conn == null) {
 			return null;
 		}
 		return conn.origin;
 	}
+
+	public ActionNode getOrigin(Triple<ActionNode, Argument, String> dest_triple) {
+		return getOrigin(dest_triple.getFirst(), dest_triple.getSecond(), dest_triple.getThird());
+	}
 	
 	public CONN_TYPE getConnectionType(ActionNode node, Argument arg, String span) {
-		return getConnectionType(new Triple<ActionNode, Argument, String>(node, arg, span));
-	}
-
-	public CONN_TYPE getConnectionType(Triple<ActionNode, Argument, String> dest_triple) {
-		Connection conn = dest_to_connection.get(dest_triple);
+		Connection conn = getConnection(slots_.find(node, arg, span));
 		if (conn == null) {
 			return null;
 		}
 		return conn.type;
 	}
+
+	public CONN_TYPE getConnectionType(Triple<ActionNode, Argument, String> dest_triple) {
+		return getConnectionType(dest_triple.getFirst(), dest_triple.getSecond(), dest_triple.getThird());
+	}
 	
 	public Connection getConnection(ActionNode node, Argument arg, String span) {
-		return getConnection(new Triple<ActionNode, Argument, String>(node, arg, span));
+		return getConnection(slots_.find(node, arg, span));
 	}
 
 	public Connection getConnection(Triple<ActionNode, Argument, String> dest_triple) {
-		return dest_to_connection.get(dest_triple);
+		return getConnection(slots_.find(dest_triple));
 	}
 
 	public boolean doesSpanHaveOrigin(ActionNode node, Argument arg, String span) {
-		return doesSpanHaveOrigin(new Triple<ActionNode, Argument, String>(node, arg, span));
+		return getOriginIndex(slots_.find(node, arg, span)) != -1;
 	}
 
 	public boolean doesSpanHaveOrigin(Triple<ActionNode, Argument, String> dest_triple) {
-		Connection conn = dest_to_connection.get(dest_triple);
-		if (conn == null) {
-			return false;
-		}
-		return true;
+		return getOriginIndex(slots_.find(dest_triple)) != -1;
 	}
 }
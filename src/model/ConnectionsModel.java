@@ -5,12 +5,17 @@ import java.io.BufferedWriter;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import data.ProjectParameters;
 
 public class ConnectionsModel {
 
 	public static boolean relearn = false;
+
+	// longest closeness (and number of outputs) in the log tables
+	public static int MAX_RECIPE_LENGTH = 100;
 	
 	public enum CONN_TYPE {
 		FOOD("FOOD"),
@@ -145,43 +150,169 @@ public class ConnectionsModel {
 	}
 
 	public double evo_ing_closeness_prob(int closeness) {
-		return Math.log(Math.pow(1.0 - evo_closeness_geo, closeness - 1) * evo_closeness_geo);
+		return lookup(tables().evo_ing_closeness, evo_closeness_geo, closeness);
 	}
 
 	public double imp_loc_closeness_prob(int closeness) {
-		return Math.log(Math.pow(1.0 - imp_location_closeness_geo, closeness - 1) * imp_location_closeness_geo);
+		return lookup(tables().imp_loc_closeness, imp_location_closeness_geo, closeness);
 	}
 
 	public double evo_loc_closeness_prob(int closeness) {
-		return Math.log(Math.pow(1.0 - evo_location_closeness_geo, closeness - 1) * evo_location_closeness_geo);
+		return lookup(tables().evo_loc_closeness, evo_location_closeness_geo, closeness);
 	}
 
 	public double new_closeness_prob(int closeness) {
-		return Math.log(Math.pow(1.0 - new_closeness_geo, closeness - 1) * new_closeness_geo);
+		return lookup(tables().new_closeness, new_closeness_geo, closeness);
 	}
 
 	public double new_loc_closeness_prob(int closeness) {
-		return Math.log(Math.pow(1.0 - new_location_closeness_geo, closeness - 1) * new_location_closeness_geo);
+		return lookup(tables().new_loc_closeness, new_location_closeness_geo, closeness);
 	}
 	
 	public double ing_closeness_prob(int closeness) {
-		return Math.log(Math.pow(1.0 - food_closeness_geo, closeness - 1) * food_closeness_geo);
+		return lookup(tables().ing_closeness, food_closeness_geo, closeness);
 	}
 	
 	public double loc_closeness_prob(int closeness) {
-		return Math.log(Math.pow(1.0 - location_closeness_geo, closeness - 1) * location_closeness_geo);
+		return lookup(tables().loc_closeness, location_closeness_geo, closeness);
 	}
 
 	public double nonlin_food_closeness_prob(int closeness) {
-		return Math.log(1.0 - prob_lin_food) + Math.log(Math.pow(1.0 - nonlin_food_geo, closeness - 1) * nonlin_food_geo);
+		LogTables tables = tables();
+		if (closeness >= 0 && closeness < tables.nonlin_food_closeness.length) {
+			return tables.nonlin_food_closeness[closeness];
+		}
+		return Math.log(1.0 - prob_lin_food) + geoLogProb(nonlin_food_geo, closeness);
 	}
 	
 	public double nonlin_loc_closeness_prob(int closeness) {
-		return Math.log(1.0 - prob_lin_loc) + Math.log(Math.pow(1.0 - nonlin_loc_geo, closeness - 1) * nonlin_loc_geo);
+		LogTables tables = tables();
+		if (closeness >= 0 && closeness < tables.nonlin_loc_closeness.length) {
+			return tables.nonlin_loc_closeness[closeness];
+		}
+		return Math.log(1.0 - prob_lin_loc) + geoLogProb(nonlin_loc_geo, closeness);
 	}
 	
 	public double num_outputs_prob(int num_outputs) {
-		return Math.log(Math.pow(1.0 - num_outputs_geo, num_outputs - 1) * num_outputs_geo);
+		return lookup(tables().num_outputs, num_outputs_geo, num_outputs);
+	}
+
+	// log of the geometric probability of n with parameter geo
+	private static double geoLogProb(double geo, int n) {
+		return Math.log(Math.pow(1.0 - geo, n - 1) * geo);
+	}
+
+	private static double lookup(double[] table, double geo, int n) {
+		if (n >= 0 && n < table.length) {
+			return table[n];
+		}
+		return geoLogProb(geo, n);
+	}
+
+	private static double[] geoLogTable(double geo) {
+		double[] table = new double[MAX_RECIPE_LENGTH + 1];
+		for (int n = 0; n < table.length; n++) {
+			table[n] = geoLogProb(geo, n);
+		}
+		return table;
+	}
+
+	// Log probabilities of the current parameters. The tables are indexed by closeness (or
+	// number of outputs) up to MAX_RECIPE_LENGTH; longer ones are computed.
+	private static class LogTables {
+		double[] evo_ing_closeness;
+		double[] imp_loc_closeness;
+		double[] evo_loc_closeness;
+		double[] new_closeness;
+		double[] new_loc_closeness;
+		double[] ing_closeness;
+		double[] loc_closeness;
+		double[] nonlin_food_closeness;
+		double[] nonlin_loc_closeness;
+		double[] num_outputs;
+
+		double good_conn;
+		double not_good_conn;
+		double imp_food_conn;
+		double evo_food_conn;
+		double imp_loc_conn;
+		double not_imp_loc_conn;
+	}
+
+	private volatile LogTables tables_ = null;
+
+	private LogTables tables() {
+		LogTables tables = tables_;
+		if (tables == null) {
+			synchronized (this) {
+				tables = tables_;
+				if (tables == null) {
+					tables = buildTables();
+					tables_ = tables;
+				}
+			}
+		}
+		return tables;
+	}
+
+	private LogTables buildTables() {
+		LogTables tables = new LogTables();
+		tables.evo_ing_closeness = geoLogTable(evo_closeness_geo);
+		tables.imp_loc_closeness = geoLogTable(imp_location_closeness_geo);
+		tables.evo_loc_closeness = geoLogTable(evo_location_closeness_geo);
+		tables.new_closeness = geoLogTable(new_closeness_geo);
+		tables.new_loc_closeness = geoLogTable(new_location_closeness_geo);
+		tables.ing_closeness = geoLogTable(food_closeness_geo);
+		tables.loc_closeness = geoLogTable(location_closeness_geo);
+		tables.nonlin_food_closeness = geoLogTable(nonlin_food_geo);
+		tables.nonlin_loc_closeness = geoLogTable(nonlin_loc_geo);
+		double log_nonlin_food = Math.log(1.0 - prob_lin_food);
+		double log_nonlin_loc = Math.log(1.0 - prob_lin_loc);
+		for (int n = 0; n <= MAX_RECIPE_LENGTH; n++) {
+			tables.nonlin_food_closeness[n] = log_nonlin_food + tables.nonlin_food_closeness[n];
+			tables.nonlin_loc_closeness[n] = log_nonlin_loc + tables.nonlin_loc_closeness[n];
+		}
+		tables.num_outputs = geoLogTable(num_outputs_geo);
+
+		tables.good_conn = Math.log(good_conn);
+		tables.not_good_conn = Math.log(1.0 - good_conn);
+		tables.imp_food_conn = Math.log(imp_food_conn_prob);
+		tables.evo_food_conn = Math.log(evo_food_conn_prob);
+		tables.imp_loc_conn = Math.log(imp_loc_conn_prob);
+		tables.not_imp_loc_conn = Math.log(1.0 - imp_loc_conn_prob);
+		return tables;
+	}
+
+	// Rebuilds the log tables. Needed only if the parameters are changed after the model was
+	// first used for scoring.
+	public void parametersChanged() {
+		synchronized (this) {
+			tables_ = buildTables();
+		}
+	}
+
+	public double logGoodConn() {
+		return tables().good_conn;
+	}
+
+	public double logNotGoodConn() {
+		return tables().not_good_conn;
+	}
+
+	public double logImpFoodProb() {
+		return tables().imp_food_conn;
+	}
+
+	public double logEvoFoodProb() {
+		return tables().evo_food_conn;
+	}
+
+	public double logImpLocConnProb() {
+		return tables().imp_loc_conn;
+	}
+
+	public double logNotImpLocConnProb() {
+		return tables().not_imp_loc_conn;
 	}
 	
 	public ConnectionsModel() {
@@ -189,67 +320,96 @@ public class ConnectionsModel {
 	}
 	
 	public static ConnectionsModel readFromFile(String filename) throws IOException {
-		ConnectionsModel model = new ConnectionsModel();
 		BufferedReader br = new BufferedReader(new FileReader(filename));
+		List<Double> values = new ArrayList<Double>();
+		String line = null;
+		while ((line = br.readLine()) != null) {
+			if (line.trim().equals("")) {
+				continue;
+			}
+			values.add(Double.parseDouble(line));
+		}
+		br.close();
+		double[] value_arr = new double[values.size()];
+		for (int i = 0; i < value_arr.length; i++) {
+			value_arr[i] = values.get(i);
+		}
+		return fromFileValues(value_arr);
+	}
+
+	// Model from the values of the lines of a model file, in the order writeToFile writes them.
+	private static ConnectionsModel fromFileValues(double[] values) {
+		ConnectionsModel model = new ConnectionsModel();
+		int i = 0;
 		
-		model.good_conn = Double.parseDouble(br.readLine());
+		model.good_conn = values[i++];
 		if (true || relearn) {
-			model.num_outputs_geo = Double.parseDouble(br.readLine());
+			model.num_outputs_geo = values[i++];
 		} else {
-			Double.parseDouble(br.readLine());
+			i++;
 		}
-//		model.imp_closeness_geo = Double.parseDouble(br.readLine());
-		Double.parseDouble(br.readLine());
-//		model.evo_closeness_geo = Double.parseDouble(br.readLine());
-		Double.parseDouble(br.readLine());
-		model.imp_location_closeness_geo = Double.parseDouble(br.readLine());
-//		Double.parseDouble(br.readLine());
-		model.evo_location_closeness_geo = Double.parseDouble(br.readLine());
-//		Double.parseDouble(br.readLine());
+//		model.imp_closeness_geo = values[i++];
+		i++;
+//		model.evo_closeness_geo = values[i++];
+		i++;
+		model.imp_location_closeness_geo = values[i++];
+		model.evo_location_closeness_geo = values[i++];
 		
 		if (relearn) {
-			model.new_closeness_geo = Double.parseDouble(br.readLine());
-			model.new_location_closeness_geo = Double.parseDouble(br.readLine());
-			model.food_conn_prob = Double.parseDouble(br.readLine());
-			model.loc_conn_prob = Double.parseDouble(br.readLine());
-			model.other_conn_prob = Double.parseDouble(br.readLine());
+			model.new_closeness_geo = values[i++];
+			model.new_location_closeness_geo = values[i++];
+			model.food_conn_prob = values[i++];
+			model.loc_conn_prob = values[i++];
+			model.other_conn_prob = values[i++];
 		} else {
-			Double.parseDouble(br.readLine());
-			Double.parseDouble(br.readLine());
-			Double.parseDouble(br.readLine());
-			Double.parseDouble(br.readLine());
-			Double.parseDouble(br.readLine());
+			i += 5;
 		}
 		
+		model.imp_food_conn_prob = values[i++];
+		model.evo_food_conn_prob = values[i++];
+//		model.imp_loc_conn_prob = values[i++];
+		i++;
+//		model.evo_loc_conn_prob = values[i++];
+		i++;
 		
-		model.imp_food_conn_prob = Double.parseDouble(br.readLine());
-//		Double.parseDouble(br.readLine());
-		model.evo_food_conn_prob = Double.parseDouble(br.readLine());
-//		model.imp_loc_conn_prob = Double.parseDouble(br.readLine());
-		Double.parseDouble(br.readLine());
-//		model.evo_loc_conn_prob = Double.parseDouble(br.readLine());
-		Double.parseDouble(br.readLine());
-		
-		model.evo_food_obj_prob = Double.parseDouble(br.readLine());
-		model.evo_loc_obj_prob = Double.parseDouble(br.readLine());
-		model.imp_food_obj_prob = Double.parseDouble(br.readLine());
-		model.imp_loc_obj_prob = Double.parseDouble(br.readLine());
-		model.new_loc_obj_prob = Double.parseDouble(br.readLine());
-		model.new_food_obj_prob = Double.parseDouble(br.readLine());
+		model.evo_food_obj_prob = values[i++];
+		model.evo_loc_obj_prob = values[i++];
+		model.imp_food_obj_prob = values[i++];
+		model.imp_loc_obj_prob = values[i++];
+		model.new_loc_obj_prob = values[i++];
+		model.new_food_obj_prob = values[i++];
 //		
-		String line = br.readLine();
-		if (line != null && relearn) {
-			model.food_closeness_geo = Double.parseDouble(line);
-			model.location_closeness_geo = Double.parseDouble(br.readLine());
+		if (i < values.length && relearn) {
+			double value = values[i];
+			model.food_closeness_geo = value;
+			model.location_closeness_geo = values[i + 1];
 			
-			model.prob_lin_food = Double.parseDouble(line);
-			model.nonlin_food_geo = Double.parseDouble(line);
-			model.prob_lin_loc = Double.parseDouble(line);
-			model.nonlin_loc_geo = Double.parseDouble(line);
+			model.prob_lin_food = value;
+			model.nonlin_food_geo = value;
+			model.prob_lin_loc = value;
+			model.nonlin_loc_geo = value;
 		}
-		br.close();
+		model.tables();
 		return model;
 	}
+
+	public static ConnectionsModel readFromBundle(ModelBundle.Reader reader, String section) throws IOException {
+		reader.beginSection(section);
+		double[] values = new double[reader.readInt()];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = reader.readDouble();
+		}
+		return fromFileValues(values);
+	}
+
+	public void writeToBundle(ModelBundle.Writer writer, String section) throws IOException {
+		writer.beginSection(section);
+		double[] values = fileValues();
+		writer.writeInt(values.length);
+		for (double value : values) {
+			writer.writeDouble(value);
+		}
+	}
 	
 	public double impFoodProb() {
 		return imp_food_conn_prob;
@@ -261,40 +421,19 @@ public class ConnectionsModel {
 	
 	public void writeToFile(String filename)  throws IOException {
 		BufferedWriter bw = new BufferedWriter(new FileWriter(filename));
-		
-		bw.write(good_conn + "\n");
-		bw.write(num_outputs_geo + "\n");
-		bw.write(imp_closeness_geo + "\n");
-		bw.write(evo_closeness_geo + "\n");
-		bw.write(imp_location_closeness_geo + "\n");
-		bw.write(evo_location_closeness_geo + "\n");
-		bw.write(new_closeness_geo + "\n");
-		bw.write(new_location_closeness_geo + "\n");
-		
-		bw.write(food_conn_prob + "\n");
-		bw.write(loc_conn_prob + "\n");
-		bw.write(other_conn_prob + "\n");
-		
-		bw.write(imp_food_conn_prob + "\n");
-		bw.write(evo_food_conn_prob + "\n");
-		bw.write(imp_loc_conn_prob + "\n");
-		bw.write(evo_loc_conn_prob + "\n");
-		
-		bw.write(evo_food_obj_prob + "\n");
-		bw.write(evo_loc_obj_prob + "\n");
-		bw.write(imp_food_obj_prob + "\n");
-		bw.write(imp_loc_obj_prob + "\n");
-		bw.write(new_loc_obj_prob + "\n");
-		bw.write(new_food_obj_prob + "\n");
-		
-		bw.write(food_closeness_geo + "\n");
-		bw.write(location_closeness_geo + "\n");
-		
-		bw.write(prob_lin_food + "\n");
-		bw.write(nonlin_food_geo + "\n");
-		bw.write(prob_lin_loc + "\n");
-		bw.write(nonlin_loc_geo + "\n");
-		
+		for (double value : fileValues()) {
+			bw.write(value + "\n");
+		}
 		bw.close();
 	}
+
+	private double[] fileValues() {
+		return new double[]{good_conn, num_outputs_geo, imp_closeness_geo, evo_closeness_geo,
+				imp_location_closeness_geo, evo_location_closeness_geo, new_closeness_geo, new_location_closeness_geo,
+				food_conn_prob, loc_conn_prob, other_conn_prob,
+				imp_food_conn_prob, evo_food_conn_prob, imp_loc_conn_prob, evo_loc_conn_prob,
+				evo_food_obj_prob, evo_loc_obj_prob, imp_food_obj_prob, imp_loc_obj_prob, new_loc_obj_prob, new_food_obj_prob,
+				food_closeness_geo, location_closeness_geo,
+				prob_lin_food, nonlin_food_geo, prob_lin_loc, nonlin_loc_geo};
+	}
 }
@@ -1,5 +1,8 @@
 package model;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.Set;
 
 import model.Connections.Connection;
@@ -9,7 +12,7 @@ import data.ActionDiagram.ActionNode;
 import data.RecipeEvent.Argument;
 import data.RecipeEvent.Argument.Type;
 
-public class ConnectionsModelLearner {
+public class ConnectionsModelLearner implements SufficientStatistics<ConnectionsModelLearner> {
 	public int num_outputs_num = 0;
 	public int num_outputs_sum = 0;
 
@@ -75,7 +78,7 @@ public class ConnectionsModelLearner {
 	public int good_conn = 0;
 	public int all_conn = 0;
 
-	public void addNewCounts(ConnectionsModelLearner other) {
+	public void merge(ConnectionsModelLearner other) {
 		num_outputs_num += other.num_outputs_num;
 		num_outputs_sum += other.num_outputs_sum;
 
@@ -142,6 +145,103 @@ public class ConnectionsModelLearner {
 		all_conn += other.all_conn;
 	}
 
+	// The counts in the order of merge().
+	public void serialize(DataOutputStream out) throws IOException {
+		out.writeInt(num_outputs_num);
+		out.writeInt(num_outputs_sum);
+		out.writeInt(imp_closeness_num);
+		out.writeInt(imp_closeness_sum);
+		out.writeInt(evo_closeness_num);
+		out.writeInt(evo_closeness_sum);
+		out.writeInt(imp_location_closeness_num);
+		out.writeInt(imp_location_closeness_sum);
+		out.writeInt(evo_location_closeness_num);
+		out.writeInt(evo_location_closeness_sum);
+		out.writeInt(new_closeness_num);
+		out.writeInt(new_closeness_sum);
+		out.writeInt(new_location_closeness_num);
+		out.writeInt(new_location_closeness_sum);
+		out.writeInt(total_conn_cnt);
+		out.writeInt(food_conn_cnt);
+		out.writeInt(loc_conn_cnt);
+		out.writeInt(other_conn_cnt);
+		out.writeInt(evo_food_cnt);
+		out.writeInt(evo_food_obj_cnt);
+		out.writeInt(evo_loc_cnt);
+		out.writeInt(evo_loc_obj_cnt);
+		out.writeInt(imp_food_cnt);
+		out.writeInt(imp_food_obj_cnt);
+		out.writeInt(imp_loc_cnt);
+		out.writeInt(imp_loc_obj_cnt);
+		out.writeInt(new_loc_cnt);
+		out.writeInt(new_loc_obj_cnt);
+		out.writeInt(new_food_cnt);
+		out.writeInt(new_food_obj_cnt);
+		out.writeInt(food_closeness_num);
+		out.writeInt(food_closeness_sum);
+		out.writeInt(location_closeness_num);
+		out.writeInt(location_closeness_sum);
+		out.writeInt(new_food_closeness_num);
+		out.writeInt(new_food_closeness_sum);
+		out.writeInt(blank_ing_cnt);
+		out.writeInt(lin_food_cnt);
+		out.writeInt(nonlin_food_num);
+		out.writeInt(nonlin_food_sum);
+		out.writeInt(lin_loc_cnt);
+		out.writeInt(nonlin_loc_num);
+		out.writeInt(nonlin_loc_sum);
+		out.writeInt(good_conn);
+		out.writeInt(all_conn);
+	}
+
+	public void deserialize(DataInputStream in) throws IOException {
+		num_outputs_num = in.readInt();
+		num_outputs_sum = in.readInt();
+		imp_closeness_num = in.readInt();
+		imp_closeness_sum = in.readInt();
+		evo_closeness_num = in.readInt();
+		evo_closeness_sum = in.readInt();
+		imp_location_closeness_num = in.readInt();
+		imp_location_closeness_sum = in.readInt();
+		evo_location_closeness_num = in.readInt();
+		evo_location_closeness_sum = in.readInt();
+		new_closeness_num = in.readInt();
+		new_closeness_sum = in.readInt();
+		new_location_closeness_num = in.readInt();
+		new_location_closeness_sum = in.readInt();
+		total_conn_cnt = in.readInt();
+		food_conn_cnt = in.readInt();
+		loc_conn_cnt = in.readInt();
+		other_conn_cnt = in.readInt();
+		evo_food_cnt = in.readInt();
+		evo_food_obj_cnt = in.readInt();
+		evo_loc_cnt = in.readInt();
+		evo_loc_obj_cnt = in.readInt();
+		imp_food_cnt = in.readInt();
+		imp_food_obj_cnt = in.readInt();
+		imp_loc_cnt = in.readInt();
+		imp_loc_obj_cnt = in.readInt();
+		new_loc_cnt = in.readInt();
+		new_loc_obj_cnt = in.readInt();
+		new_food_cnt = in.readInt();
+		new_food_obj_cnt = in.readInt();
+		food_closeness_num = in.readInt();
+		food_closeness_sum = in.readInt();
+		location_closeness_num = in.readInt();
+		location_closeness_sum = in.readInt();
+		new_food_closeness_num = in.readInt();
+		new_food_closeness_sum = in.readInt();
+		blank_ing_cnt = in.readInt();
+		lin_food_cnt = in.readInt();
+		nonlin_food_num = in.readInt();
+		nonlin_food_sum = in.readInt();
+		lin_loc_cnt = in.readInt();
+		nonlin_loc_num = in.readInt();
+		nonlin_loc_sum = in.readInt();
+		good_conn = in.readInt();
+		all_conn = in.readInt();
+	}
+
 	public ConnectionsModelLearner() {
 
 	}
@@ -318,6 +418,7 @@ public class ConnectionsModelLearner {
 		model.prob_lin_loc = (double)lin_loc_cnt / loc_conn_cnt;
 		model.nonlin_food_geo = generateGeoDistribution(nonlin_food_num, nonlin_food_sum);
 		model.nonlin_loc_geo = generateGeoDistribution(nonlin_loc_num, nonlin_loc_sum);
+		model.parametersChanged();
 
 		return model;
 	}
@@ -0,0 +1,164 @@
+package model;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+import utils.Triple;
+import data.ActionDiagram;
+import data.ActionDiagram.ActionNode;
+import data.RecipeEvent;
+import data.RecipeEvent.Argument;
+
+/***
+ * Dense int ids for the (node, argument, span) destinations of a recipe.
+ * Ids are looked up by node index, argument identity and span, so no hashing
+ * or allocation is needed. Destinations added to the recipe later (e.g. the empty
+ * prepositions added during search) get new ids when they are first connected.
+ */
+public class DestinationSlots {
+	private int num_slots_ = 0;
+	private ActionNode[] slot_node_;
+	private Argument[] slot_arg_;
+	private String[] slot_span_;
+	private Triple<ActionNode, Argument, String>[] slot_triple_;
+	// ids of the slots of each node, in order of assignment
+	private int[][] node_slots_;
+	private int[] node_num_slots_;
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public DestinationSlots(ActionDiagram ad) {
+		int capacity = Math.max(16, 4 * ad.numNodes());
+		slot_node_ = new ActionNode[capacity];
+		slot_arg_ = new Argument[capacity];
+		slot_span_ = new String[capacity];
+		slot_triple_ = new Triple[capacity];
+		node_slots_ = new int[ad.numNodes()][];
+		node_num_slots_ = new int[ad.numNodes()];
+		for (int n = 0; n < ad.numNodes(); n++) {
+			node_slots_[n] = new int[4];
+			ActionNode node = ad.getNodeAtIndex(n);
+			RecipeEvent event = node.event();
+			if (event.dobj() != null) {
+				addArgumentSlots(node, event.dobj());
+			}
+			Iterator<Argument> prep_it = event.prepositionalArgIterator();
+			while (prep_it.hasNext()) {
+				addArgumentSlots(node, prep_it.next());
+			}
+			Iterator<Argument> other_it = event.otherArgIterator();
+			while (other_it.hasNext()) {
+				addArgumentSlots(node, other_it.next());
+			}
+		}
+	}
+
+	public DestinationSlots(DestinationSlots other) {
+		num_slots_ = other.num_slots_;
+		slot_node_ = other.slot_node_.clone();
+		slot_arg_ = other.slot_arg_.clone();
+		slot_span_ = other.slot_span_.clone();
+		slot_triple_ = other.slot_triple_.clone();
+		node_slots_ = new int[other.node_slots_.length][];
+		for (int n = 0; n < node_slots_.length; n++) {
+			node_slots_[n] = other.node_slots_[n].clone();
+		}
+		node_num_slots_ = other.node_num_slots_.clone();
+	}
+
+	private void addArgumentSlots(ActionNode node, Argument arg) {
+		for (String span : arg.nonIngredientSpans()) {
+			slot(node, arg, span);
+		}
+		for (String span : arg.ingredientSpans()) {
+			slot(node, arg, span);
+		}
+	}
+
+	public int numSlots() {
+		return num_slots_;
+	}
+
+	public int numNodes() {
+		return node_slots_.length;
+	}
+
+	// Id of the destination, or -1 if it has never been assigned one.
+	public int find(ActionNode node, Argument arg, String span) {
+		int n = node.index();
+		int[] slots = node_slots_[n];
+		for (int i = 0; i < node_num_slots_[n]; i++) {
+			int slot = slots[i];
+			if (slot_arg_[slot] == arg && slot_span_[slot].equals(span)) {
+				return slot;
+			}
+		}
+		return -1;
+	}
+
+	public int find(Triple<ActionNode, Argument, String> dest) {
+		return find(dest.getFirst(), dest.getSecond(), dest.getThird());
+	}
+
+	// Id of the destination, assigning a new one if needed.
+	public int slot(ActionNode node, Argument arg, String span) {
+		int slot = find(node, arg, span);
+		if (slot != -1) {
+			return slot;
+		}
+		return addSlot(node, arg, span, new Triple<ActionNode, Argument, String>(node, arg, span));
+	}
+
+	public int slot(Triple<ActionNode, Argument, String> dest) {
+		int slot = find(dest);
+		if (slot != -1) {
+			return slot;
+		}
+		return addSlot(dest.getFirst(), dest.getSecond(), dest.getThird(), dest);
+	}
+
+	private int addSlot(ActionNode node, Argument arg, String span, Triple<ActionNode, Argument, String> dest) {
+		if (num_slots_ == slot_node_.length) {
+			int capacity = 2 * num_slots_;
+			slot_node_ = Arrays.copyOf(slot_node_, capacity);
+			slot_arg_ = Arrays.copyOf(slot_arg_, capacity);
+			slot_span_ = Arrays.copyOf(slot_span_, capacity);
+			slot_triple_ = Arrays.copyOf(slot_triple_, capacity);
+		}
+		int slot = num_slots_++;
+		slot_node_[slot] = node;
+		slot_arg_[slot] = arg;
+		slot_span_[slot] = span;
+		slot_triple_[slot] = dest;
+
+		int n = node.index();
+		if (node_num_slots_[n] == node_slots_[n].length) {
+			node_slots_[n] = Arrays.copyOf(node_slots_[n], 2 * node_slots_[n].length);
+		}
+		node_slots_[n][node_num_slots_[n]++] = slot;
+		return slot;
+	}
+
+	public ActionNode node(int slot) {
+		return slot_node_[slot];
+	}
+
+	public Argument argument(int slot) {
+		return slot_arg_[slot];
+	}
+
+	public String span(int slot) {
+		return slot_span_[slot];
+	}
+
+	public Triple<ActionNode, Argument, String> destination(int slot) {
+		return slot_triple_[slot];
+	}
+
+	public int numNodeSlots(int node_index) {
+		return node_num_slots_[node_index];
+	}
+
+	public int nodeSlot(int node_index, int i) {
+		return node_slots_[node_index][i];
+	}
+}
@@ -7,9 +7,11 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 
 import model.Connections.Connection;
 import model.ConnectionsModel.CONN_TYPE;
+import model.SelectionalPreferenceModel.PrefType;
 import model.SelectionalPreferenceModel.SelectionalPreference;
 import utils.Measurements;
 import utils.Pair;
@@ -38,7 +40,23 @@ public class GraphInfo {
 	public Map<ActionNode, Set<String>> node_to_loc_phrases_;
 	public Map<ActionNode, String> if_leaf_dobj_loc_string_;
 	public Set<String> all_ing_phrases_;
-	private List<SearchOp> reverse = null;
+
+	// undo journal of the last applySearchOp(): connections added (true) or removed (false) in order,
+	// and the state each touched node had before the op. popSearchOp() restores it directly.
+	private boolean journaling_ = false;
+	private List<Pair<Connection, Boolean>> journal_conns_ = null;
+	private Map<ActionNode, Set<String>> journal_ings_ = null;
+	private Map<ActionNode, Set<String>> journal_locs_ = null;
+	private Map<ActionNode, SelectionalPreference> journal_prefs_ = null;
+
+	// bumped on every connection or preference change so cached scores can be checked for staleness
+	private int version_ = 0;
+	// lowest destination index and the origins touched since the last clearDirtyRegion()
+	private int dirty_from_ = Integer.MAX_VALUE;
+	private Set<Integer> dirty_origins_ = new HashSet<Integer>();
+
+	// span-dependent scorer terms of this recipe, shared with the copies of this graph
+	private SpanScoreCache span_cache_ = null;
 
 	public GraphInfo(ActionDiagram ad, boolean apply_ings, boolean conn_ings, 
 			ThreeWayStringClassifier str_classifier, SelectionalPreferenceModel pref_model) {
@@ -51,7 +69,7 @@ public class GraphInfo {
 		node_to_loc_phrases_ = new HashMap<ActionNode, Set<String>>();
 		all_ing_phrases_ = new HashSet<String>();
 		if_leaf_dobj_loc_string_ = new HashMap<ActionNode, String>();
-		connections_ = new Connections();
+		connections_ = new Connections(ad);
 		if (apply_ings) {
 			if (conn_ings) {
 				connectIngredientsPerSpan();
@@ -83,12 +101,51 @@ public class GraphInfo {
 		node_to_loc_phrases_ = new HashMap<ActionNode, Set<String>>();
 		all_ing_phrases_ = new HashSet<String>();
 		if_leaf_dobj_loc_string_ = new HashMap<ActionNode, String>();
-		connections_ = new Connections();
+		connections_ = new Connections(ad);
 		if (conn_ings) {
 			connectIngredientsPerSpan();
 		}
 	}
 
+	// Copy with its own connections and per-node state, sharing the action diagram.
+	// Used to score search ops on other threads.
+	public GraphInfo(GraphInfo other) {
+		this.ad = other.ad;
+		is_arg_food = new HashMap<Argument, Boolean>(other.is_arg_food);
+		node_to_selectional_pref = new HashMap<ActionNode, SelectionalPreference>(other.node_to_selectional_pref);
+		visible_arg_to_type_ = new HashMap<Argument, CONN_TYPE>(other.visible_arg_to_type_);
+		node_to_ing_phrases_ = copyPhraseMap(other.node_to_ing_phrases_);
+		node_to_orig_ing_phrases_ = copyPhraseMap(other.node_to_orig_ing_phrases_);
+		node_to_loc_phrases_ = copyPhraseMap(other.node_to_loc_phrases_);
+		all_ing_phrases_ = new HashSet<String>(other.all_ing_phrases_);
+		if_leaf_dobj_loc_string_ = new HashMap<ActionNode, String>(other.if_leaf_dobj_loc_string_);
+		connections_ = new Connections(other.connections_);
+		version_ = other.version_;
+		span_cache_ = other.span_cache_;
+	}
+
+	// Cache of the span-dependent scorer terms under the given string classifier and mixtures model.
+	public SpanScoreCache spanScoreCache(ThreeWayStringClassifier str_classifier, IBM1MixturesModel mixtures_model) {
+		if (span_cache_ == null || span_cache_.strClassifier() != str_classifier
+				|| span_cache_.mixturesModel() != mixtures_model) {
+			span_cache_ = new SpanScoreCache(str_classifier, mixtures_model);
+		}
+		return span_cache_;
+	}
+
+	private static Map<ActionNode, Set<String>> copyPhraseMap(Map<ActionNode, Set<String>> map) {
+		Map<ActionNode, Set<String>> copy = new HashMap<ActionNode, Set<String>>();
+		for (ActionNode node : map.keySet()) {
+			Set<String> phrases = map.get(node);
+			if (phrases instanceof TreeSet) {
+				copy.put(node, new TreeSet<String>(phrases));
+			} else {
+				copy.put(node, new HashSet<String>(phrases));
+			}
+		}
+		return copy;
+	}
+
 	public void setArgAsFood(Argument arg, Boolean is_food) {
 		is_arg_food.put(arg, is_food);
 	}
@@ -100,6 +157,10 @@ public class GraphInfo {
 	
 	public void setSelectionalPreferencesOfNode(ActionNode node, SelectionalPreference sp) {
 		SelectionalPreference old_pref = node_to_selectional_pref.get(node);
+		if (journaling_ && !journal_prefs_.containsKey(node)) {
+			journal_prefs_.put(node, old_pref);
+			journal_locs_.put(node, node_to_loc_phrases_.get(node));
+		}
 		Set<Connection> incoming = connections_.getIncomingConnectionsToNode(node);
 		if (sp.loc != null) {
 			if (sp.loc.string().equals("")) {
@@ -159,7 +220,7 @@ public class GraphInfo {
 	}
 
 	public ActionNode getOrigin(ActionNode node, Argument arg, String span) {
-		return connections_.getOrigin(new Triple<ActionNode, Argument, String>(node, arg, span));
+		return connections_.getOrigin(node, arg, span);
 	}
 
 	public ActionNode getOrigin(Triple<ActionNode, Argument, String> dest_triple) {
@@ -167,7 +228,7 @@ public class GraphInfo {
 	}
 
 	public boolean doesSpanHaveOrigin(ActionNode node, Argument arg, String span) {
-		return connections_.doesSpanHaveOrigin(new Triple<ActionNode, Argument, String>(node, arg, span));
+		return connections_.doesSpanHaveOrigin(node, arg, span);
 	}
 
 	public boolean doesSpanHaveOrigin(Triple<ActionNode, Argument, String> dest_triple) {
@@ -178,6 +239,36 @@ public class GraphInfo {
 		return visible_arg_to_type_.get(arg);
 	}
 
+	public int version() {
+		return version_;
+	}
+
+	public void clearDirtyRegion() {
+		dirty_from_ = Integer.MAX_VALUE;
+		dirty_origins_.clear();
+	}
+
+	// Nodes at or after this index may have had their preference, ingredients or inputs changed.
+	public int dirtyFrom() {
+		return dirty_from_;
+	}
+
+	// Nodes whose set of outgoing connections changed.
+	public Set<Integer> dirtyOrigins() {
+		return dirty_origins_;
+	}
+
+	private void markDirty(Connection conn) {
+		version_++;
+		int dest_index = conn.destination.getFirst().index();
+		if (dest_index < dirty_from_) {
+			dirty_from_ = dest_index;
+		}
+		if (conn.origin != null) {
+			dirty_origins_.add(conn.origin.index());
+		}
+	}
+
 	private SelectionalPreference getPreference(List<Argument> conn_args_ing, 
 			List<Argument> conn_args_loc, List<Argument> non_conn_args, ActionNode node,
 			boolean ing_obj, GraphScorer gs) {
@@ -203,7 +294,7 @@ public class GraphInfo {
 		SelectionalPreference pref = new SelectionalPreference();
 		if (ing_obj) {
 			if (num_conn_args >= 2) {
-				pref.pref_type = "INGOBJ:PREP";
+				pref.pref_type = PrefType.INGOBJ_PREP;
 				pref.arg_arr = arg_arr;
 				if (conn_args_loc.size() == 1) {
 					pref.loc = conn_args_loc.iterator().next();
@@ -226,7 +317,7 @@ public class GraphInfo {
 
 				}
 			} else {
-				pref.pref_type = "INGOBJ:NOPREP";
+				pref.pref_type = PrefType.INGOBJ_NOPREP;
 				pref.arg_arr = arg_arr;
 				double best_prob = Double.NEGATIVE_INFINITY;
 				Argument best_loc = null;
@@ -281,7 +372,7 @@ public class GraphInfo {
 			}
 		} else {
 			if (num_conn_args >= 2) {
-				pref.pref_type = "NONINGOBJ:PREP";
+				pref.pref_type = PrefType.NONINGOBJ_PREP;
 				pref.arg_arr = arg_arr;
 				if (conn_args_loc.size() == 0) {
 					Argument imp_arg = null;
@@ -342,7 +433,7 @@ public class GraphInfo {
 					}
 				}
 			} else if (num_conn_args == 1) {
-				pref.pref_type = "NONINGOBJ:PREP";
+				pref.pref_type = PrefType.NONINGOBJ_PREP;
 				pref.arg_arr = arg_arr;
 				if (conn_args_loc.size() != 0) {
 					pref.loc = conn_args_loc.iterator().next();
@@ -403,7 +494,7 @@ public class GraphInfo {
 					}
 				}
 			} else {
-				pref.pref_type = "NONINGOBJ:NOPREP";
+				pref.pref_type = PrefType.NONINGOBJ_NOPREP;
 				pref.arg_arr = new Argument[0];
 				pref.loc = event.dobj();
 				Argument imp_arg = null;
@@ -424,7 +515,7 @@ public class GraphInfo {
 		//		System.out.println(pref.pref_type);
 		if (connections_.getIncomingConnectionsToNode(node) == null || 
 				connections_.getIncomingConnectionsToNode(node).size() == 0) {
-			pref.pref_type += ":LEAF";
+			pref.pref_type = pref.pref_type.leaf();
 		}
 		return pref;
 	}
@@ -432,11 +523,8 @@ public class GraphInfo {
 	private static boolean set_prefs = true;
 
 	public void updateNode(GraphScorer gs, ActionNode next_node) {
-		Set<String> ings = node_to_ing_phrases_.get(next_node);
-		if (ings == null) {
-			ings = new HashSet<String>();
-			node_to_ing_phrases_.put(next_node, ings);
-		}
+		version_++;
+		Set<String> ings = ingPhrasesForUpdate(next_node);
 
 		RecipeEvent event = next_node.event();
 		SelectionalPreference old_pref = getSelectionalPreferencesOfNode(next_node);
@@ -704,6 +792,10 @@ public class GraphInfo {
 		if (gs.VERBOSE)
 			System.out.println("create conn " + origin + " -> " + dest_triple + " " + type);
 		Connection conn = connections_.addConnection(origin, dest_triple, type);
+		markDirty(conn);
+		if (journaling_) {
+			journal_conns_.add(new Pair<Connection, Boolean>(conn, true));
+		}
 
 		// update the rest of the recipe for ing flow.
 		for (int i = conn.destination.getFirst().index(); i < ad.numNodes(); i++) {
@@ -712,78 +804,29 @@ public class GraphInfo {
 		}
 	}
 
-	private List<SearchOp> createReverseSearchOp(SearchOp op) {
-//		System.out.println("op: " + op + " " + op.new_type_ + " " + op.type_);
-		List<SearchOp> reverse_ops = new ArrayList<SearchOp>();
-		if (op.isDestSwap()) {
-			Connection conn1 = connections_.getConnection(op.node1, op.arg1, op.span1);
-			Connection conn2 = connections_.getConnection(op.node2, op.arg2, op.span2);
-			if (conn1.type != conn2.type) {
-				System.out.println("bad swap types");
-				System.exit(1);
-			}
-			SearchOp reverse = new SearchOp(getOrigin(op.node2, op.arg2, op.span2), op.node2, op.arg2, op.span2,
-					getOrigin(op.node1, op.arg1, op.span1), op.node1, op.arg1, op.span1, 
-					SearchOp.OP_SWAP_DESTS_, op.type_);
-			reverse_ops.add(reverse);
-			return reverse_ops;
-		} else if (op.isNewDest()) {
-			Connection conn = connections_.getConnection(op.node1, op.arg1, op.span1);
-			//			System.out.println(op + " " + conn);
-			if (op.new_type_ != null) {
-				SearchOp reverse = new SearchOp(getOrigin(op.node1, op.arg1, op.span1), op.node2, op.arg2, op.span2,
-					null, op.node1, op.arg1, op.span1, SearchOp.OP_NEW_DEST_, op.new_type_, op.type_);
-				reverse_ops.add(reverse);
-//				System.out.println("revop: " + reverse + " " + op.new_type_ + " " + op.type_);
-			} else {
-				SearchOp reverse = new SearchOp(getOrigin(op.node1, op.arg1, op.span1), op.node2, op.arg2, op.span2,
-					null, op.node1, op.arg1, op.span1, SearchOp.OP_NEW_DEST_, conn.type);
-				reverse_ops.add(reverse);
-			}
-			return reverse_ops;
-		} else if (op.isAddDest()) {
-			SearchOp reverse = new SearchOp(op.origin, op.node1, op.arg1, op.span1, 
-					SearchOp.OP_REMOVE_OUTPUT_, op.type_);
-			reverse_ops.add(reverse);
-			return reverse_ops;
-		} else if (op.isRemoveDest()) {
-			SearchOp reverse = new SearchOp(op.origin, op.node1, op.arg1, op.span1, 
-					SearchOp.OP_ADD_NEW_OUTPUT_, op.type_);
-			reverse_ops.add(reverse);
-			return reverse_ops;
-		} else if (op.isThreeWay()) {
-			if (op.new_type_ != null) {
-				if (op.new_type_ == CONN_TYPE.LOC) {
-					SearchOp reverse = new SearchOp(getOrigin(op.node3, op.arg3, op.span3), op.node3, op.arg3, op.span3,
-						getOrigin(op.node2, op.arg2, op.span2), op.node2, op.arg2, op.span2, 
-						getOrigin(op.node1, op.arg1, op.span1), op.node1, op.arg1, op.span1, SearchOp.OP_THREE_WAY_, op.type_,
-						CONN_TYPE.FOOD);
-					reverse.is_rev = true;
-					reverse_ops.add(reverse);
-				} else {
-					SearchOp reverse = new SearchOp(getOrigin(op.node3, op.arg3, op.span3), op.node3, op.arg3, op.span3,
-							getOrigin(op.node2, op.arg2, op.span2), op.node2, op.arg2, op.span2, 
-							getOrigin(op.node1, op.arg1, op.span1), op.node1, op.arg1, op.span1, SearchOp.OP_THREE_WAY_, op.type_,
-							CONN_TYPE.LOC);
-					reverse.is_rev = true;
-						reverse_ops.add(reverse);
-				}
-			} else {
-				SearchOp reverse = new SearchOp(getOrigin(op.node3, op.arg3, op.span3), op.node3, op.arg3, op.span3,
-						getOrigin(op.node2, op.arg2, op.span2), op.node2, op.arg2, op.span2, 
-						getOrigin(op.node1, op.arg1, op.span1), op.node1, op.arg1, op.span1, SearchOp.OP_THREE_WAY_, op.type_);
-					reverse_ops.add(reverse);
-			}
-			return reverse_ops;
+	// Ingredient set of a node that is about to be recomputed. While an op is being journaled,
+	// the node's old set is kept for popSearchOp() and the node gets a copy to update.
+	private Set<String> ingPhrasesForUpdate(ActionNode node) {
+		Set<String> ings = node_to_ing_phrases_.get(node);
+		if (journaling_ && !journal_ings_.containsKey(node)) {
+			journal_ings_.put(node, ings);
+			ings = (ings == null ? new TreeSet<String>() : new TreeSet<String>(ings));
+			node_to_ing_phrases_.put(node, ings);
+		}
+		if (ings == null) {
+			ings = new TreeSet<String>();
+			node_to_ing_phrases_.put(node, ings);
 		}
-		System.out.println("TODO");
-		System.exit(1);
-		return null;
+		return ings;
 	}
 
 	public void applySearchOp(SearchOp op, GraphScorer gs) {
 		//				System.out.println("APPLY: " + op);
-		reverse = createReverseSearchOp(op);
+		journal_conns_ = new ArrayList<Pair<Connection, Boolean>>();
+		journal_ings_ = new HashMap<ActionNode, Set<String>>();
+		journal_locs_ = new HashMap<ActionNode, Set<String>>();
+		journal_prefs_ = new HashMap<ActionNode, SelectionalPreference>();
+		journaling_ = true;
 		if (op.isDestSwap()) {
 			Connection conn1 = connections_.getConnection(op.node1, op.arg1, op.span1);
 			Connection conn2 = connections_.getConnection(op.node2, op.arg2, op.span2);
@@ -849,15 +892,41 @@ public class GraphInfo {
 			System.out.println("TODO: applySearchOp");
 			System.exit(1);
 		}
+		journaling_ = false;
 	}
 
+	// Undoes the last applySearchOp() from its journal, without recomputing any nodes.
 	public void popSearchOp(GraphScorer gs) {
-		if (reverse == null) {
+		if (journal_conns_ == null) {
 			System.out.println("Nothing to pop.");
 			System.exit(1);
 		}
-		for (SearchOp rev : reverse) {
-			applySearchOp(rev, gs);
+		for (int i = journal_conns_.size() - 1; i >= 0; i--) {
+			Pair<Connection, Boolean> change = journal_conns_.get(i);
+			if (change.getSecond()) {
+				connections_.removeConnection(change.getFirst());
+			} else {
+				connections_.addConnection(change.getFirst());
+			}
+		}
+		restoreNodeValues(node_to_ing_phrases_, journal_ings_);
+		restoreNodeValues(node_to_loc_phrases_, journal_locs_);
+		restoreNodeValues(node_to_selectional_pref, journal_prefs_);
+		version_++;
+		journal_conns_ = null;
+		journal_ings_ = null;
+		journal_locs_ = null;
+		journal_prefs_ = null;
+	}
+
+	private static <V> void restoreNodeValues(Map<ActionNode, V> map, Map<ActionNode, V> saved) {
+		for (ActionNode node : saved.keySet()) {
+			V value = saved.get(node);
+			if (value == null) {
+				map.remove(node);
+			} else {
+				map.put(node, value);
+			}
 		}
 	}
 
@@ -1013,17 +1082,20 @@ public class GraphInfo {
 			CONN_TYPE type, GraphScorer gs) {
 		if (gs.VERBOSE)
 			System.out.println("remove conn " + origin + " -> " + dest_triple + " " + type);
+		if (journaling_) {
+			Connection removed = connections_.getConnection(dest_triple);
+			if (removed != null) {
+				journal_conns_.add(new Pair<Connection, Boolean>(removed, false));
+			}
+		}
 		Connection conn = connections_.removeConnection(origin, dest_triple, type);
+		markDirty(conn);
 
 		// update the rest of the recipe for ing flow.
 		for (int i = conn.destination.getFirst().index(); i < ad.numNodes(); i++) {
 			ActionNode next_node = ad.getNodeAtIndex(i);
 			Set<Connection> incoming_conns = connections_.getIncomingConnectionsToNode(next_node);
-			Set<String> ings = node_to_ing_phrases_.get(next_node);
-			if (ings == null) {
-				ings = new HashSet<String>();
-				node_to_ing_phrases_.put(next_node, ings);
-			}
+			Set<String> ings = ingPhrasesForUpdate(next_node);
 			ings.clear();
 
 			Set<String> orig_ings = node_to_orig_ing_phrases_.get(next_node); 
@@ -1062,12 +1134,12 @@ public class GraphInfo {
 			Argument loc = null;
 			Set<String> ings = node_to_ing_phrases_.get(node);
 			if (ings == null) {
-				ings = new HashSet<String>();
+				ings = new TreeSet<String>();
 				node_to_ing_phrases_.put(node, ings);
 			}
 			Set<String> orig_ings = node_to_orig_ing_phrases_.get(node);
 			if (orig_ings == null) {
-				orig_ings = new HashSet<String>();
+				orig_ings = new TreeSet<String>();
 				node_to_orig_ing_phrases_.put(node, orig_ings);
 			}
 
@@ -1156,12 +1228,12 @@ public class GraphInfo {
 						used_ingredients.add(best_ing);
 						Set<String> ings = node_to_ing_phrases_.get(node);
 						if (ings == null) {
-							ings = new HashSet<String>();
+							ings = new TreeSet<String>();
 							node_to_ing_phrases_.put(node, ings);
 						}
 						Set<String> orig_ings = node_to_orig_ing_phrases_.get(node);
 						if (orig_ings == null) {
-							orig_ings = new HashSet<String>();
+							orig_ings = new TreeSet<String>();
 							node_to_orig_ing_phrases_.put(node, orig_ings);
 						}
 						String[] split = amt_and_ing.getSecond().split(" ");
@@ -1238,12 +1310,12 @@ public class GraphInfo {
 							used_ingredients.add(best_ing);
 							Set<String> ings = node_to_ing_phrases_.get(node);
 							if (ings == null) {
-								ings = new HashSet<String>();
+								ings = new TreeSet<String>();
 								node_to_ing_phrases_.put(node, ings);
 							}
 							Set<String> orig_ings = node_to_orig_ing_phrases_.get(node);
 							if (orig_ings == null) {
-								orig_ings = new HashSet<String>();
+								orig_ings = new TreeSet<String>();
 								node_to_orig_ing_phrases_.put(node, orig_ings);
 							}
 							String[] split = amt_and_ing.getSecond().split(" ");
@@ -1303,12 +1375,12 @@ public class GraphInfo {
 							used_ingredients.add(best_ing);
 							Set<String> ings = node_to_ing_phrases_.get(node);
 							if (ings == null) {
-								ings = new HashSet<String>();
+								ings = new TreeSet<String>();
 								node_to_ing_phrases_.put(node, ings);
 							}
 							Set<String> orig_ings = node_to_orig_ing_phrases_.get(node);
 							if (orig_ings == null) {
-								orig_ings = new HashSet<String>();
+								orig_ings = new TreeSet<String>();
 								node_to_orig_ing_phrases_.put(node, orig_ings);
 							}
 							String[] split = amt_and_ing.getSecond().split(" ");
@@ -1361,12 +1433,12 @@ public class GraphInfo {
 								used_ingredients.add(best_ing);
 								Set<String> ings = node_to_ing_phrases_.get(node);
 								if (ings == null) {
-									ings = new HashSet<String>();
+									ings = new TreeSet<String>();
 									node_to_ing_phrases_.put(node, ings);
 								}
 								Set<String> orig_ings = node_to_orig_ing_phrases_.get(node);
 								if (orig_ings == null) {
-									orig_ings = new HashSet<String>();
+									orig_ings = new TreeSet<String>();
 									node_to_orig_ing_phrases_.put(node, orig_ings);
 								}
 								String[] split = amt_and_ing.getSecond().split(" ");
@@ -1429,12 +1501,12 @@ public class GraphInfo {
 							used_ingredients.add(best_ing);
 							Set<String> ings = node_to_ing_phrases_.get(node);
 							if (ings == null) {
-								ings = new HashSet<String>();
+								ings = new TreeSet<String>();
 								node_to_ing_phrases_.put(node, ings);
 							}
 							Set<String> orig_ings = node_to_orig_ing_phrases_.get(node);
 							if (orig_ings == null) {
-								orig_ings = new HashSet<String>();
+								orig_ings = new TreeSet<String>();
 								node_to_orig_ing_phrases_.put(node, orig_ings);
 							}
 							String[] split = amt_and_ing.getSecond().split(" ");
@@ -1487,12 +1559,12 @@ public class GraphInfo {
 								used_ingredients.add(best_ing);
 								Set<String> ings = node_to_ing_phrases_.get(node);
 								if (ings == null) {
-									ings = new HashSet<String>();
+									ings = new TreeSet<String>();
 									node_to_ing_phrases_.put(node, ings);
 								}
 								Set<String> orig_ings = node_to_orig_ing_phrases_.get(node);
 								if (orig_ings == null) {
-									orig_ings = new HashSet<String>();
+									orig_ings = new TreeSet<String>();
 									node_to_orig_ing_phrases_.put(node, orig_ings);
 								}
 								String[] split = amt_and_ing.getSecond().split(" ");
@@ -1542,12 +1614,12 @@ public class GraphInfo {
 			Argument loc = null;
 			Set<String> ings = node_to_ing_phrases_.get(node);
 			if (ings == null) {
-				ings = new HashSet<String>();
+				ings = new TreeSet<String>();
 				node_to_ing_phrases_.put(node, ings);
 			}
 			Set<String> orig_ings = node_to_orig_ing_phrases_.get(node);
 			if (orig_ings == null) {
-				orig_ings = new HashSet<String>();
+				orig_ings = new TreeSet<String>();
 				node_to_orig_ing_phrases_.put(node, orig_ings);
 			}
 
@@ -1,15 +1,12 @@
 package model;
 
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Map;
 import java.util.Set;
 
 import model.Connections.Connection;
 import model.ConnectionsModel.CONN_TYPE;
 import model.SelectionalPreferenceModel.SelectionalPreference;
-import utils.Measurements;
-import utils.Pair;
+import utils.SymbolTable;
 import utils.Utils;
 import data.ActionDiagram;
 import data.ActionDiagram.ActionNode;
@@ -19,34 +16,66 @@ import data.RecipeEvent.Argument;
 import data.RecipeEvent.Argument.Type;
 import edu.stanford.nlp.util.StringUtils;
 
-// Model for scoring action graphs.
+// Scores one action graph. The models are shared and read-only; the graph and the cached
+// node scores belong to this scorer, so each thread or recipe should use its own scorer.
 public class GraphScorer {
 
+	private final ScoringModels models;
 	private GraphInfo gi;
-	private RecipeSentenceSegmenter chunker;
-	public ThreeWayStringClassifier str_classifier;
-	public SelectionalPreferenceModel selectional_pref_model;
-	public RevSelectionalPreferenceModel rev_selectional_pref_model;
-	public ConnectionsModel connection_model;
-	private IBM1MixturesModel mixtures_model;
-	private Map<Integer, Double> node_score;
-	
+	private final RecipeSentenceSegmenter chunker;
+	public final ThreeWayStringClassifier str_classifier;
+	public final SelectionalPreferenceModel selectional_pref_model;
+	public final RevSelectionalPreferenceModel rev_selectional_pref_model;
+	public final ConnectionsModel connection_model;
+	private final IBM1MixturesModel mixtures_model;
+	// per-node terms of the current graph, reused by getGraphScore(SearchOp)
+	private double[] node_score;
+	private double[] node_conn_score;
+	private int node_score_version;
+	// SymbolTable ids of each node's strings, resolved through the models once they have
+	// interned their strings. The ingredient and location ids are for one graph version.
+	private static class NodeIds {
+		int verb_id;
+		int loc_verb_id;
+		int[] ing_ids;
+		int ing_version;
+		int[] loc_ids;
+		int loc_version;
+	}
+	private NodeIds[] node_ids;
+
 	public static boolean VERBOSE = false;
 
+	// score search ops by rescoring only the nodes the op touched
+	public static boolean DELTA_SCORING = true;
+	// recompute the full score alongside the delta score and report mismatches
+	private static boolean CHECK_DELTA_SCORING = false;
+
 	private static boolean USE_PRED_PROB = false;
 
+	// Scorer for the given graph. The node scores are computed on first use, so the
+	// graph does not need to be updated yet.
+	public GraphScorer(ScoringModels models, GraphInfo gi) {
+		this.models = models;
+		this.gi = gi;
+		this.chunker = models.chunker;
+		this.str_classifier = models.str_classifier;
+		this.selectional_pref_model = models.selectional_pref_model;
+		this.rev_selectional_pref_model = models.rev_selectional_pref_model;
+		this.mixtures_model = models.mixtures_model;
+		this.connection_model = models.connection_model;
+	}
+
+	public GraphScorer(ScoringModels models) {
+		this(models, null);
+	}
+
 	public GraphScorer(GraphInfo gi, RecipeSentenceSegmenter chunker, ThreeWayStringClassifier str_classifier, 
 			SelectionalPreferenceModel selectional_pref_model, 
 			RevSelectionalPreferenceModel rev_selectional_pref_model, IBM1MixturesModel mix_model,
 			ConnectionsModel conn_model) {
-		this.gi = gi;
-		this.chunker = chunker;
-		this.str_classifier = str_classifier;
-		this.selectional_pref_model = selectional_pref_model;
-		this.rev_selectional_pref_model = rev_selectional_pref_model;
-		this.mixtures_model = mix_model;
-		this.connection_model = conn_model;
-		node_score = new HashMap<Integer, Double>();
+		this(new ScoringModels(chunker, str_classifier, selectional_pref_model, rev_selectional_pref_model, 
+				mix_model, conn_model), gi);
 		initNodeScores();
 	}
 
@@ -54,14 +83,12 @@ public class GraphScorer {
 			SelectionalPreferenceModel selectional_pref_model, 
 			RevSelectionalPreferenceModel rev_selectional_pref_model, IBM1MixturesModel mix_model,
 			ConnectionsModel conn_model) {
-		this.gi = null;
-		this.chunker = chunker;
-		this.str_classifier = str_classifier;
-		this.selectional_pref_model = selectional_pref_model;
-		this.rev_selectional_pref_model = rev_selectional_pref_model;
-		this.mixtures_model = mix_model;
-		this.connection_model = conn_model;
-		node_score = new HashMap<Integer, Double>();
+		this(new ScoringModels(chunker, str_classifier, selectional_pref_model, rev_selectional_pref_model, 
+				mix_model, conn_model), null);
+	}
+
+	public ScoringModels models() {
+		return models;
 	}
 
 	public GraphInfo graphInfo() {
@@ -70,54 +97,82 @@ public class GraphScorer {
 
 	public void changeGraph(GraphInfo new_gi) {
 		gi = new_gi;
-		node_score.clear();
+		node_score = null;
+		node_conn_score = null;
+		node_ids = null;
+	}
+
+	private NodeIds nodeIds(ActionNode node) {
+		if (node_ids == null) {
+			node_ids = new NodeIds[gi.actionDiagram().numNodes()];
+		}
+		NodeIds ids = node_ids[node.index()];
+		if (ids == null) {
+			ids = new NodeIds();
+			String predicate = node.event().predicate();
+			ids.verb_id = rev_selectional_pref_model.verbId(predicate);
+			ids.loc_verb_id = str_classifier.predicateId(predicate);
+			node_ids[node.index()] = ids;
+		}
+		return ids;
+	}
+
+	private int[] ingIds(ActionNode node, Set<String> ings) {
+		NodeIds ids = nodeIds(node);
+		if (ids.ing_ids == null || ids.ing_version != gi.version()) {
+			ids.ing_ids = SymbolTable.GLOBAL.ids(ings);
+			ids.ing_version = gi.version();
+		}
+		return ids.ing_ids;
+	}
+
+	private int[] locIds(ActionNode node, Set<String> locs) {
+		NodeIds ids = nodeIds(node);
+		if (ids.loc_ids == null || ids.loc_version != gi.version()) {
+			ids.loc_ids = str_classifier.tokenIds(locs, false);
+			ids.loc_version = gi.version();
+		}
+		return ids.loc_ids;
 	}
 
 	public double getConnectionsLogProb() {
-		double lprob = Math.log(0.5);
 		ActionDiagram ad = gi.actionDiagram();
-		
-//	
 		double pref_prob = 0.0;
 		for (int n = 0; n < ad.numNodes(); n++) {
-			ActionNode node = ad.getNodeAtIndex(n);
-			RecipeEvent event = node.event();
-			SelectionalPreference pref = gi.getSelectionalPreferencesOfNode(node);
-			pref_prob += rev_selectional_pref_model.lprobPrefPrior(pref.pref_type);
-			for (Argument arg : pref.arg_arr) {
-				if (arg == pref.loc) {
-					continue;
-				}
-				for (String span : arg.nonIngredientSpans()) {
-					ActionNode origin = gi.connections_.getOrigin(node, arg, span);
-					if (origin == null) {
-						pref_prob += Math.log(connection_model.good_conn);
-					}
-				}
+			pref_prob += getNodeConnectionsLogProb(ad.getNodeAtIndex(n));
+		}
+		return pref_prob;
+	}
+
+	// Connection prior contributed by a single node: its preference type, unfilled
+	// arguments and number of outputs.
+	public double getNodeConnectionsLogProb(ActionNode node) {
+		ActionDiagram ad = gi.actionDiagram();
+		SelectionalPreference pref = gi.getSelectionalPreferencesOfNode(node);
+		double pref_prob = rev_selectional_pref_model.lprobPrefPrior(pref.pref_type);
+		for (Argument arg : pref.arg_arr) {
+			if (arg == pref.loc) {
+				continue;
 			}
-			Argument loc = pref.loc;
-			if (loc != null && gi.connections_.getOrigin(node, loc, loc.string()) == null) {
-				pref_prob += Math.log(connection_model.good_conn);
+			for (String span : arg.nonIngredientSpans()) {
+				ActionNode origin = gi.connections_.getOrigin(node, arg, span);
+				if (origin == null) {
+					pref_prob += connection_model.logGoodConn();
+				}
 			}
+		}
+		Argument loc = pref.loc;
+		if (loc != null && gi.connections_.getOrigin(node, loc, loc.string()) == null) {
+			pref_prob += connection_model.logGoodConn();
+		}
 
-			pref_prob += pref.other_args.size() * Math.log(connection_model.good_conn);
-			
-			if (n != ad.numNodes() - 1) {
-				Set<Connection> dests = gi.dest_set(node);
-				if (dests == null || dests.size() == 0) {
-					lprob += -100000000000.0;
-				} else {
-					int num_outputs = dests.size();
-					pref_prob += Math.log(connection_model.good_conn);
-					pref_prob += (num_outputs - 1) * Math.log(1.0 - connection_model.good_conn);
-					for (Connection conn : dests) {
-						int closeness = conn.destination.getFirst().index() - conn.origin.index();
-						double sum = LinearDistribution.getSum(conn.destination.getFirst().index() + 1);
-						if (conn.type != CONN_TYPE.FOOD && conn.type != CONN_TYPE.LOC) {
-							lprob += Math.log(connection_model.otherConnProb());
-						}
-					}
-				}
+		pref_prob += pref.other_args.size() * connection_model.logGoodConn();
+
+		if (node.index() != ad.numNodes() - 1) {
+			int num_outputs = gi.connections_.numOutgoingConnections(node);
+			if (num_outputs != 0) {
+				pref_prob += connection_model.logGoodConn();
+				pref_prob += (num_outputs - 1) * connection_model.logNotGoodConn();
 			}
 		}
 		return pref_prob;
@@ -128,8 +183,9 @@ public class GraphScorer {
 		RecipeEvent event = node.event();
 		String predicate = event.predicate();
 		SelectionalPreference pref = gi.getSelectionalPreferencesOfNode(node);
+		SpanScoreCache span_cache = gi.spanScoreCache(str_classifier, mixtures_model);
 		
-		lprob += rev_selectional_pref_model.lprobVerbGivenPref(predicate, pref.pref_type);
+		lprob += rev_selectional_pref_model.lprobVerbGivenPref(nodeIds(node).verb_id, pref.pref_type);
 
 		boolean imp_prep = false;
 		for (int i = 0; i < pref.arg_arr.length; i++) {
@@ -155,32 +211,15 @@ public class GraphScorer {
 //							lprob += Math.log(0.5);
 							lprob += Double.NEGATIVE_INFINITY;
 						} else {
-							Pair<String, String> amt_and_ing = Measurements.splitAmountString(span);
-							String[] split = amt_and_ing.getSecond().split(" ");
-							if (split.length == 0) {
-								split = new String[]{span};
-							}
-							boolean found = false;
-							boolean other = false;
-							for (String s : split) {
-								if (gi.all_ing_phrases_.contains(Utils.stem(s))) {
-									if (VERBOSE)
-									System.out.println(found + " " + amt_and_ing.getSecond() + " " + s);
-									found = true;
-								} else {
-									other = true;
-								}
-							}
-							HashSet<String> stems = new HashSet<String>();
-							for (String s : split) {
-								if (s.length() < 3) {
-									continue;
-								}
-								if (!Utils.isMostlyNounInWordNet(s)) {
-									continue;
+							SpanScoreCache.SpanTerms terms = span_cache.spanTerms(span);
+							if (VERBOSE) {
+								boolean found = false;
+								for (String s : terms.tokens) {
+									if (gi.all_ing_phrases_.contains(Utils.stem(s))) {
+										System.out.println(found + " " + terms.text + " " + s);
+										found = true;
+									}
 								}
-								String stem = Utils.stem(s);
-								stems.add(stem);
 							}
 //							if (found && !other) {
 ////								lprob += Math.log(0.0000000000001);
@@ -190,7 +229,7 @@ public class GraphScorer {
 							// NEW AUG
 							lprob += connection_model.impFoodProb();
 							//
-								lprob += str_classifier.lprobPhraseGivenRaw(Utils.stem(split[split.length - 1]), false);
+								lprob += terms.raw_lprob;
 								if (VERBOSE)
 								System.out.println(span + " " + (Math.log(0.9999999999999) + str_classifier.lprobPhraseIsRawGivenIng(span, true)));
 //							}
@@ -238,23 +277,14 @@ public class GraphScorer {
 							lprob += Math.log(1.0 - Math.exp(-100));
 						}
 						if (!span.equals("")) {
-							Pair<String, String> amt_and_ing = Measurements.splitAmountString(span);
-							String[] split = amt_and_ing.getSecond().split(" ");
+							SpanScoreCache.SpanTerms terms = span_cache.spanTerms(span);
 							boolean match = false;
 							int match_count = 0;
 							if (VERBOSE)
 							System.out.println("span: " + span + " " + gi.visible_arg_to_type_.get(arg)
 									+ " " + connection.type);
-							HashSet<String> stems = new HashSet<String>();
-							for (String s: split) {
-								if (s.length() < 3) {
-									continue;
-								}
-								if (!Utils.isMostlyNounInWordNet(s)) {
-									continue;
-								}
-								String stem = Utils.stem(s);
-								stems.add(stem);
+							Set<String> stems = terms.noun_stems;
+							for (String stem : stems) {
 								if (ings.contains(stem)) {
 									match = true;
 									match_count++;
@@ -267,7 +297,7 @@ public class GraphScorer {
 //									lprob += Math.log(0.0001);
 //								}
 								if (match_count > 0) {
-									lprob += Math.log(connection_model.evoFoodProb()) + Math.log(0.99);
+									lprob += connection_model.logEvoFoodProb() + Math.log(0.99);
 //									lprob += Math.log(connection_model.evoFoodProb()) + (match_count * Math.log(0.99));
 //									if (ings.size() != match_count) {
 //										lprob += (stems.size() - match_count) * Math.log(0.01);
@@ -275,9 +305,9 @@ public class GraphScorer {
 									if (VERBOSE)
 										System.out.println(span + " " + ings + " " + match);
 								} else {
-									double prob = Math.log(connection_model.evoFoodProb());
+									double prob = connection_model.logEvoFoodProb();
 									
-									prob +=  str_classifier.lprobPhraseGivenMix(Utils.stem(split[split.length - 1]), false);
+									prob +=  terms.mix_lprob;
 //									for (String stem : stems) {
 //										prob +=  str_classifier.lprobPhraseGivenMix(stem, false);
 //									}
@@ -287,13 +317,13 @@ public class GraphScorer {
 //									lprob += stems.size() * Math.log(0.01);
 								}
 							} else {
-								double prob =  Math.log(connection_model.evoFoodProb()) + mixtures_model.logProbOfMixGivenIngs(predicate, StringUtils.join(stems), ings);
+								double prob =  connection_model.logEvoFoodProb() + mixtures_model.logProbOfMixGivenIngs(terms.noun_stem_ids, ingIds(connection.origin, ings));
 								if (VERBOSE)
 								System.out.println(stems + " " + ings + " "  + prob);
 								lprob += prob;
 							}
 						} else {
-							lprob += Math.log(connection_model.impFoodProb());
+							lprob += connection_model.logImpFoodProb();
 //							System.out.println("imp food prob");
 						}
 					}
@@ -336,39 +366,29 @@ public class GraphScorer {
 //							lprob += locs.size() * Math.log(0.0001);
 							// NEW AUG 11 - switch
 //							lprob += Math.log(0.0001);
-							lprob += Math.log(connection_model.imp_loc_conn_prob);
-							lprob += Math.log(1.0 - connection_model.imp_loc_conn_prob);
+							lprob += connection_model.logImpLocConnProb();
+							lprob += connection_model.logNotImpLocConnProb();
 							// NEW AUG 11 END
 						} else {
-							double prob = str_classifier.lprobTknsGivenLoc(node.event().predicate(), locs, false);
+							double prob = str_classifier.lprobTknsGivenLoc(nodeIds(node).loc_verb_id, locIds(connection.origin, locs));
 							if (VERBOSE)
 								System.out.println(node.event().predicate() + " " + locs + prob);
 							lprob += prob;
 							// NEW AUG 11
-							lprob += Math.log(connection_model.imp_loc_conn_prob);
+							lprob += connection_model.logImpLocConnProb();
 							// NEW AUG 11 END
 						}
 					} else {
-						Pair<String, String> amt_and_ing = Measurements.splitAmountString(loc_string);
-						String[] split = amt_and_ing.getSecond().split(" ");
 						boolean match = false;
 						int match_count = 0;
 						HashSet<String> stems = new HashSet<String>();
-						for (int a = split.length - 1; a >= 0; a--) {
-							String s = split[a];
-							//							if (s.length() < 3) {
-							//								continue;
-							//							}
-							//							if (!Utils.isMostlyNounInWordNet(s)) {
-							//								continue;
-							//							}
-							String stem = Utils.stem(s);
-							stems.add(stem);
-							if (locs.contains(stem)) {
+						String loc_stem = span_cache.locStem(loc_string);
+						if (loc_stem != null) {
+							stems.add(loc_stem);
+							if (locs.contains(loc_stem)) {
 								match_count++;
 								match = true;
 							}
-							break;
 						}
 						boolean pmatch = false;
 						for (int a = connection.origin.index() + 1; a < node.index(); a++) {
@@ -380,13 +400,10 @@ public class GraphScorer {
 								if (ploc_string.equals("")) {
 									continue;
 								}
-								Pair<String, String> pamt_and_ing = Measurements.splitAmountString(ploc_string);
-								String[] psplit = pamt_and_ing.getSecond().split(" ");
-								if (psplit.length == 0) {
+								String stem = span_cache.locStem(ploc_string);
+								if (stem == null) {
 									continue;
 								}
-								String ps = psplit[psplit.length - 1];
-								String stem = Utils.stem(ps);
 								if (locs.contains(stem)) {
 									pmatch = true;
 									break;
@@ -401,11 +418,11 @@ public class GraphScorer {
 //								lprob += Math.log(0.999999);
 								// NEW AUG 11
 								if (str_classifier.verb_to_location_counts_ == null || str_classifier.verb_to_location_counts_.size() == 0) {
-									lprob += Math.log(1.0 - connection_model.imp_loc_conn_prob);
+									lprob += connection_model.logNotImpLocConnProb();
 								} else {
-									double p1 = Math.log(1.0 - connection_model.imp_loc_conn_prob);
-									double impprob = str_classifier.lprobTknsGivenLoc(node.event().predicate(), locs, false);
-									double p2 = Math.log(1.0 - Math.exp(impprob)) + Math.log(connection_model.imp_loc_conn_prob);
+									double p1 = connection_model.logNotImpLocConnProb();
+									double impprob = str_classifier.lprobTknsGivenLoc(nodeIds(node).loc_verb_id, locIds(connection.origin, locs));
+									double p2 = Math.log(1.0 - Math.exp(impprob)) + connection_model.logImpLocConnProb();
 //									double ibmprob = mixtures_model.logProbOfMixGivenIngs(predicate, StringUtils.join(stems), locs);
 									lprob += Utils.logsumexp(p1, p2);
 //									System.out.println(Math.exp(Utils.logsumexp(p1, p2)));
@@ -527,16 +544,18 @@ public class GraphScorer {
 
 	public void initNodeScores() {
 		ActionDiagram ad = gi.actionDiagram();
+		node_score = new double[ad.numNodes()];
+		node_conn_score = new double[ad.numNodes()];
 		for (int i = 0; i < ad.numNodes(); i++) {
 			ActionNode node = ad.getNodeAtIndex(i);
-
+			node_conn_score[i] = getNodeConnectionsLogProb(node);
 
 			double lprob = getNodeScore(node);
 			if (VERBOSE)
 				System.out.println("INIT NODE SCORE: " + lprob);
-			node_score.put(i, lprob);
+			node_score[i] = lprob;
 		}
-
+		node_score_version = gi.version();
 	}
 
 	public double getGraphScore() {
@@ -562,7 +581,7 @@ public class GraphScorer {
 			double nodescore;
 			if (i < start_index) {
 				System.exit(1);
-				nodescore = node_score.get(i);
+				nodescore = node_score[i];
 			} else {
 				nodescore = getNodeScore(ad.getNodeAtIndex(i));
 			}
@@ -585,9 +604,51 @@ public class GraphScorer {
 			}
 		}
 
+		if (!DELTA_SCORING) {
+			gi.applySearchOp(op, this);
+			double lprob = getGraphScore(0);
+			gi.popSearchOp(this);
+			return lprob;
+		}
+
+		// the cached terms describe the graph as it was when they were computed
+		if (node_score == null || node_score_version != gi.version()) {
+			initNodeScores();
+		}
+		gi.clearDirtyRegion();
 		gi.applySearchOp(op, this);
-		double lprob = getGraphScore(0);
+		double lprob = getDeltaGraphScore(gi.dirtyFrom(), gi.dirtyOrigins());
+		if (CHECK_DELTA_SCORING) {
+			double full_lprob = getGraphScore(0);
+			if (full_lprob != lprob) {
+				System.out.println("Delta score mismatch for " + op + ": " + lprob + " vs " + full_lprob);
+			}
+		}
 		gi.popSearchOp(this);
+		// popping restores the graph, so the cached terms are still valid
+		node_score_version = gi.version();
+		return lprob;
+	}
+
+	// Same sum as getGraphScore(0), but nodes before dirty_from only have their
+	// connection term recomputed if their outputs changed, and otherwise come from the cache.
+	private double getDeltaGraphScore(int dirty_from, Set<Integer> dirty_origins) {
+		ActionDiagram ad = gi.actionDiagram();
+		double lprob = 0.0;
+		for (int i = 0; i < ad.numNodes(); i++) {
+			if (i >= dirty_from || dirty_origins.contains(i)) {
+				lprob += getNodeConnectionsLogProb(ad.getNodeAtIndex(i));
+			} else {
+				lprob += node_conn_score[i];
+			}
+		}
+		for (int i = 0; i < ad.numNodes(); i++) {
+			if (i >= dirty_from) {
+				lprob += getNodeScore(ad.getNodeAtIndex(i));
+			} else {
+				lprob += node_score[i];
+			}
+		}
 		return lprob;
 	}
 
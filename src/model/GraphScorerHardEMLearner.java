@@ -2,299 +2,539 @@ package model;
 
 import java.io.File;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
-import model.Connections.Connection;
-import model.SelectionalPreferenceModel.SelectionalPreference;
 import utils.Pair;
 import utils.Utils;
 import data.ActionDiagram;
 import data.RecipeSentenceSegmenter;
 import data.ProjectParameters;
-import data.ActionDiagram.ActionNode;
-import data.RecipeEvent.Argument;
-import data.RecipeEvent.Argument.Type;
+import data.RecipeCorpus;
 
 /***
  * Trains the recipe parsing model.
  * 
  * To run:
- * java GraphScorerHardEMLearner num_iterations_to_run chunker_model_file any_string_version_information_for_model_names
+ * java GraphScorerHardEMLearner num_iterations_to_run chunker_model_file any_string_version_information_for_model_names [num_threads] [resume]
+ *
+ * With "resume", training continues from the last checkpoint of the same version information.
+ *
+ * To run the E-step in worker processes:
+ * java GraphScorerHardEMLearner shards num_iterations_to_run chunker_model_file version_information num_shards [num_threads_per_shard]
  * @author chloe
  *
  */
 public class GraphScorerHardEMLearner {
 
-	private static double alpha = 0.01;
+	// Start the IBM1 models of each iteration from those of the previous one.
+	public static boolean WARM_START_MIXTURES = true;
+
+	// EM rounds of the cold-started IBM1 models, by model name, to report the rounds saved
+	// by warm starts.
+	private static Map<String, Integer> cold_mixture_rounds = new HashMap<String, Integer>();
+
+	// Also write the models of each iteration to a ModelBundle, and load the models of the
+	// previous iteration from it when it exists.
+	public static boolean USE_MODEL_BUNDLE = true;
+
+	// Recipes parsed between checkpoints of the E-step; 0 disables checkpoints.
+	public static int CHECKPOINT_INTERVAL = 500;
+
+	// Continue from the checkpoint left by an earlier run instead of starting over.
+	public static boolean RESUME = false;
+
+	// Start the local search of each recipe from its graph of the previous iteration instead of
+	// the linear initialization.
+	public static boolean WARM_START_SEARCH = true;
+
+	// Committed graphs of the last parse of each recipe, by recipe name.
+	private static Map<String, SavedGraph> saved_graphs = new ConcurrentHashMap<String, SavedGraph>();
+
+	// Finds the connections of a recipe under the current models.
+	public static GraphInfo parseRecipe(ActionDiagram ad, ScoringModels models) {
+		return parseRecipe(ad, models, null, null);
+	}
+
+	// Same, seeding the search with the recipe's graph in graphs when there is one that
+	// still fits the recipe, and with the linear initialization otherwise. The new graph is put
+	// back in graphs. Either may be null.
+	public static GraphInfo parseRecipe(ActionDiagram ad, ScoringModels models,
+			Map<String, SavedGraph> graphs, HardEMStatistics stats) {
+		GraphInfo gi = new GraphInfo(ad, true, true, models.str_classifier, models.selectional_pref_model);
+		System.out.println(gi.visible_arg_to_type_);
+		GraphScorer scorer = new GraphScorer(models, gi);
+		gi.update(scorer);
+		SavedGraph prior = (graphs == null ? null : graphs.get(ad.recipeName()));
+		boolean warm_start = (prior != null && prior.seed(gi, scorer));
+		if (!warm_start) {
+			LinearGraphInfoInitializer.initialize(gi, scorer, true, true);
+		}
+		scorer.initNodeScores();
+		LocalSearcher searcher = new LocalSearcher(gi, scorer);
+		searcher.initialize();
+		searcher.run();
+		gi.commitConnections();
+
+		int steps = searcher.numSteps();
+		int cold_steps = (warm_start ? prior.cold_search_steps : steps);
+		if (stats != null) {
+			stats.search_steps += steps;
+			if (!warm_start) {
+				stats.num_cold_starts++;
+			} else {
+				stats.num_warm_starts++;
+				if (cold_steps != -1) {
+					stats.warm_search_steps += steps;
+					stats.warm_cold_search_steps += cold_steps;
+				}
+			}
+		}
+		if (graphs != null) {
+			SavedGraph saved = SavedGraph.fromGraph(gi);
+			saved.search_steps = steps;
+			saved.cold_search_steps = cold_steps;
+			graphs.put(ad.recipeName(), saved);
+		}
+		return gi;
+	}
+
+	// E-step. The recipes are split into contiguous blocks, one per thread, and each thread
+	// collects its own counts. The counts are merged in block order, so the result is the
+	// same for any number of threads.
+	public static HardEMStatistics parseRecipes(final List<ActionDiagram> recipes, final ScoringModels models, 
+			int num_threads) {
+		num_threads = Math.max(1, Math.min(num_threads, recipes.size()));
+		final HardEMStatistics[] thread_stats = new HardEMStatistics[num_threads];
+		Thread[] workers = new Thread[num_threads];
+		for (int t = 0; t < num_threads; t++) {
+			final int start = (int) ((long) recipes.size() * t / num_threads);
+			final int end = (int) ((long) recipes.size() * (t + 1) / num_threads);
+			final HardEMStatistics stats = new HardEMStatistics();
+			thread_stats[t] = stats;
+			workers[t] = new Thread(new Runnable() {
+				public void run() {
+					for (int i = start; i < end; i++) {
+						GraphInfo gi = parseRecipe(recipes.get(i), models,
+								(WARM_START_SEARCH ? saved_graphs : null), stats);
+						stats.addData(gi);
+					}
+				}
+			});
+		}
+		if (num_threads == 1) {
+			workers[0].run();
+		} else {
+			for (int t = 0; t < num_threads; t++) {
+				workers[t].start();
+			}
+			for (int t = 0; t < num_threads; t++) {
+				try {
+					workers[t].join();
+				} catch (InterruptedException e) {
+					e.printStackTrace();
+					System.exit(1);
+				}
+			}
+		}
+
+		return HardEMStatistics.reduce(thread_stats);
+	}
+
+	// Learns the IBM1 model written to model_name + "_" + (iter+1) + ".model", warm-started from
+	// the one of the previous iteration if there is one.
+	private static IBM1MixturesModel learnMixturesModel(String model_name, Set<String> tkns,
+			List<Pair<String, Set<String>>> data, String version_info, int iter) throws IOException {
+		IBM1MixturesModel prior = null;
+		String prior_file = ProjectParameters.DEFAULT_DATA_DIRECTORY + version_info + model_name + "_" + iter + ".model";
+		if (WARM_START_MIXTURES && iter > 0 && new File(prior_file).exists()) {
+			prior = IBM1MixturesModel.readModelFromFile(prior_file);
+		}
+		IBM1MixturesModel model = IBM1MixturesModel.learnModelFromData(tkns, data, prior);
+		String progress = model_name + ": " + model.emSummary();
+		if (prior == null) {
+			cold_mixture_rounds.put(model_name, model.numEMRounds());
+		} else if (cold_mixture_rounds.containsKey(model_name)) {
+			progress += ", " + (cold_mixture_rounds.get(model_name) - model.numEMRounds()) + " saved against the cold start";
+		}
+		System.out.println(progress);
+		return model;
+	}
+
+	// Models of an iteration: the initial models for the first one, and those written by the
+	// previous iteration after that.
+	private static ScoringModels loadModels(RecipeSentenceSegmenter chunker, String version_info, int iter) throws IOException {
+		ThreeWayStringClassifier str_classifier = null;
+		SelectionalPreferenceModel selectional_preference_model = null;
+		RevSelectionalPreferenceModel rev_selectional_preference_model = null;
+		IBM1MixturesModel mixtures_model = null;
+		ConnectionsModel conn_model = null;
+		String bundle_file = ProjectParameters.DEFAULT_DATA_DIRECTORY + version_info + "models_" + iter + ".bundle";
+		if (iter == 0) {
+			str_classifier = ThreeWayStringClassifier.readPhraseIdentifierFromFile(ProjectParameters.DEFAULT_DATA_DIRECTORY + "init_string_classifier_stem_lastloc_nouns.model");
+			selectional_preference_model = SelectionalPreferenceModel.readModelFromFile(ProjectParameters.DEFAULT_DATA_DIRECTORY + "init_selectional_pref.model");
+			rev_selectional_preference_model = RevSelectionalPreferenceModel.readModelFromFile(ProjectParameters.DEFAULT_DATA_DIRECTORY + "init_rev_selectional_pref_leaf2.model");
+			conn_model = new ConnectionsModel();	
+		} else if (USE_MODEL_BUNDLE && new File(bundle_file).exists()) {
+			ModelBundle.Reader reader = new ModelBundle.Reader(bundle_file);
+			str_classifier = ThreeWayStringClassifier.readFromBundle(reader, ModelBundle.STR_CLASSIFIER);
+			rev_selectional_preference_model = RevSelectionalPreferenceModel.readFromBundle(reader, ModelBundle.REV_PREF_MODEL);
+			selectional_preference_model = SelectionalPreferenceModel.readFromBundle(reader, ModelBundle.PREF_MODEL);
+			mixtures_model = IBM1MixturesModel.readFromBundle(reader, ModelBundle.MIX_MODEL);
+			conn_model = ConnectionsModel.readFromBundle(reader, ModelBundle.CONN_MODEL);
+		} else {
+			str_classifier = ThreeWayStringClassifier.readPhraseIdentifierFromFile(ProjectParameters.DEFAULT_DATA_DIRECTORY + version_info + "str_classifier_" + iter + ".model");
+			rev_selectional_preference_model = RevSelectionalPreferenceModel.readModelFromFile(ProjectParameters.DEFAULT_DATA_DIRECTORY + version_info + "rev_pref_model_" + iter + ".model");
+			selectional_preference_model = SelectionalPreferenceModel.readModelFromFile(ProjectParameters.DEFAULT_DATA_DIRECTORY + version_info + "pref_model_" + iter + ".model");
+			mixtures_model = IBM1MixturesModel.readModelFromFile(ProjectParameters.DEFAULT_DATA_DIRECTORY + version_info + "mix_model_" + iter + ".model");
+			conn_model = ConnectionsModel.readFromFile(ProjectParameters.DEFAULT_DATA_DIRECTORY + version_info + "conn_model_" + iter + ".model");
+		}
+		return new ScoringModels(chunker, str_classifier, selectional_preference_model, 
+				rev_selectional_preference_model, mixtures_model, conn_model);
+	}
+
+	// The recipe files without the later files of a recipe name that was already seen.
+	private static List<Pair<File, File>> uniqueRecipeFiles(List<Pair<File, File>> files) {
+		Set<String> seen_dev_files = new HashSet<String>();
+		List<Pair<File, File>> unique_files = new ArrayList<Pair<File, File>>();
+		for (Pair<File, File> instance : files) {
+			if (seen_dev_files.add(instance.getFirst().getName())) {
+				unique_files.add(instance);
+			}
+		}
+		return unique_files;
+	}
+
+	// Naive diagrams of the recipes with at least two events. The files of those recipes are
+	// added to kept_files if it is not null.
+	private static List<ActionDiagram> loadRecipes(List<Pair<File, File>> files, List<Pair<File, File>> kept_files) {
+		int num_sentences = 0;
+		List<ActionDiagram> recipes = new ArrayList<ActionDiagram>();
+		for (Pair<File, File> instance : files) {
+			ActionDiagram ad = RecipeCorpus.naiveActionDiagram(instance.getFirst(), instance.getSecond(), false, false);
+			System.out.println(ad.recipeName());
+
+			num_sentences += ad.num_sentences;
+			if (ad.numNodes() < 2) {
+				continue;
+			}
+			recipes.add(ad);
+			if (kept_files != null) {
+				kept_files.add(instance);
+			}
+		}
+		System.out.println(num_sentences);
+		System.out.println("recipes: " + files.size());
+		return recipes;
+	}
+
+	// New diagrams of the recipes of kept_files from loadRecipes, since parsing a recipe changes
+	// its diagram.
+	private static List<ActionDiagram> rebuildRecipes(List<Pair<File, File>> kept_files) {
+		List<ActionDiagram> recipes = new ArrayList<ActionDiagram>();
+		for (Pair<File, File> instance : kept_files) {
+			recipes.add(RecipeCorpus.naiveActionDiagram(instance.getFirst(), instance.getSecond(), false, false));
+		}
+		return recipes;
+	}
+
+	// M-step: learns the models of the next iteration from the counts of the parsed recipes and
+	// writes them.
+	private static void learnModels(HardEMStatistics stats, String version_info, int iter) throws IOException {
+		List<Pair<String, Set<String>>> mix_part_pairs = stats.mix_part_pairs;
+		List<Pair<String, Set<String>>> loc_part_pairs = stats.loc_part_pairs;
+		Set<String> mix_tkns = stats.mix_tkns;
+		Set<String> loc_tkns = stats.loc_tkns;
+		int num_imp_loc_edges = stats.num_imp_loc_edges;
+		int imp_loc_edge_close_sum = stats.imp_loc_edge_close_sum;
+		int num_evo_loc_edges = stats.num_evo_loc_edges;
+		int evo_loc_edge_close_sum = stats.evo_loc_edge_close_sum;
+		int num_imp_ing_edges = stats.num_imp_ing_edges;
+		int imp_ing_edge_close_sum = stats.imp_ing_edge_close_sum;
+		int num_evo_ing_edges = stats.num_evo_ing_edges;
+		int evo_ing_edge_close_sum = stats.evo_ing_edge_close_sum;
+		int num_outputs = stats.num_outputs;
+		int num_output_edges = stats.num_output_edges;
+		ConnectionsModelLearner conn_model_learner = stats.conn_model_learner;
+		RevSelectionalPreferenceModelLearner rev_model_learner = stats.rev_model_learner;
+
+		System.out.println(Arrays.toString(stats.pref_stats.pref_cnt.row("add")));
+		System.out.println("search: " + stats.num_warm_starts + " warm starts, " + stats.num_cold_starts +
+				" cold starts, " + stats.search_steps + " steps");
+		if (stats.num_warm_starts > 0) {
+			System.out.println("warm-started search: " + stats.warm_search_steps + " steps, " +
+					(stats.warm_cold_search_steps - stats.warm_search_steps) + " saved against the cold start");
+		}
+
+		ConnectionsModel new_conn_model = conn_model_learner.compute();
+		new_conn_model.writeToFile(ProjectParameters.DEFAULT_DATA_DIRECTORY + version_info + "conn_model_" + (iter+1) + ".model");
+		RevSelectionalPreferenceModel rev_pref_model = rev_model_learner.computeModel();
+		rev_pref_model.writeToFile(ProjectParameters.DEFAULT_DATA_DIRECTORY + version_info + "rev_pref_model_" + (iter+1) + ".model");
+		IBM1MixturesModel.writeDataToFile(mix_part_pairs, ProjectParameters.DEFAULT_DATA_DIRECTORY + version_info + "mix_data_" + (iter+1) + ".model");
+		IBM1MixturesModel.writeDataToFile(loc_part_pairs, ProjectParameters.DEFAULT_DATA_DIRECTORY + version_info + "loc_data_" + (iter+1) + ".model");
+		IBM1MixturesModel new_mix_model = learnMixturesModel("mix_model", mix_tkns, mix_part_pairs, version_info, iter);
+		new_mix_model.writeToFile(ProjectParameters.DEFAULT_DATA_DIRECTORY + version_info + "mix_model_" + (iter+1) + ".model");
+		IBM1MixturesModel new_loc_model = learnMixturesModel("loc_model", loc_tkns, loc_part_pairs, version_info, iter);
+		new_loc_model.writeToFile(ProjectParameters.DEFAULT_DATA_DIRECTORY + version_info + "loc_model_" + (iter+1) + ".model");
+		mix_part_pairs.addAll(loc_part_pairs);
+		mix_tkns.addAll(loc_tkns);
+		IBM1MixturesModel new_mix_and_loc_model = learnMixturesModel("mix_and_loc_model", mix_tkns, mix_part_pairs, version_info, iter);
+		new_mix_and_loc_model.writeToFile(ProjectParameters.DEFAULT_DATA_DIRECTORY + version_info + "mix_and_loc_model_" + (iter+1) + ".model");
+
+		stats.str_stats.classifier().writeToFile(ProjectParameters.DEFAULT_DATA_DIRECTORY + version_info + "str_classifier_" + (iter+1) + ".model");
+
+		SelectionalPreferenceModel new_pref_model = stats.pref_stats.computeModel();
+		new_pref_model.writeToFile(ProjectParameters.DEFAULT_DATA_DIRECTORY + version_info + "pref_model_" + (iter+1) + ".model");
+		if (USE_MODEL_BUNDLE) {
+			ModelBundle.textToBundle(ProjectParameters.DEFAULT_DATA_DIRECTORY + version_info, iter+1,
+					ProjectParameters.DEFAULT_DATA_DIRECTORY + version_info + "models_" + (iter+1) + ".bundle");
+		}
+		System.out.println("imp loc: " + ((double)num_imp_loc_edges / (double)imp_loc_edge_close_sum));
+		System.out.println("evo loc: " + ((double)num_evo_loc_edges / (double)evo_loc_edge_close_sum));
+		System.out.println("imp ing: " + ((double)num_imp_ing_edges / (double)imp_ing_edge_close_sum));
+		System.out.println("evo ing: " + ((double)num_evo_ing_edges / (double)evo_ing_edge_close_sum));
+		System.out.println("num outputs: " + ((double)num_outputs / (double)num_output_edges));
+	}
 
 	public static void main(String args[]) {
+		if (args[0].equals("shards")) {
+			runShards(args);
+			return;
+		}
+		if (args[0].equals("worker")) {
+			runWorker(args);
+			return;
+		}
 		int num_iters = Integer.parseInt(args[0]);
 		String chunker_model_file = args[1];
 		String version_info = "";
-		if (args.length == 3) {
+		if (args.length >= 3) {
 			version_info = args[2];
 		}
+		if (args.length >= 4) {
+			ProjectParameters.NUM_THREADS = Integer.parseInt(args[3]);
+		}
+		if (args.length >= 5 && args[4].equals("resume")) {
+			RESUME = true;
+		}
 		try {
 			RecipeSentenceSegmenter chunker = RecipeSentenceSegmenter.readInFromFile(chunker_model_file);
-			for (int iter = 0; iter < num_iters; iter++) {
-				ThreeWayStringClassifier str_classifier = null;
-				SelectionalPreferenceModel selectional_preference_model = null;
-				RevSelectionalPreferenceModel rev_selectional_preference_model = null;
-				IBM1MixturesModel mixtures_model = null;
-				ConnectionsModel conn_model = null;
-				if (iter == 0) {
-						str_classifier = ThreeWayStringClassifier.readPhraseIdentifierFromFile(ProjectParameters.DEFAULT_DATA_DIRECTORY + "init_string_classifier_stem_lastloc_nouns.model");
-						selectional_preference_model = SelectionalPreferenceModel.readModelFromFile(ProjectParameters.DEFAULT_DATA_DIRECTORY + "init_selectional_pref.model");
-						rev_selectional_preference_model = RevSelectionalPreferenceModel.readModelFromFile(ProjectParameters.DEFAULT_DATA_DIRECTORY + "init_rev_selectional_pref_leaf2.model");
-						conn_model = new ConnectionsModel();	
-				} else {
-					str_classifier = ThreeWayStringClassifier.readPhraseIdentifierFromFile(ProjectParameters.DEFAULT_DATA_DIRECTORY + version_info + "str_classifier_" + iter + ".model");
-					rev_selectional_preference_model = RevSelectionalPreferenceModel.readModelFromFile(ProjectParameters.DEFAULT_DATA_DIRECTORY + version_info + "rev_pref_model_" + iter + ".model");
-					selectional_preference_model = SelectionalPreferenceModel.readModelFromFile(ProjectParameters.DEFAULT_DATA_DIRECTORY + version_info + "pref_model_" + iter + ".model");
-					mixtures_model = IBM1MixturesModel.readModelFromFile(ProjectParameters.DEFAULT_DATA_DIRECTORY + version_info + "mix_model_" + iter + ".model");
-					conn_model = ConnectionsModel.readFromFile(ProjectParameters.DEFAULT_DATA_DIRECTORY + version_info + "conn_model_" + iter + ".model");
+			List<Pair<File, File>> files = Utils.getFileList();
+			if (RecipeCorpus.USE_RECIPE_CORPUS) {
+				RecipeCorpus.loadDefault(files);
+			}
+			// the recipes are listed and read once, and later iterations only rebuild their diagrams
+			List<Pair<File, File>> recipe_files = new ArrayList<Pair<File, File>>();
+			List<ActionDiagram> recipes = loadRecipes(uniqueRecipeFiles(files), recipe_files);
+			String checkpoint_file = ProjectParameters.DEFAULT_DATA_DIRECTORY + version_info + "checkpoint.bin";
+			HardEMCheckpoint checkpoint = null;
+			int start_iter = 0;
+			if (RESUME && new File(checkpoint_file).exists()) {
+				checkpoint = HardEMCheckpoint.readFromFile(checkpoint_file);
+				start_iter = checkpoint.iter;
+				saved_graphs.putAll(checkpoint.saved_graphs);
+				cold_mixture_rounds.putAll(checkpoint.cold_mixture_rounds);
+				System.out.println("Resuming iteration " + start_iter + " after " + checkpoint.parsed_recipes.size() + " recipes");
+			}
+			for (int iter = start_iter; iter < num_iters; iter++) {
+				ScoringModels models = loadModels(chunker, version_info, iter);
+				if (iter != start_iter) {
+					recipes = rebuildRecipes(recipe_files);
 				}
-				GraphScorer scorer = new GraphScorer(chunker, str_classifier, selectional_preference_model, 
-						rev_selectional_preference_model, mixtures_model, conn_model);
-
-				List<Pair<File, File>> dev_files = Utils.getFileList();
-				/*
-				 *  files[0] = ann_file;
-				files[1] = arg_file;
-				files[2] = step_file;
-				files[3] = fulltext_file;
-				 */
-				ThreeWayStringClassifier new_str_classifier = new ThreeWayStringClassifier();
-				List<Pair<String, Set<String>>> mix_part_pairs = new ArrayList<Pair<String, Set<String>>>();
-				List<Pair<String, Set<String>>> loc_part_pairs = new ArrayList<Pair<String, Set<String>>>();
-				Set<String> mix_tkns = new HashSet<String>();
-				Set<String> loc_tkns = new HashSet<String>();
-				Map<String, Integer> verb_cnt = new HashMap<String, Integer>();
-				Map<String, Map<String, Integer>> pref_cnt = new HashMap<String, Map<String, Integer>>();
-				Map<String, Map<String, Integer>> imp_prep_cnt = new HashMap<String, Map<String, Integer>>();
-				Map<String, Integer> loc_cnt = new HashMap<String, Integer>();
-				Map<String, Integer> verb_origin_cnt = new HashMap<String, Integer>();
-				int num_imp_loc_edges = 0;
-				int imp_loc_edge_close_sum = 0;
-				int num_evo_loc_edges = 0;
-				int evo_loc_edge_close_sum = 0;
-				int num_imp_ing_edges = 0;
-				int imp_ing_edge_close_sum = 0;
-				int num_evo_ing_edges = 0;
-				int evo_ing_edge_close_sum = 0;
-				int num_outputs = 0;
-				int num_output_edges = 0;
-				ConnectionsModelLearner conn_model_learner = new ConnectionsModelLearner();
-				RevSelectionalPreferenceModelLearner rev_model_learner = new RevSelectionalPreferenceModelLearner();
-				int num_sentences = 0;
-				Set<String> seen_dev_files = new HashSet<String>();
-
-				for (int i = 0; i < dev_files.size(); i++) {
-					Pair<File, File> instance = dev_files.get(i);
-					ActionDiagram ad = ActionDiagram.generateNaiveActionDiagramFromFile(instance.getFirst(), instance.getSecond(), false, false);
-					System.out.println(ad.recipeName());
-
-					if (seen_dev_files.contains(ad.recipeName())) {
-						continue;
-					}
-					seen_dev_files.add(ad.recipeName());
 
-					num_sentences += ad.num_sentences;
-					if (ad.numNodes() < 2) {
-						continue;
+				String graphs_file = ProjectParameters.DEFAULT_DATA_DIRECTORY + version_info + "graphs_" + iter + ".txt";
+				if (WARM_START_SEARCH && iter > 0 && saved_graphs.isEmpty() && new File(graphs_file).exists()) {
+					SavedGraph.readFromFile(graphs_file, saved_graphs);
+				}
+				// E-step, in blocks of CHECKPOINT_INTERVAL recipes merged in recipe order, so the
+				// counts do not depend on where a run was interrupted.
+				HardEMStatistics stats = new HardEMStatistics();
+				Set<String> parsed_recipes = new HashSet<String>();
+				if (checkpoint != null && checkpoint.iter == iter) {
+					stats = checkpoint.stats;
+					parsed_recipes = checkpoint.parsed_recipes;
+				}
+				checkpoint = null;
+				List<ActionDiagram> unparsed = new ArrayList<ActionDiagram>();
+				for (ActionDiagram ad : recipes) {
+					if (!parsed_recipes.contains(ad.recipeName())) {
+						unparsed.add(ad);
 					}
-
-					GraphInfo gi = new GraphInfo(ad, true, true, scorer.str_classifier, scorer.selectional_pref_model);
-					System.out.println(gi.visible_arg_to_type_);
-					scorer.changeGraph(gi);
-					gi.update(scorer);
-					LinearGraphInfoInitializer.initialize(gi, scorer, true, true);
-					scorer.initNodeScores();
-					LocalSearcher searcher = new LocalSearcher(gi, scorer);
-					searcher.initialize();
-					searcher.run();
-					gi.commitConnections();
-
-					new_str_classifier.addData(gi);
-					conn_model_learner.addData(gi);
-					rev_model_learner.addData(gi);
-
-					Pair<List<Pair<String, Set<String>>>, Set<String>> pairs = gi.collectMixPartPairs();
-					mix_part_pairs.addAll(pairs.getFirst());
-					mix_tkns.addAll(pairs.getSecond());
-					pairs = gi.collectMixLocPartPairs();
-					loc_part_pairs.addAll(pairs.getFirst());
-					loc_tkns.addAll(pairs.getSecond());
-
-					for (int n = 0; n < ad.numNodes(); n++) {
-						ActionNode node = ad.getNodeAtIndex(n);
-						SelectionalPreference pref = gi.getSelectionalPreferencesOfNode(node);
-						String pred = node.event().predicate(); 
-						String pref_type = pref.pref_type;
-
-						if (pref_type.endsWith(":LEAF")) {
-							pref_type = pref_type.substring(0, pref_type.length() - 5);
-						}
-						Utils.incrementStringMapCount(verb_cnt, pred);
-						Utils.incrementStringMapValueCount(pref_cnt, pred, pref_type);
-
-						for (Argument arg : pref.arg_arr) {
-							if (arg.type() != Type.OBJECT) { 
-								if (arg.string().equals("")) {
-									Utils.incrementStringMapValueCount(imp_prep_cnt, pred, "IMP");
-								} else {
-									Utils.incrementStringMapValueCount(imp_prep_cnt, pred, "EVO");
-								}
-							}
-							for (String span : arg.nonIngredientSpans()) {
-								ActionNode origin = gi.getOrigin(node, arg, span);
-								if (origin != null) {
-									int close = node.index() - origin.index();
-									if (span.equals("")) {
-										num_imp_ing_edges++;
-										imp_ing_edge_close_sum += close;
-									} else {
-										num_evo_ing_edges++;
-										evo_ing_edge_close_sum += close;
-									}
-									Utils.incrementStringMapCount(verb_origin_cnt, origin.event().predicate());
-								}
-							}
-						}
-
-						Argument loc = pref.loc;
-						if (loc != null) {
-							ActionNode origin = gi.getOrigin(node, loc, loc.string());
-							if (origin != null) {
-								int close = node.index() - origin.index();
-								if (loc.string().equals("")) {
-									num_imp_loc_edges++;
-									imp_loc_edge_close_sum += close;
-								} else {
-									num_evo_loc_edges++;
-									evo_loc_edge_close_sum += close;
-								}
-								Utils.incrementStringMapCount(verb_origin_cnt, origin.event().predicate());
-								Utils.incrementStringMapCount(loc_cnt, origin.event().predicate());
-							}
-						}
-
-						Set<Connection> dests = gi.dest_set(node);
-						if (n != ad.numNodes() - 1) {
-							num_output_edges += dests.size();
-							num_outputs++;
-						}
+				}
+				int interval = (CHECKPOINT_INTERVAL > 0 ? CHECKPOINT_INTERVAL : Math.max(1, unparsed.size()));
+				for (int start = 0; start < unparsed.size(); start += interval) {
+					List<ActionDiagram> block = unparsed.subList(start, Math.min(start + interval, unparsed.size()));
+					stats.merge(parseRecipes(block, models, ProjectParameters.NUM_THREADS));
+					for (ActionDiagram ad : block) {
+						parsed_recipes.add(ad.recipeName());
 					}
+					if (CHECKPOINT_INTERVAL > 0) {
+						new HardEMCheckpoint(iter, parsed_recipes, stats, saved_graphs, cold_mixture_rounds).writeToFile(checkpoint_file);
+					}
+				}
+				if (WARM_START_SEARCH) {
+					SavedGraph.writeToFile(saved_graphs, ProjectParameters.DEFAULT_DATA_DIRECTORY + version_info + "graphs_" + (iter+1) + ".txt");
 				}
-				System.out.println(pref_cnt.get("add"));
-				System.out.println(num_sentences);
-				System.out.println("recipes: " + seen_dev_files.size());
-				if (true) {
-					ConnectionsModel new_conn_model = conn_model_learner.compute();
-					new_conn_model.writeToFile(ProjectParameters.DEFAULT_DATA_DIRECTORY + version_info + "conn_model_" + (iter+1) + ".model");
-					RevSelectionalPreferenceModel rev_pref_model = rev_model_learner.computeModel();
-					rev_pref_model.writeToFile(ProjectParameters.DEFAULT_DATA_DIRECTORY + version_info + "rev_pref_model_" + (iter+1) + ".model");
-					IBM1MixturesModel.writeDataToFile(mix_part_pairs, ProjectParameters.DEFAULT_DATA_DIRECTORY + version_info + "mix_data_" + (iter+1) + ".model");
-					IBM1MixturesModel.writeDataToFile(loc_part_pairs, ProjectParameters.DEFAULT_DATA_DIRECTORY + version_info + "loc_data_" + (iter+1) + ".model");
-					IBM1MixturesModel new_mix_model = IBM1MixturesModel.learnModelFromData(mix_tkns, mix_part_pairs);
-					new_mix_model.writeToFile(ProjectParameters.DEFAULT_DATA_DIRECTORY + version_info + "mix_model_" + (iter+1) + ".model");
-					IBM1MixturesModel new_loc_model = IBM1MixturesModel.learnModelFromData(loc_tkns, loc_part_pairs);
-					new_loc_model.writeToFile(ProjectParameters.DEFAULT_DATA_DIRECTORY + version_info + "loc_model_" + (iter+1) + ".model");
-					mix_part_pairs.addAll(loc_part_pairs);
-					mix_tkns.addAll(loc_tkns);
-					IBM1MixturesModel new_mix_and_loc_model = IBM1MixturesModel.learnModelFromData(mix_tkns, mix_part_pairs);
-					new_mix_and_loc_model.writeToFile(ProjectParameters.DEFAULT_DATA_DIRECTORY + version_info + "mix_and_loc_model_" + (iter+1) + ".model");
-
-					new_str_classifier.writeToFile(ProjectParameters.DEFAULT_DATA_DIRECTORY + version_info + "str_classifier_" + (iter+1) + ".model");
-
-					SelectionalPreferenceModel new_pref_model = new SelectionalPreferenceModel();
-					Map<String, Integer> global_cnts = new HashMap<String, Integer>();
-					Map<String, Map<String, Double>> probs = new HashMap<String, Map<String, Double>>();
-					Map<String, Map<String, Double>> imp_probs = new HashMap<String, Map<String, Double>>();
-					Map<String, Double> global_probs = new HashMap<String, Double>();
-					Map<String, Double> verb_loc_probs = new HashMap<String, Double>();
-					int global_total_cnt = 0;
-					int ttl_loc = 0;
-					int ttl = 0;
-					for (String verb : verb_cnt.keySet()) {
-						Integer ttl_cnt = verb_cnt.get(verb);
-						Map<String, Integer> pref_cnts = pref_cnt.get(verb);
-						Map<String, Double> pref_probs = new HashMap<String, Double>();
-						
-						for (String pref : SelectionalPreferenceModel.possible_prefs) {
-							Integer cnt = pref_cnts.get(pref);
-							if (cnt == null) {
-								pref_probs.put(pref, Math.log(alpha) - Math.log(ttl_cnt + SelectionalPreferenceModel.possible_prefs.length));
-							} else {
-								Utils.incrementStringMapCount(global_cnts, pref, cnt);
-								pref_probs.put(pref, Math.log(cnt + alpha) - Math.log(ttl_cnt + SelectionalPreferenceModel.possible_prefs.length));
-							}
-						}
-						Map<String, Integer> pred_imp_cnt = imp_prep_cnt.get(verb);
-						Map<String, Double> verb_imp_probs = new HashMap<String, Double>();
-						if (pred_imp_cnt == null) {
-							verb_imp_probs.put("IMP", Math.log(0.5));
-							verb_imp_probs.put("EVO", Math.log(0.5));
-						} else {
-
-							Integer imp_cnt = pred_imp_cnt.get("IMP");
-							if (imp_cnt == null) {
-								imp_cnt = 0;
-							}
-							Integer evo_cnt = pred_imp_cnt.get("EVO");
-							if (evo_cnt == null) {
-								evo_cnt = 0;
-							}
-							double denom = Math.log(imp_cnt + evo_cnt + (2*alpha));
-							verb_imp_probs.put("IMP", Math.log(imp_cnt + alpha) - denom);
-							verb_imp_probs.put("EVO", Math.log(evo_cnt + alpha) - denom);
-						}
-
-						probs.put(verb, pref_probs);
-						imp_probs.put(verb, verb_imp_probs);
-
-						Integer o_cnt = verb_origin_cnt.get(verb);
-						if (o_cnt != null) {
-							ttl += o_cnt;
-							Integer l_cnt = loc_cnt.get(verb);
-							if (l_cnt == null) {
-								verb_loc_probs.put(verb, Math.log(alpha) - Math.log(o_cnt + (2.0*alpha)));
-							} else {
-								ttl_loc += l_cnt;
-								verb_loc_probs.put(verb, Math.log(l_cnt + alpha) - Math.log(o_cnt + (2.0*alpha)));
-							}
-						}
+				System.out.println(Utils.stemCacheStats());
+				learnModels(stats, version_info, iter);
+				if (CHECKPOINT_INTERVAL > 0) {
+					new HardEMCheckpoint(iter+1, new HashSet<String>(), new HardEMStatistics(), saved_graphs,
+							cold_mixture_rounds).writeToFile(checkpoint_file);
+				}
+			}
+		} catch (IOException ex) {
+			ex.printStackTrace();
+		}
+	}
+
+	// Runs the E-step of each iteration in num_shards worker JVMs, on contiguous blocks of the
+	// recipes. The processes only share files: each worker loads the models of the iteration and
+	// writes the counts and graphs of its recipes as a HardEMCheckpoint. The partial counts are
+	// merged in shard order, which is recipe order, so the models are the same as those of a
+	// single process.
+	private static void runShards(String args[]) {
+		int num_iters = Integer.parseInt(args[1]);
+		String chunker_model_file = args[2];
+		String version_info = args[3];
+		int num_shards = Integer.parseInt(args[4]);
+		int num_threads = 1;
+		if (args.length >= 6) {
+			num_threads = Integer.parseInt(args[5]);
+		}
+		try {
+			if (RecipeCorpus.USE_RECIPE_CORPUS) {
+				// build the corpus here rather than in every worker
+				RecipeCorpus.loadDefault(Utils.getFileList());
+			}
+			for (int iter = 0; iter < num_iters; iter++) {
+				Process[] workers = new Process[num_shards];
+				for (int shard = 0; shard < num_shards; shard++) {
+					new File(partialFile(version_info, iter, shard)).delete();
+					workers[shard] = launchWorker(iter, chunker_model_file, version_info, shard, num_shards, num_threads);
+				}
+				for (int shard = 0; shard < num_shards; shard++) {
+					int exit_value = workers[shard].waitFor();
+					if (exit_value != 0) {
+						System.out.println("Worker " + shard + " of iteration " + iter + " failed with exit value " +
+								exit_value + ", see " + workerLogFile(version_info, shard));
+						System.exit(1);
 					}
-					double denom = -1 * Math.log(global_total_cnt + alpha*SelectionalPreferenceModel.possible_prefs.length);
-					for (String possible_pref : SelectionalPreferenceModel.possible_prefs) {
-						Integer cnt = global_cnts.get(possible_pref);
-						if (cnt != null) {
-							global_probs.put(possible_pref, Math.log(cnt.intValue() + alpha) + denom);
-						} else {
-							global_probs.put(possible_pref, Math.log(alpha) + denom);
-						}
+				}
+
+				HardEMStatistics[] shard_stats = new HardEMStatistics[num_shards];
+				int num_recipes = 0;
+				saved_graphs.clear();
+				for (int shard = 0; shard < num_shards; shard++) {
+					HardEMCheckpoint partial = HardEMCheckpoint.readFromFile(partialFile(version_info, iter, shard));
+					if (partial.iter != iter) {
+						System.out.println(partialFile(version_info, iter, shard) + " is from iteration " + partial.iter);
+						System.exit(1);
 					}
-					new_pref_model.setGlobalPrefProbs(global_probs);
-					new_pref_model.setVerbPrefProbs(probs);
-					new_pref_model.setVerbImpPrepProbs(imp_probs);
-					new_pref_model.setVerbLocProbs(verb_loc_probs);
-					new_pref_model.setGlobalLocProb(Math.log(ttl_loc + alpha) - Math.log(ttl + (2*alpha)));
-					new_pref_model.writeToFile(ProjectParameters.DEFAULT_DATA_DIRECTORY + version_info + "pref_model_" + (iter+1) + ".model");
-					System.out.println("imp loc: " + ((double)num_imp_loc_edges / (double)imp_loc_edge_close_sum));
-					System.out.println("evo loc: " + ((double)num_evo_loc_edges / (double)evo_loc_edge_close_sum));
-					System.out.println("imp ing: " + ((double)num_imp_ing_edges / (double)imp_ing_edge_close_sum));
-					System.out.println("evo ing: " + ((double)num_evo_ing_edges / (double)evo_ing_edge_close_sum));
-					System.out.println("num outputs: " + ((double)num_outputs / (double)num_output_edges));
+					shard_stats[shard] = partial.stats;
+					saved_graphs.putAll(partial.saved_graphs);
+					num_recipes += partial.parsed_recipes.size();
+				}
+				HardEMStatistics stats = HardEMStatistics.reduce(shard_stats);
+				if (WARM_START_SEARCH) {
+					SavedGraph.writeToFile(saved_graphs, ProjectParameters.DEFAULT_DATA_DIRECTORY + version_info + "graphs_" + (iter+1) + ".txt");
 				}
+				System.out.println("parsed recipes: " + num_recipes);
+				learnModels(stats, version_info, iter);
+				for (int shard = 0; shard < num_shards; shard++) {
+					new File(partialFile(version_info, iter, shard)).delete();
+				}
+			}
+		} catch (IOException ex) {
+			ex.printStackTrace();
+			System.exit(1);
+		} catch (InterruptedException ex) {
+			ex.printStackTrace();
+			System.exit(1);
+		}
+	}
+
+	// E-step of one shard of runShards.
+	private static void runWorker(String args[]) {
+		int iter = Integer.parseInt(args[1]);
+		String chunker_model_file = args[2];
+		String version_info = args[3];
+		int shard = Integer.parseInt(args[4]);
+		int num_shards = Integer.parseInt(args[5]);
+		ProjectParameters.NUM_THREADS = Integer.parseInt(args[6]);
+		try {
+			RecipeSentenceSegmenter chunker = RecipeSentenceSegmenter.readInFromFile(chunker_model_file);
+			ScoringModels models = loadModels(chunker, version_info, iter);
+			List<Pair<File, File>> files = uniqueRecipeFiles(Utils.getFileList());
+			int start = (int) ((long) files.size() * shard / num_shards);
+			int end = (int) ((long) files.size() * (shard + 1) / num_shards);
+			List<ActionDiagram> recipes = loadRecipes(files.subList(start, end), null);
+			Set<String> parsed_recipes = new HashSet<String>();
+			for (ActionDiagram ad : recipes) {
+				parsed_recipes.add(ad.recipeName());
+			}
+
+			String graphs_file = ProjectParameters.DEFAULT_DATA_DIRECTORY + version_info + "graphs_" + iter + ".txt";
+			if (WARM_START_SEARCH && iter > 0 && new File(graphs_file).exists()) {
+				SavedGraph.readFromFile(graphs_file, saved_graphs);
+				saved_graphs.keySet().retainAll(parsed_recipes);
 			}
+			HardEMStatistics stats = parseRecipes(recipes, models, ProjectParameters.NUM_THREADS);
+			System.out.println(Utils.stemCacheStats());
+			new HardEMCheckpoint(iter, parsed_recipes, stats, saved_graphs, new HashMap<String, Integer>())
+					.writeToFile(partialFile(version_info, iter, shard));
 		} catch (IOException ex) {
 			ex.printStackTrace();
+			System.exit(1);
 		}
 	}
 
+	private static String partialFile(String version_info, int iter, int shard) {
+		return ProjectParameters.DEFAULT_DATA_DIRECTORY + version_info + "partial_" + iter + "_" + shard + ".bin";
+	}
+
+	private static String workerLogFile(String version_info, int shard) {
+		return ProjectParameters.DEFAULT_DATA_DIRECTORY + version_info + "worker_" + shard + ".log";
+	}
+
+	// JVM options of this process that are passed on to the workers: the heap sizes and the system
+	// properties. Others, such as a debugger agent or a heap dump path, are for this process only.
+	private static List<String> workerJvmArguments() {
+		List<String> args = new ArrayList<String>();
+		for (String arg : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+			if (arg.startsWith("-Xmx") || arg.startsWith("-Xms") || arg.startsWith("-D")) {
+				args.add(arg);
+			}
+		}
+		return args;
+	}
+
+	// Starts a worker with the heap sizes, system properties and class path of this process.
+	private static Process launchWorker(int iter, String chunker_model_file, String version_info, int shard,
+			int num_shards, int num_threads) throws IOException {
+		List<String> command = new ArrayList<String>();
+		command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+		command.addAll(workerJvmArguments());
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(GraphScorerHardEMLearner.class.getName());
+		command.add("worker");
+		command.add(Integer.toString(iter));
+		command.add(chunker_model_file);
+		command.add(version_info);
+		command.add(Integer.toString(shard));
+		command.add(Integer.toString(num_shards));
+		command.add(Integer.toString(num_threads));
+		ProcessBuilder builder = new ProcessBuilder(command);
+		builder.redirectErrorStream(true);
+		builder.redirectOutput(new File(workerLogFile(version_info, shard)));
+		return builder.start();
+	}
+
 }
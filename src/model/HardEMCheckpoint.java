@@ -0,0 +1,88 @@
+package model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import utils.Utils;
+
+/***
+ * Where GraphScorerHardEMLearner is in its training: the iteration, the recipes of it parsed so
+ * far and their counts, the graphs that warm-start the remaining searches and the rounds of the
+ * cold-started IBM1 models. Resuming from it gives the same models as an uninterrupted run.
+ *
+ * A checkpoint is written to a temporary file that is synced and then renamed over the previous
+ * one, so the checkpoint file is always complete.
+ */
+public class HardEMCheckpoint {
+	public static final int MAGIC = 0x48454d31; // "HEM1"
+	public static final int VERSION = 2;
+
+	public int iter;
+	public Set<String> parsed_recipes;
+	public HardEMStatistics stats;
+	public Map<String, SavedGraph> saved_graphs;
+	public Map<String, Integer> cold_mixture_rounds;
+
+	public HardEMCheckpoint(int iter, Set<String> parsed_recipes, HardEMStatistics stats,
+			Map<String, SavedGraph> saved_graphs, Map<String, Integer> cold_mixture_rounds) {
+		this.iter = iter;
+		this.parsed_recipes = parsed_recipes;
+		this.stats = stats;
+		this.saved_graphs = saved_graphs;
+		this.cold_mixture_rounds = cold_mixture_rounds;
+	}
+
+	public void writeToFile(String filename) throws IOException {
+		File file = new File(filename);
+		File tmp_file = new File(filename + ".tmp");
+		FileOutputStream file_out = new FileOutputStream(tmp_file);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file_out));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(iter);
+		Utils.writeStringSet(out, parsed_recipes);
+		stats.serialize(out);
+		SavedGraph.writeGraphs(out, saved_graphs);
+		Utils.writeStringMapCounts(out, cold_mixture_rounds);
+		out.flush();
+		file_out.getFD().sync();
+		out.close();
+		if (!tmp_file.renameTo(file)) {
+			file.delete();
+			if (!tmp_file.renameTo(file)) {
+				throw new IOException("Could not rename " + tmp_file + " to " + file);
+			}
+		}
+	}
+
+	public static HardEMCheckpoint readFromFile(String filename) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(filename)));
+		if (in.readInt() != MAGIC) {
+			in.close();
+			throw new IOException(filename + " is not a hard EM checkpoint");
+		}
+		int version = in.readInt();
+		if (version != VERSION) {
+			in.close();
+			throw new IOException(filename + " has checkpoint version " + version + ", expected " + VERSION);
+		}
+		int iter = in.readInt();
+		Set<String> parsed_recipes = Utils.readStringSet(in);
+		HardEMStatistics stats = new HardEMStatistics();
+		stats.deserialize(in);
+		Map<String, SavedGraph> saved_graphs = new HashMap<String, SavedGraph>();
+		SavedGraph.readGraphs(in, saved_graphs);
+		Map<String, Integer> cold_mixture_rounds = Utils.readStringMapCounts(in);
+		in.close();
+		return new HardEMCheckpoint(iter, parsed_recipes, stats, saved_graphs, cold_mixture_rounds);
+	}
+}
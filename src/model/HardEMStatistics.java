@@ -0,0 +1,223 @@
+package model;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import model.Connections.Connection;
+import model.SelectionalPreferenceModel.SelectionalPreference;
+import utils.Pair;
+import utils.Utils;
+import data.ActionDiagram;
+import data.ActionDiagram.ActionNode;
+import data.RecipeEvent.Argument;
+
+/***
+ * Counts collected from the parsed recipes during the E-step of GraphScorerHardEMLearner.
+ * Counts collected on different threads or processes are combined with merge() or reduce().
+ */
+public class HardEMStatistics implements SufficientStatistics<HardEMStatistics> {
+	public StringClassifierStatistics str_stats = new StringClassifierStatistics();
+	public ConnectionsModelLearner conn_model_learner = new ConnectionsModelLearner();
+	public RevSelectionalPreferenceModelLearner rev_model_learner = new RevSelectionalPreferenceModelLearner();
+	public SelectionalPreferenceStatistics pref_stats = new SelectionalPreferenceStatistics();
+
+	public List<Pair<String, Set<String>>> mix_part_pairs = new ArrayList<Pair<String, Set<String>>>();
+	public List<Pair<String, Set<String>>> loc_part_pairs = new ArrayList<Pair<String, Set<String>>>();
+	public Set<String> mix_tkns = new HashSet<String>();
+	public Set<String> loc_tkns = new HashSet<String>();
+
+	public int num_imp_loc_edges = 0;
+	public int imp_loc_edge_close_sum = 0;
+	public int num_evo_loc_edges = 0;
+	public int evo_loc_edge_close_sum = 0;
+	public int num_imp_ing_edges = 0;
+	public int imp_ing_edge_close_sum = 0;
+	public int num_evo_ing_edges = 0;
+	public int evo_ing_edge_close_sum = 0;
+	public int num_outputs = 0;
+	public int num_output_edges = 0;
+
+	// local search: recipes seeded from their graph of the previous iteration or from the linear
+	// initialization, accepted ops, and for the warm-started recipes, the accepted ops of their
+	// last cold-started search
+	public int num_warm_starts = 0;
+	public int num_cold_starts = 0;
+	public int search_steps = 0;
+	public int warm_search_steps = 0;
+	public int warm_cold_search_steps = 0;
+
+	// Adds the counts of a recipe whose connections have been found and committed.
+	public void addData(GraphInfo gi) {
+		ActionDiagram ad = gi.actionDiagram();
+
+		str_stats.addData(gi);
+		conn_model_learner.addData(gi);
+		rev_model_learner.addData(gi);
+		pref_stats.addData(gi);
+
+		Pair<List<Pair<String, Set<String>>>, Set<String>> pairs = gi.collectMixPartPairs();
+		mix_part_pairs.addAll(pairs.getFirst());
+		mix_tkns.addAll(pairs.getSecond());
+		pairs = gi.collectMixLocPartPairs();
+		loc_part_pairs.addAll(pairs.getFirst());
+		loc_tkns.addAll(pairs.getSecond());
+
+		for (int n = 0; n < ad.numNodes(); n++) {
+			ActionNode node = ad.getNodeAtIndex(n);
+			SelectionalPreference pref = gi.getSelectionalPreferencesOfNode(node);
+
+			for (Argument arg : pref.arg_arr) {
+				for (String span : arg.nonIngredientSpans()) {
+					ActionNode origin = gi.getOrigin(node, arg, span);
+					if (origin != null) {
+						int close = node.index() - origin.index();
+						if (span.equals("")) {
+							num_imp_ing_edges++;
+							imp_ing_edge_close_sum += close;
+						} else {
+							num_evo_ing_edges++;
+							evo_ing_edge_close_sum += close;
+						}
+					}
+				}
+			}
+
+			Argument loc = pref.loc;
+			if (loc != null) {
+				ActionNode origin = gi.getOrigin(node, loc, loc.string());
+				if (origin != null) {
+					int close = node.index() - origin.index();
+					if (loc.string().equals("")) {
+						num_imp_loc_edges++;
+						imp_loc_edge_close_sum += close;
+					} else {
+						num_evo_loc_edges++;
+						evo_loc_edge_close_sum += close;
+					}
+				}
+			}
+
+			Set<Connection> dests = gi.dest_set(node);
+			if (n != ad.numNodes() - 1) {
+				num_output_edges += dests.size();
+				num_outputs++;
+			}
+		}
+	}
+
+	// The pair lists are appended, so merging in recipe order keeps them in recipe order.
+	public void merge(HardEMStatistics other) {
+		str_stats.merge(other.str_stats);
+		conn_model_learner.merge(other.conn_model_learner);
+		rev_model_learner.merge(other.rev_model_learner);
+		pref_stats.merge(other.pref_stats);
+
+		mix_part_pairs.addAll(other.mix_part_pairs);
+		loc_part_pairs.addAll(other.loc_part_pairs);
+		mix_tkns.addAll(other.mix_tkns);
+		loc_tkns.addAll(other.loc_tkns);
+
+		num_imp_loc_edges += other.num_imp_loc_edges;
+		imp_loc_edge_close_sum += other.imp_loc_edge_close_sum;
+		num_evo_loc_edges += other.num_evo_loc_edges;
+		evo_loc_edge_close_sum += other.evo_loc_edge_close_sum;
+		num_imp_ing_edges += other.num_imp_ing_edges;
+		imp_ing_edge_close_sum += other.imp_ing_edge_close_sum;
+		num_evo_ing_edges += other.num_evo_ing_edges;
+		evo_ing_edge_close_sum += other.evo_ing_edge_close_sum;
+		num_outputs += other.num_outputs;
+		num_output_edges += other.num_output_edges;
+
+		num_warm_starts += other.num_warm_starts;
+		num_cold_starts += other.num_cold_starts;
+		search_steps += other.search_steps;
+		warm_search_steps += other.warm_search_steps;
+		warm_cold_search_steps += other.warm_cold_search_steps;
+	}
+
+	// All the counts, for checkpoints. The pair lists keep their order.
+	public void serialize(DataOutputStream out) throws IOException {
+		str_stats.serialize(out);
+		conn_model_learner.serialize(out);
+		rev_model_learner.serialize(out);
+		pref_stats.serialize(out);
+
+		writePairs(out, mix_part_pairs);
+		writePairs(out, loc_part_pairs);
+		Utils.writeStringSet(out, mix_tkns);
+		Utils.writeStringSet(out, loc_tkns);
+
+		int[] cnts = new int[]{num_imp_loc_edges, imp_loc_edge_close_sum, num_evo_loc_edges, evo_loc_edge_close_sum,
+				num_imp_ing_edges, imp_ing_edge_close_sum, num_evo_ing_edges, evo_ing_edge_close_sum,
+				num_outputs, num_output_edges,
+				num_warm_starts, num_cold_starts, search_steps, warm_search_steps, warm_cold_search_steps};
+		for (int cnt : cnts) {
+			out.writeInt(cnt);
+		}
+	}
+
+	public void deserialize(DataInputStream in) throws IOException {
+		str_stats.deserialize(in);
+		conn_model_learner.deserialize(in);
+		rev_model_learner.deserialize(in);
+		pref_stats.deserialize(in);
+
+		mix_part_pairs = readPairs(in);
+		loc_part_pairs = readPairs(in);
+		mix_tkns = Utils.readStringSet(in);
+		loc_tkns = Utils.readStringSet(in);
+
+		num_imp_loc_edges = in.readInt();
+		imp_loc_edge_close_sum = in.readInt();
+		num_evo_loc_edges = in.readInt();
+		evo_loc_edge_close_sum = in.readInt();
+		num_imp_ing_edges = in.readInt();
+		imp_ing_edge_close_sum = in.readInt();
+		num_evo_ing_edges = in.readInt();
+		evo_ing_edge_close_sum = in.readInt();
+		num_outputs = in.readInt();
+		num_output_edges = in.readInt();
+		num_warm_starts = in.readInt();
+		num_cold_starts = in.readInt();
+		search_steps = in.readInt();
+		warm_search_steps = in.readInt();
+		warm_cold_search_steps = in.readInt();
+	}
+
+	// Merges the counts of consecutive blocks of recipes, given in recipe order, pairwise in a
+	// tree, so the merges of each level are independent of each other.
+	public static HardEMStatistics reduce(HardEMStatistics[] stats) {
+		if (stats.length == 0) {
+			return new HardEMStatistics();
+		}
+		for (int step = 1; step < stats.length; step *= 2) {
+			for (int i = 0; i + step < stats.length; i += 2 * step) {
+				stats[i].merge(stats[i + step]);
+			}
+		}
+		return stats[0];
+	}
+
+	private static void writePairs(DataOutputStream out, List<Pair<String, Set<String>>> pairs) throws IOException {
+		out.writeInt(pairs.size());
+		for (Pair<String, Set<String>> pair : pairs) {
+			Utils.writeString(out, pair.getFirst());
+			Utils.writeStringSet(out, pair.getSecond());
+		}
+	}
+
+	private static List<Pair<String, Set<String>>> readPairs(DataInputStream in) throws IOException {
+		int size = in.readInt();
+		List<Pair<String, Set<String>>> pairs = new ArrayList<Pair<String, Set<String>>>(size);
+		for (int i = 0; i < size; i++) {
+			String first = Utils.readString(in);
+			pairs.add(new Pair<String, Set<String>>(first, Utils.readStringSet(in)));
+		}
+		return pairs;
+	}
+}
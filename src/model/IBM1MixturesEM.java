@@ -0,0 +1,327 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import utils.Pair;
+
+/***
+ * IBM Model 1 EM for IBM1MixturesModel. The (mixture, ingredients) pairs are encoded once into
+ * int arrays, and t(mix|ing) is kept in a CSR matrix with a row per mixture token and an entry
+ * per ingredient seen with it (plus NULL and the token itself). The E-step runs over contiguous
+ * blocks of the data, one per thread, and the expected counts of the blocks are merged in block
+ * order at the end of each round.
+ *
+ * As in IBM1MixturesModel.emRound, the stored value of an entry is exponentiated to weigh it in
+ * the E-step, and the counts are normalized over the ingredient (column).
+ */
+public class IBM1MixturesEM {
+	public static double CONVERGE = 0.001;
+	public static double SELF_COUNT = 10000;
+
+	private List<String> row_tkns_ = new ArrayList<String>();
+	private List<String> col_tkns_ = new ArrayList<String>();
+	private Map<String, Integer> col_ids_ = new HashMap<String, Integer>();
+
+	// entries of row r are row_start_[r] .. row_start_[r+1]-1
+	private int[] row_start_;
+	private int[] entry_col_;
+	private int[] self_entry_;
+	private double[] probs_;
+
+	// for each pair: the row of each mixture token kept, and for each of them the entries of
+	// the ingredients followed by the NULL entry
+	private int[][] pair_rows_;
+	private int[][] pair_entries_;
+	private int[] pair_num_ings_;
+
+	private int num_rounds_ = 0;
+
+	public IBM1MixturesEM(Set<String> mix_tkns, List<Pair<String, Set<String>>> data) {
+		Map<String, Integer> row_ids = new HashMap<String, Integer>();
+		List<Map<Integer, Integer>> row_cols = new ArrayList<Map<Integer, Integer>>();
+		int null_col = colId(IBM1MixturesModel.NULL_WORD);
+
+		int num_pairs = data.size();
+		pair_rows_ = new int[num_pairs][];
+		pair_entries_ = new int[num_pairs][];
+		pair_num_ings_ = new int[num_pairs];
+		List<int[]> local_entries = new ArrayList<int[]>();
+		for (int p = 0; p < num_pairs; p++) {
+			Pair<String, Set<String>> instance = data.get(p);
+			String[] mix_words = instance.getFirst().split(" ");
+			Set<String> ingredients = instance.getSecond();
+			int[] ing_cols = new int[ingredients.size()];
+			int i = 0;
+			for (String ing : ingredients) {
+				ing_cols[i++] = colId(ing);
+			}
+
+			List<Integer> rows = new ArrayList<Integer>();
+			for (String mw : mix_words) {
+				if (!mix_tkns.contains(mw) || mw.trim().equals("")) {
+					continue;
+				}
+				Integer row = row_ids.get(mw);
+				if (row == null) {
+					row = row_tkns_.size();
+					row_ids.put(mw, row);
+					row_tkns_.add(mw);
+					row_cols.add(new HashMap<Integer, Integer>());
+				}
+				rows.add(row);
+			}
+			pair_rows_[p] = new int[rows.size()];
+			pair_num_ings_[p] = ing_cols.length;
+			// local (per row) entry indices for now; made global once the rows are complete
+			int[] entries = new int[rows.size() * (ing_cols.length + 1)];
+			for (int k = 0; k < rows.size(); k++) {
+				int row = rows.get(k);
+				pair_rows_[p][k] = row;
+				Map<Integer, Integer> cols = row_cols.get(row);
+				for (int j = 0; j <= ing_cols.length; j++) {
+					int col = (j == ing_cols.length ? null_col : ing_cols[j]);
+					Integer local = cols.get(col);
+					if (local == null) {
+						local = cols.size();
+						cols.put(col, local);
+					}
+					entries[k * (ing_cols.length + 1) + j] = local;
+				}
+			}
+			local_entries.add(entries);
+		}
+
+		int num_rows = row_tkns_.size();
+		row_start_ = new int[num_rows + 1];
+		self_entry_ = new int[num_rows];
+		for (int r = 0; r < num_rows; r++) {
+			Map<Integer, Integer> cols = row_cols.get(r);
+			int self_col = colId(row_tkns_.get(r));
+			if (!cols.containsKey(self_col)) {
+				cols.put(self_col, cols.size());
+			}
+			row_start_[r + 1] = row_start_[r] + cols.size();
+		}
+		entry_col_ = new int[row_start_[num_rows]];
+		for (int r = 0; r < num_rows; r++) {
+			for (Map.Entry<Integer, Integer> col : row_cols.get(r).entrySet()) {
+				entry_col_[row_start_[r] + col.getValue()] = col.getKey();
+			}
+			self_entry_[r] = row_start_[r] + row_cols.get(r).get(col_ids_.get(row_tkns_.get(r)));
+		}
+		for (int p = 0; p < num_pairs; p++) {
+			int[] entries = local_entries.get(p);
+			int stride = pair_num_ings_[p] + 1;
+			for (int e = 0; e < entries.length; e++) {
+				entries[e] += row_start_[pair_rows_[p][e / stride]];
+			}
+			pair_entries_[p] = entries;
+		}
+		probs_ = new double[entry_col_.length];
+	}
+
+	private int colId(String tkn) {
+		Integer col = col_ids_.get(tkn);
+		if (col == null) {
+			col = col_tkns_.size();
+			col_ids_.put(tkn, col);
+			col_tkns_.add(tkn);
+		}
+		return col;
+	}
+
+	public int numRows() {
+		return row_tkns_.size();
+	}
+
+	public int numEntries() {
+		return entry_col_.length;
+	}
+
+	public int numRounds() {
+		return num_rounds_;
+	}
+
+	// First estimate, from a uniform t(mix|ing) = 1 / mix_tkns.size() (as learnModelFromData).
+	public void initialize(int num_mix_tkns, int num_threads) {
+		double[] weights = new double[entry_col_.length];
+		Arrays.fill(weights, 1.0 / num_mix_tkns);
+		probs_ = maximize(expectedCounts(weights, num_threads));
+	}
+
+	// Warm start from a model learned on earlier data. Entries the prior has keep its values;
+	// the others (tokens or ingredients it has not seen) take their uniform first estimate, and
+	// its entries that are not in the data are dropped. Returns the number of entries taken
+	// from the prior.
+	public int initialize(IBM1MixturesModel prior, int num_mix_tkns, int num_threads) {
+		double[] probs = new double[entry_col_.length];
+		boolean[] from_prior = new boolean[entry_col_.length];
+		int num_from_prior = 0;
+		for (int r = 0; r < row_tkns_.size(); r++) {
+			Map<String, Double> ing_probs = prior.ingProbs(row_tkns_.get(r));
+			if (ing_probs == null) {
+				continue;
+			}
+			for (int e = row_start_[r]; e < row_start_[r + 1]; e++) {
+				Double prob = ing_probs.get(col_tkns_.get(entry_col_[e]));
+				if (prob != null) {
+					probs[e] = prob;
+					from_prior[e] = true;
+					num_from_prior++;
+				}
+			}
+		}
+		if (num_from_prior < entry_col_.length) {
+			initialize(num_mix_tkns, num_threads);
+			for (int e = 0; e < probs.length; e++) {
+				if (from_prior[e]) {
+					probs_[e] = probs[e];
+				}
+			}
+		} else {
+			probs_ = probs;
+		}
+		return num_from_prior;
+	}
+
+	// One EM round from the current estimate. Returns true if no entry changed by more than CONVERGE.
+	public boolean round(int num_threads) {
+		double[] weights = new double[entry_col_.length];
+		for (int e = 0; e < weights.length; e++) {
+			weights[e] = Math.exp(probs_[e]);
+		}
+		double[] new_probs = maximize(expectedCounts(weights, num_threads));
+		boolean converged = true;
+		for (int e = 0; e < new_probs.length; e++) {
+			if (Math.abs(probs_[e] - new_probs[e]) > CONVERGE) {
+				converged = false;
+				break;
+			}
+		}
+		probs_ = new_probs;
+		num_rounds_++;
+		return converged;
+	}
+
+	// Runs rounds until convergence.
+	public void run(int num_threads) {
+		while (true) {
+			if (round(num_threads)) {
+				break;
+			}
+		}
+	}
+
+	public IBM1MixturesModel model() {
+		IBM1MixturesModel model = new IBM1MixturesModel();
+		model.num_em_rounds = num_rounds_;
+		for (int r = 0; r < row_tkns_.size(); r++) {
+			Map<String, Double> ing_probs = new HashMap<String, Double>();
+			for (int e = row_start_[r]; e < row_start_[r + 1]; e++) {
+				ing_probs.put(col_tkns_.get(entry_col_[e]), probs_[e]);
+			}
+			model.setIngProbs(row_tkns_.get(r), ing_probs);
+		}
+		return model;
+	}
+
+	// Expected counts of the entries, followed by those of the columns.
+	private double[] expectedCounts(final double[] weights, int num_threads) {
+		final int num_pairs = pair_rows_.length;
+		num_threads = Math.max(1, Math.min(num_threads, num_pairs));
+		final double[][] thread_counts = new double[num_threads][];
+		Thread[] workers = new Thread[num_threads];
+		for (int t = 0; t < num_threads; t++) {
+			final int start = (int) ((long) num_pairs * t / num_threads);
+			final int end = (int) ((long) num_pairs * (t + 1) / num_threads);
+			final double[] counts = new double[entry_col_.length + col_tkns_.size()];
+			thread_counts[t] = counts;
+			workers[t] = new Thread(new Runnable() {
+				public void run() {
+					for (int p = start; p < end; p++) {
+						addExpectedCounts(p, weights, counts);
+					}
+				}
+			});
+		}
+		if (num_threads == 1) {
+			workers[0].run();
+		} else {
+			for (int t = 0; t < num_threads; t++) {
+				workers[t].start();
+			}
+			for (int t = 0; t < num_threads; t++) {
+				try {
+					workers[t].join();
+				} catch (InterruptedException e) {
+					e.printStackTrace();
+					System.exit(1);
+				}
+			}
+		}
+
+		double[] counts = thread_counts[0];
+		for (int t = 1; t < num_threads; t++) {
+			double[] other = thread_counts[t];
+			for (int i = 0; i < counts.length; i++) {
+				counts[i] += other[i];
+			}
+		}
+		return counts;
+	}
+
+	private void addExpectedCounts(int p, double[] weights, double[] counts) {
+		int[] rows = pair_rows_[p];
+		int[] entries = pair_entries_[p];
+		int stride = pair_num_ings_[p] + 1;
+		int col_offset = entry_col_.length;
+
+		// a token repeated in the mixture adds to the same total, as in emRound
+		double[] totals = new double[rows.length];
+		for (int k = 0; k < rows.length; k++) {
+			double total = 0.0;
+			for (int j = k - 1; j >= 0; j--) {
+				if (rows[j] == rows[k]) {
+					total = totals[j];
+					break;
+				}
+			}
+			for (int j = 0; j < stride; j++) {
+				total += weights[entries[k * stride + j]];
+			}
+			totals[k] = total;
+		}
+		for (int k = 0; k < rows.length; k++) {
+			double total = totals[k];
+			for (int j = k + 1; j < rows.length; j++) {
+				if (rows[j] == rows[k]) {
+					total = totals[j];
+				}
+			}
+			for (int j = 0; j < stride; j++) {
+				int entry = entries[k * stride + j];
+				double num = weights[entry] / total;
+				counts[entry] += num;
+				counts[col_offset + entry_col_[entry]] += num;
+			}
+		}
+	}
+
+	private double[] maximize(double[] counts) {
+		int col_offset = entry_col_.length;
+		for (int r = 0; r < row_tkns_.size(); r++) {
+			counts[self_entry_[r]] += SELF_COUNT;
+			counts[col_offset + entry_col_[self_entry_[r]]] += SELF_COUNT;
+		}
+		double[] probs = new double[entry_col_.length];
+		for (int e = 0; e < probs.length; e++) {
+			probs[e] = counts[e] / counts[col_offset + entry_col_[e]];
+		}
+		return probs;
+	}
+}
@@ -8,6 +8,9 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -25,6 +28,7 @@ import data.RecipeEvent.Argument.Type;
 import edu.stanford.nlp.util.StringUtils;
 import utils.Measurements;
 import utils.Pair;
+import utils.SymbolTable;
 import utils.TokenCounter;
 import utils.Utils;
 
@@ -32,19 +36,227 @@ public class IBM1MixturesModel {
 	private static boolean scale = true;
 	private static double default_alpha = 0.01;
 	private double alpha = 0.01; 
-	private Map<String, Map<String, Double>> mix_probs_given_ing;
-	private Set<String> all_ings;
+
+	// Pruning of the (mixture token, ingredient) table, applied to learned models and to models
+	// read from files: entries with a lower prob are dropped, and only the TOP_K most probable
+	// entries of each token are kept (0 to keep all). The NULL_WORD and self entries are always kept.
+	public static double PRUNE_MIN_PROB = 0.0;
+	public static int PRUNE_TOP_K = 0;
+
+	// Ingredient ids (SymbolTable) of a mixture token in increasing order, and their probs.
+	// The NULL_WORD entry is one of them and is also kept on its own.
+	private static class SparseRow {
+		public int[] ids;
+		public double[] probs;
+		public double null_prob = 0.0;
+		public boolean has_null = false;
+
+		public int indexOf(int id) {
+			return Arrays.binarySearch(ids, id);
+		}
+
+		public double get(int id) {
+			int i = indexOf(id);
+			if (i < 0) {
+				return 0.0;
+			}
+			return probs[i];
+		}
+	}
+
+	// The table is only kept as sparse rows, indexed by the SymbolTable id of the mixture token
+	// (null for ids that are not mixture tokens of this model). The string maps the files and
+	// the map-based EM use are built from the rows when they are asked for.
+	private SparseRow[] rows_ = new SparseRow[0];
+	// ids of the mixture tokens, in the order their rows were added
+	private int[] mix_ids_ = new int[0];
+	private int num_mixes_ = 0;
+	// ids of the ingredients of the rows added with setIngProbs
+	private BitSet all_ings_ = new BitSet();
+
+	// EM rounds taken to learn the model, or -1 if it was read from a file
+	int num_em_rounds = -1;
+	// entries of the EM that learned the model, and how many of them started from a prior model
+	// (-1 if there was none)
+	int num_em_entries = -1;
+	int num_prior_entries = -1;
 
 	// 100,000
 	
 	public IBM1MixturesModel() {
-		mix_probs_given_ing = new HashMap<String, Map<String, Double>>();
-		all_ings = new HashSet<String>();
 	}
 
 	public static String NULL_WORD = "NULL";
+
+	public int numEMRounds() {
+		return num_em_rounds;
+	}
+
+	// One line on how the model was learned, for progress output.
+	public String emSummary() {
+		String summary = num_em_rounds + " IBM1 rounds";
+		if (num_prior_entries != -1) {
+			summary += ", " + num_prior_entries + " of " + num_em_entries + " entries from the prior model";
+		}
+		return summary;
+	}
+
+	public int numMixWords() {
+		return num_mixes_;
+	}
+
+	// The mixture tokens of the table, in the order their rows were added.
+	public List<String> mixWords() {
+		List<String> mix_words = new ArrayList<String>(num_mixes_);
+		for (int m = 0; m < num_mixes_; m++) {
+			mix_words.add(SymbolTable.GLOBAL.symbol(mix_ids_[m]));
+		}
+		return mix_words;
+	}
+
+	private SparseRow row(String mix_word) {
+		return row(SymbolTable.GLOBAL.id(mix_word));
+	}
+
+	private SparseRow row(int mix_id) {
+		if (mix_id == SymbolTable.UNK || mix_id >= rows_.length) {
+			return null;
+		}
+		return rows_[mix_id];
+	}
+
+	// The probs of mix_word as a new map, or null if it has none.
+	Map<String, Double> ingProbs(String mix_word) {
+		return rowToMap(row(mix_word));
+	}
+
+	private static Map<String, Double> rowToMap(SparseRow row) {
+		if (row == null) {
+			return null;
+		}
+		Map<String, Double> ing_probs = new HashMap<String, Double>();
+		for (int i = 0; i < row.ids.length; i++) {
+			ing_probs.put(SymbolTable.GLOBAL.symbol(row.ids[i]), row.probs[i]);
+		}
+		return ing_probs;
+	}
+
+	// The whole table as maps, for the map-based EM.
+	private Map<String, Map<String, Double>> probMaps() {
+		Map<String, Map<String, Double>> probs = new HashMap<String, Map<String, Double>>();
+		for (int m = 0; m < num_mixes_; m++) {
+			probs.put(SymbolTable.GLOBAL.symbol(mix_ids_[m]), rowToMap(rows_[mix_ids_[m]]));
+		}
+		return probs;
+	}
+
+	private boolean knowsIng(String ing) {
+		int ing_id = SymbolTable.GLOBAL.id(ing);
+		return ing_id != SymbolTable.UNK && all_ings_.get(ing_id);
+	}
+
+	// The entries of ing_probs that are kept by PRUNE_MIN_PROB and PRUNE_TOP_K.
+	static Map<String, Double> prune(String mix_word, Map<String, Double> ing_probs) {
+		if (PRUNE_MIN_PROB <= 0.0 && (PRUNE_TOP_K <= 0 || ing_probs.size() <= PRUNE_TOP_K)) {
+			return ing_probs;
+		}
+		List<Map.Entry<String, Double>> entries = new ArrayList<Map.Entry<String, Double>>();
+		Map<String, Double> pruned = new HashMap<String, Double>();
+		for (Map.Entry<String, Double> entry : ing_probs.entrySet()) {
+			if (entry.getKey().equals(NULL_WORD) || entry.getKey().equals(mix_word)) {
+				pruned.put(entry.getKey(), entry.getValue());
+			} else if (entry.getValue() >= PRUNE_MIN_PROB) {
+				entries.add(entry);
+			}
+		}
+		if (PRUNE_TOP_K > 0 && entries.size() > PRUNE_TOP_K) {
+			Collections.sort(entries, new Comparator<Map.Entry<String, Double>>() {
+				public int compare(Map.Entry<String, Double> e1, Map.Entry<String, Double> e2) {
+					int cmp = Double.compare(e2.getValue(), e1.getValue());
+					if (cmp != 0) {
+						return cmp;
+					}
+					return e1.getKey().compareTo(e2.getKey());
+				}
+			});
+			entries = entries.subList(0, PRUNE_TOP_K);
+		}
+		for (Map.Entry<String, Double> entry : entries) {
+			pruned.put(entry.getKey(), entry.getValue());
+		}
+		return pruned;
+	}
+
+	void setIngProbs(String mix_word, Map<String, Double> ing_probs) {
+		SparseRow row = putRow(mix_word, prune(mix_word, ing_probs));
+		for (int ing_id : row.ids) {
+			all_ings_.set(ing_id);
+		}
+	}
+
+	// Sets the row of mix_word without adding its ingredients to the known ones, as the
+	// map-based EM has always done.
+	private SparseRow putRow(String mix_word, Map<String, Double> ing_probs) {
+		SymbolTable symbols = SymbolTable.GLOBAL;
+		int mix_id = symbols.intern(mix_word);
+		SparseRow row = new SparseRow();
+		long[] sorted = new long[ing_probs.size()];
+		double[] values = new double[ing_probs.size()];
+		int i = 0;
+		for (Map.Entry<String, Double> entry : ing_probs.entrySet()) {
+			if (entry.getKey().equals(NULL_WORD)) {
+				row.null_prob = entry.getValue();
+				row.has_null = true;
+			}
+			values[i] = entry.getValue();
+			// id in the high bits, position of the value in the low bits
+			sorted[i] = ((long) symbols.intern(entry.getKey()) << 32) | i;
+			i++;
+		}
+		Arrays.sort(sorted);
+		row.ids = new int[sorted.length];
+		row.probs = new double[sorted.length];
+		for (i = 0; i < sorted.length; i++) {
+			row.ids[i] = (int) (sorted[i] >>> 32);
+			row.probs[i] = values[(int) sorted[i]];
+		}
+
+		if (mix_id >= rows_.length) {
+			rows_ = Arrays.copyOf(rows_, Math.max(mix_id + 1, 2 * rows_.length));
+		}
+		if (rows_[mix_id] == null) {
+			if (num_mixes_ == mix_ids_.length) {
+				mix_ids_ = Arrays.copyOf(mix_ids_, Math.max(8, 2 * mix_ids_.length));
+			}
+			mix_ids_[num_mixes_++] = mix_id;
+		}
+		rows_[mix_id] = row;
+		return row;
+	}
 	
 	public static IBM1MixturesModel learnModelFromData(Set<String> mix_tkns, List<Pair<String, Set<String>>> data) {
+		return learnModelFromData(mix_tkns, data, null);
+	}
+
+	// Warm-starts EM from prior (e.g. the model of the previous hard-EM iteration) if it is not null.
+	public static IBM1MixturesModel learnModelFromData(Set<String> mix_tkns, List<Pair<String, Set<String>>> data,
+			IBM1MixturesModel prior) {
+		IBM1MixturesEM em = new IBM1MixturesEM(mix_tkns, data);
+		int num_from_prior = -1;
+		if (prior == null) {
+			em.initialize(mix_tkns.size(), ProjectParameters.NUM_THREADS);
+		} else {
+			num_from_prior = em.initialize(prior, mix_tkns.size(), ProjectParameters.NUM_THREADS);
+		}
+		em.run(ProjectParameters.NUM_THREADS);
+		IBM1MixturesModel model = em.model();
+		model.num_em_entries = em.numEntries();
+		model.num_prior_entries = num_from_prior;
+		return model;
+	}
+
+	// Map-based reference implementation of learnModelFromData.
+	public static IBM1MixturesModel learnModelFromDataWithMaps(Set<String> mix_tkns, List<Pair<String, Set<String>>> data) {
 		double initial_prob = 1.0 / mix_tkns.size();
 		
 		IBM1MixturesModel model = new IBM1MixturesModel();
@@ -150,7 +362,7 @@ public class IBM1MixturesModel {
 				double mix_given_ing = unnorm.get(NULL_WORD) / ing_count.get(NULL_WORD);
 				ing_probs.put(NULL_WORD, mix_given_ing);
 			}
-			model.mix_probs_given_ing.put(mw, ing_probs);
+			model.putRow(mw, ing_probs);
 		}
 		
 		IBM1MixturesModel new_model = model;
@@ -172,10 +384,19 @@ public class IBM1MixturesModel {
 		return new_model;
 	}
 	
+	// exp of the entry of ing in a row of the map-based EM, or 0.0 if the entry was pruned, as
+	// SparseRow.get reads a missing entry.
+	private static double expProb(Map<String, Double> probs, String ing) {
+		Double prob = probs.get(ing);
+		if (prob == null) {
+			return 0.0;
+		}
+		return Math.exp(prob);
+	}
+
 	public static Pair<IBM1MixturesModel, Boolean> emRound(List<Pair<String, Set<String>>> data,
 			IBM1MixturesModel curr_model) {
-		Map<String, Map<String, Double>> curr_probs = curr_model.mix_probs_given_ing;
-		return emRound(data, curr_probs);
+		return emRound(data, curr_model.probMaps());
 	}
 	
 	public static Pair<IBM1MixturesModel, Boolean> emRound(List<Pair<String, Set<String>>> data,
@@ -213,11 +434,11 @@ public class IBM1MixturesModel {
 					total = total_s.doubleValue();
 				}
 				for (String ing : ingredients) {
-					Double ing_prob = Math.exp(mix_probs.get(ing));
+					double ing_prob = expProb(mix_probs, ing);
 //					System.out.println(ing);
 					total += ing_prob;
 				}
-				Double ing_prob = Math.exp(mix_probs.get(NULL_WORD));
+				double ing_prob = expProb(mix_probs, NULL_WORD);
 				total += ing_prob;
 				sentence_probs.put(mw, total);
 			}
@@ -230,14 +451,18 @@ public class IBM1MixturesModel {
 				if (mw.trim().equals("")) {
 					continue;
 				}
+				// every entry of the row was pruned, so it has no counts to give
+				if (sentence_probs.get(mw) == 0.0) {
+					continue;
+				}
 				
 				for (String ing : ingredients) {
-					double num = Math.exp(mix_probs.get(ing).doubleValue()) / sentence_probs.get(mw);
+					double num = expProb(mix_probs, ing) / sentence_probs.get(mw);
 					Utils.incrementStringDoubleMapValueCount(mix_given_ing_probs,
 							mw, ing, num);
 					Utils.incrementStringDoubleMapCount(ing_count, ing, num);
 				}
-				double num = Math.exp(mix_probs.get(NULL_WORD).doubleValue()) / sentence_probs.get(mw);
+				double num = expProb(mix_probs, NULL_WORD) / sentence_probs.get(mw);
 				Utils.incrementStringDoubleMapValueCount(mix_given_ing_probs,
 						mw, NULL_WORD, num);
 				Utils.incrementStringDoubleMapCount(ing_count, NULL_WORD, num);
@@ -263,12 +488,12 @@ public class IBM1MixturesModel {
 					ing_probs.put(ing, mix_given_ing);
 
 					Double curr_prob = curr.get(ing);
-					if (Math.abs(curr_prob - mix_given_ing) > converge) {
+					if (Math.abs((curr_prob == null ? 0.0 : curr_prob) - mix_given_ing) > converge) {
 						converged = false;
 					}
 				}
 			}
-			model.mix_probs_given_ing.put(mw, ing_probs);
+			model.putRow(mw, ing_probs);
 		}
 		return new Pair<IBM1MixturesModel, Boolean>(model, converged);
 	}
@@ -336,13 +561,13 @@ public class IBM1MixturesModel {
 	public void writeToFile(String filename) throws IOException {
 		BufferedWriter bw = new BufferedWriter(new FileWriter(filename));
 		bw.write(alpha + "\n");
-		bw.write(mix_probs_given_ing.size() + "\n");
-		for (String mix_word : mix_probs_given_ing.keySet()) {
-			bw.write(mix_word + "\n");
-			Map<String, Double> ing_probs = mix_probs_given_ing.get(mix_word);
-			bw.write(ing_probs.size() + "\n");
-			for (String ing : ing_probs.keySet()) {
-				bw.write(ing + "\t" + ing_probs.get(ing) + "\n");
+		bw.write(num_mixes_ + "\n");
+		for (int m = 0; m < num_mixes_; m++) {
+			bw.write(SymbolTable.GLOBAL.symbol(mix_ids_[m]) + "\n");
+			SparseRow row = rows_[mix_ids_[m]];
+			bw.write(row.ids.length + "\n");
+			for (int i = 0; i < row.ids.length; i++) {
+				bw.write(SymbolTable.GLOBAL.symbol(row.ids[i]) + "\t" + row.probs[i] + "\n");
 			}
 		}
 		bw.close();
@@ -362,18 +587,41 @@ public class IBM1MixturesModel {
 				String[] split = line.split("\t");
 				double prob = Double.parseDouble(split[1]);
 				ing_probs.put(split[0], prob);
-				model.all_ings.add(split[0]);
 			}
-			model.mix_probs_given_ing.put(mix_word, ing_probs);
+			model.setIngProbs(mix_word, ing_probs);
 		}
 		br.close();
 		return model;
 	}
 	
+	public static IBM1MixturesModel readFromBundle(ModelBundle.Reader reader, String section) throws IOException {
+		reader.beginSection(section);
+		IBM1MixturesModel model = new IBM1MixturesModel();
+		model.alpha = reader.readDouble();
+		int size = reader.readInt();
+		for (int i = 0; i < size; i++) {
+			String mix_word = reader.readString();
+			Map<String, Double> ing_probs = new HashMap<String, Double>();
+			reader.readStringDoubleMap(ing_probs);
+			model.setIngProbs(mix_word, ing_probs);
+		}
+		return model;
+	}
+
+	public void writeToBundle(ModelBundle.Writer writer, String section) throws IOException {
+		writer.beginSection(section);
+		writer.writeDouble(alpha);
+		writer.writeInt(num_mixes_);
+		for (int m = 0; m < num_mixes_; m++) {
+			writer.writeString(SymbolTable.GLOBAL.symbol(mix_ids_[m]));
+			writer.writeStringDoubleMap(rowToMap(rows_[mix_ids_[m]]));
+		}
+	}
+
 	public Pair<String, Double> getBestMix(Set<String> ings) {
 		double max_lprob = Double.NEGATIVE_INFINITY;
 		String best_str = "";
-		for (String mix : mix_probs_given_ing.keySet()) {
+		for (String mix : mixWords()) {
 			HashSet<String> mix_set = new HashSet<String>();
 			mix_set.add(mix);
 			double lprob = logProbOfMixGivenIngs("", StringUtils.join(ings), mix_set);
@@ -388,44 +636,45 @@ public class IBM1MixturesModel {
 	
 	
 	public double logProbOfMixGivenIngs(String predicate, String mixes, Set<String> ings) {
-		double lprob = 0.0;
-		String[] mix_split = mixes.split(" ");
+		return logProbOfMixGivenIngs(SymbolTable.GLOBAL.ids(mixes.split(" ")), SymbolTable.GLOBAL.ids(ings));
+	}
+
+	// The same over the SymbolTable ids of the mixture tokens and of the ingredients, in the
+	// order the string version splits and iterates them. Unknown ids (UNK) count towards the
+	// number of ingredients but add no probability.
+	public double logProbOfMixGivenIngs(int[] mix_ids, int[] ing_ids) {
 		int num_real_mixes = 0;
 		
-		int num_ings = ings.size();
-		for (String mix : mix_split) {
-			Map<String, Double> ing_probs = mix_probs_given_ing.get(mix);
-			if (ing_probs != null) {
+		int num_ings = ing_ids.length;
+		SparseRow[] rows = new SparseRow[mix_ids.length];
+		for (int m = 0; m < mix_ids.length; m++) {
+			rows[m] = row(mix_ids[m]);
+			if (rows[m] != null) {
 				num_real_mixes++;
 			}
 		}
 		if (num_real_mixes == 0) {
 			return 0.0;
 		}
-		int num_real_ings = 0;
-		double factor = -1 * Math.log(Math.pow(1.0 + num_ings, num_real_mixes));
-		for (String mix : mix_split) {
-			double full_ing_prob = 0.0;
-			for (String ing : ings) {
-				if (!all_ings.contains(ing)) {
-					continue;
-				}
-				Map<String, Double> ing_probs = mix_probs_given_ing.get(mix);
-				if (ing_probs == null) {
-					continue;
-				}
-				Double ing_prob = ing_probs.get(ing);
-				if (ing_prob != null) {
-					full_ing_prob += ing_prob;
-				}
+		int[] known_ing_ids = new int[num_ings];
+		int num_known_ings = 0;
+		for (int ing_id : ing_ids) {
+			if (ing_id != SymbolTable.UNK && all_ings_.get(ing_id)) {
+				known_ing_ids[num_known_ings++] = ing_id;
 			}
-			Map<String, Double> ing_probs = mix_probs_given_ing.get(mix);
-			if (ing_probs == null) {
+		}
+		double factor = -1 * Math.log(Math.pow(1.0 + num_ings, num_real_mixes));
+		for (int m = 0; m < rows.length; m++) {
+			SparseRow row = rows[m];
+			if (row == null) {
 				continue;
 			}
-			Double ing_prob = ing_probs.get(NULL_WORD);
-			if (ing_prob != null) {
-				full_ing_prob += ing_prob;
+			double full_ing_prob = 0.0;
+			for (int i = 0; i < num_known_ings; i++) {
+				full_ing_prob += row.get(known_ing_ids[i]);
+			}
+			if (row.has_null) {
+				full_ing_prob += row.null_prob;
 			}
 			if (full_ing_prob == 0.0) {
 				factor += Math.log(0.0000000000001);
@@ -447,8 +696,7 @@ public class IBM1MixturesModel {
 		
 		int num_ings = ings.size();
 		for (String mix : mix_split) {
-			Map<String, Double> ing_probs = mix_probs_given_ing.get(mix);
-			if (ing_probs != null) {
+			if (row(mix) != null) {
 				num_real_mixes++;
 			}
 		}
@@ -461,16 +709,17 @@ public class IBM1MixturesModel {
 //		System.out.println("factor: " + factor);
 		for (String mix : mix_split) {
 			double full_ing_prob = 0.0;
+			SparseRow row = row(mix);
 			for (String ing : ings) {
-				if (!all_ings.contains(ing)) {
+				if (!knowsIng(ing)) {
 					continue;
 				}
-				Map<String, Double> ing_probs = mix_probs_given_ing.get(mix);
-				if (ing_probs == null) {
+				if (row == null) {
 					continue;
 				}
-				Double ing_prob = ing_probs.get(ing);
-				if (ing_prob != null) {
+				int i = row.indexOf(SymbolTable.GLOBAL.id(ing));
+				if (i >= 0) {
+					double ing_prob = row.probs[i];
 					if (max < ing_prob) {
 						max = ing_prob;
 					}
@@ -478,13 +727,11 @@ public class IBM1MixturesModel {
 				}
 //				System.out.println(ing + " " + mix + " " + ing_prob);
 			}
-			Map<String, Double> ing_probs = mix_probs_given_ing.get(mix);
-			if (ing_probs == null) {
+			if (row == null) {
 				continue;
 			}
-			Double ing_prob = ing_probs.get(NULL_WORD);
-			if (ing_prob != null) {
-				full_ing_prob += ing_prob;
+			if (row.has_null) {
+				full_ing_prob += row.null_prob;
 			}
 //			System.out.println(NULL_WORD + " " + mix + " " + ing_prob);
 			if (full_ing_prob == 0.0) {
@@ -627,8 +874,8 @@ public class IBM1MixturesModel {
 									return e1.getFirst().compareTo(e2.getFirst());
 								}
 							});
-					for (String mixword : model.mix_probs_given_ing.keySet()) {
-						Map<String, Double> probs = model.mix_probs_given_ing.get(mixword);
+					for (String mixword : model.mixWords()) {
+						Map<String, Double> probs = model.ingProbs(mixword);
 						if (probs.get(ing) == null) {
 							continue;
 						}
@@ -1,32 +1,30 @@
 package model;
 
-import java.util.HashMap;
-import java.util.Map;
-
 public class LinearDistribution {
 
-	private static Map<Integer, Double> sum_map = new HashMap<Integer, Double>();
-	
+	public static final int MAX_TABLE_SUM = 256;
+
+	// sums[i] = 1/1 + ... + 1/(i-1), filled once; read-only, so safe to share between threads
+	private static final double[] sums = new double[MAX_TABLE_SUM];
+
 	static {
-		for (int i = 2; i < 20; i++) {
-			double sum = 0;
-			for (int n = 1; n < i; n++) {
-				sum += (1.0 / n);
-			}
-			sum_map.put(i, sum);
+		for (int i = 2; i < MAX_TABLE_SUM; i++) {
+			sums[i] = harmonicSum(i);
 		}
 	}
-	
-	public static double getSum(int i) {
-		Double sum = sum_map.get(i);
-		if (sum != null) {
-			return sum;
-		}
+
+	private static double harmonicSum(int i) {
 		double s = 0;
 		for (int n = 1; n < i; n++) {
 			s += (1.0 / n);
 		}
-		sum_map.put(i, s);
 		return s;
 	}
+
+	public static double getSum(int i) {
+		if (i >= 0 && i < MAX_TABLE_SUM) {
+			return sums[i];
+		}
+		return harmonicSum(i);
+	}
 }
@@ -4,12 +4,19 @@ package model;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.Map;
+import java.util.List;
 import java.util.Set;
-import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import model.Connections.Connection;
 import model.ConnectionsModel.CONN_TYPE;
@@ -29,14 +36,28 @@ public class LocalSearcher {
 	private GraphInfo gi_;
 	private GraphScorer scorer_;
 
-	private Map<SearchOp, Set<Integer>> opToOriginIndex_;
-	private Map<Integer, Set<Pair<Double, SearchOp>>> originIndexToScoredOps_;
-	private Map<SearchOp, Integer> opToMinDestIndex_;
-	private Map<Integer, Set<Pair<Double, SearchOp>>> minDestIndexToScoredOps_;
-	private TreeSet<Pair<Double,SearchOp>> scoreActiveAgenda_;
+	private SearchAgenda agenda_;
+	// while re-enumerating after an accepted op, ops outside the changed region keep their score
+	private boolean reuseScores_;
+	// candidate ops collected by initialize() when they are scored on worker threads
+	private List<Triple<SearchOp, Integer, Set<Integer>>> pendingOps_;
+	private boolean deferScoring_;
 
 	private boolean is_initialized_;
 
+	// ops accepted by the last run()
+	private List<SearchOp> steps_;
+
+	// after accepting an op, only rescore ops in the region of the graph it changed
+	public static boolean INCREMENTAL_AGENDA = true;
+	// rescore every op alongside the incremental agenda and report a different choice
+	public static boolean CHECK_INCREMENTAL_AGENDA = false;
+
+	// number of threads scoring candidate ops in initialize(); 1 scores them on the calling thread
+	public static int NUM_SCORING_THREADS = 1;
+	private static ExecutorService scoring_pool_ = null;
+	private static int scoring_pool_size_ = 0;
+
 	private static Set<Character> SEARCH_OPERATORS = new HashSet<Character>();
 	static {
 		SEARCH_OPERATORS.add(SearchOp.OP_ADD_NEW_OUTPUT_);
@@ -49,18 +70,31 @@ public class LocalSearcher {
 	public LocalSearcher(GraphInfo gi, GraphScorer scorer) {
 		gi_ = gi;
 		scorer_ = scorer;
-		opToOriginIndex_ = new HashMap<SearchOp, Set<Integer>>();
-		originIndexToScoredOps_ = new HashMap<Integer, Set<Pair<Double, SearchOp>>>();
-		opToMinDestIndex_ = new HashMap<SearchOp, Integer>();
-		minDestIndexToScoredOps_ = new HashMap<Integer, Set<Pair<Double, SearchOp>>>();
-		scoreActiveAgenda_ = new TreeSet<Pair<Double,SearchOp>>();
+		agenda_ = new SearchAgenda();
+		reuseScores_ = false;
+		pendingOps_ = new ArrayList<Triple<SearchOp, Integer, Set<Integer>>>();
+		deferScoring_ = false;
 		is_initialized_ = false;
+		steps_ = new ArrayList<SearchOp>();
 	}
 
 	public GraphInfo graphInfo() {
 		return gi_;
 	}
 
+	public int numSteps() {
+		return steps_.size();
+	}
+
+	public List<SearchOp> steps() {
+		return steps_;
+	}
+
+	// Candidate ops currently on the agenda.
+	public List<SearchOp> agendaOps() {
+		return agenda_.ops();
+	}
+
 	private Set<Triple<ActionNode, Argument, String>> getAllPossibleDests(ActionNode dest_node, 
 			boolean allow_already_connected, boolean allow_raw_ing_args, SelectionalPreference pref) {
 		Set<Triple<ActionNode, Argument, String>> dests = new HashSet<Triple<ActionNode, Argument, String>>();
@@ -121,29 +155,95 @@ public class LocalSearcher {
 	}
 
 	private void scoreOp(SearchOp op, int min_index, Set<Integer> origin_indices) {
+		if (reuseScores_) {
+			int id = agenda_.find(op);
+			if (id != -1 && !agenda_.isDirty(id)) {
+				agenda_.keep(id);
+				return;
+			}
+		}
+		if (deferScoring_) {
+			pendingOps_.add(new Triple<SearchOp, Integer, Set<Integer>>(op, min_index, origin_indices));
+			return;
+		}
 		if (GraphScorer.VERBOSE)
 			System.out.println("SCORING " + op + " " + op.type_ + " " + op.new_type_);
 		double score = -1 * scorer_.getGraphScore(op);
 		if (GraphScorer.VERBOSE)
 			System.out.println("END SCORING "+ " " + op + " " + score);
+		agenda_.put(op, score, min_index, origin_indices);
+	}
 
-		opToOriginIndex_.put(op, origin_indices);
-		opToMinDestIndex_.put(op, min_index);
-		Pair<Double, SearchOp> scored_op = new Pair<Double, SearchOp>(score, op);
-		scoreActiveAgenda_.add(scored_op);
-		Set<Pair<Double, SearchOp>> op_set = minDestIndexToScoredOps_.get(min_index);
-		if (op_set == null) {
-			op_set = new HashSet<Pair<Double, SearchOp>>();
-			minDestIndexToScoredOps_.put(min_index, op_set);
+	// Pool shared by every searcher, with NUM_SCORING_THREADS daemon threads. It is made again
+	// if NUM_SCORING_THREADS changes.
+	private static synchronized ExecutorService scoringPool() {
+		if (scoring_pool_ == null || scoring_pool_size_ != NUM_SCORING_THREADS) {
+			if (scoring_pool_ != null) {
+				scoring_pool_.shutdown();
+			}
+			scoring_pool_size_ = NUM_SCORING_THREADS;
+			scoring_pool_ = Executors.newFixedThreadPool(scoring_pool_size_, new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "LocalSearcher-scoring");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
 		}
-		op_set.add(scored_op);
-		for (Integer origin : origin_indices) {
-			op_set = originIndexToScoredOps_.get(origin);
-			if (op_set == null) {
-				op_set = new HashSet<Pair<Double, SearchOp>>();
-				originIndexToScoredOps_.put(origin, op_set);
+		return scoring_pool_;
+	}
+
+	// Scores the ops collected by initialize() on the scoring pool. Each task takes a scorer
+	// with its own copy of the graph from the free ones, so no two tasks apply ops to the same
+	// graph. The results are added to the agenda in the order the ops were collected, so the
+	// agenda ends up the same as when scoring on one thread. A task that fails is rethrown
+	// here, before any of the scores are used.
+	//
+	// Besides its graph copy, a task only reads state that is shared: the action diagram
+	// (applying and scoring an op does not change the events), the preferences of the copied
+	// graph (updateNode() replaces them rather than changing them), the read-only models and
+	// SymbolTable, the span score cache and the Utils stem cache and WordNet lexicon, which are
+	// concurrent maps or locked, and the WordNet database, which Utils locks.
+	private void scorePendingOps() {
+		int num_scorers = Math.min(NUM_SCORING_THREADS, pendingOps_.size());
+		final BlockingQueue<GraphScorer> free_scorers = new ArrayBlockingQueue<GraphScorer>(num_scorers);
+		for (int t = 0; t < num_scorers; t++) {
+			free_scorers.add(new GraphScorer(scorer_.models(), new GraphInfo(gi_)));
+		}
+		ExecutorService pool = scoringPool();
+		List<Future<Double>> scores = new ArrayList<Future<Double>>(pendingOps_.size());
+		for (final Triple<SearchOp, Integer, Set<Integer>> pending : pendingOps_) {
+			scores.add(pool.submit(new Callable<Double>() {
+				public Double call() throws InterruptedException {
+					GraphScorer scorer = free_scorers.take();
+					try {
+						return -1 * scorer.getGraphScore(pending.getFirst());
+					} finally {
+						free_scorers.put(scorer);
+					}
+				}
+			}));
+		}
+		try {
+			for (int i = 0; i < pendingOps_.size(); i++) {
+				Triple<SearchOp, Integer, Set<Integer>> pending = pendingOps_.get(i);
+				agenda_.put(pending.getFirst(), scores.get(i).get(), pending.getSecond(), pending.getThird());
 			}
-			op_set.add(scored_op);
+		} catch (ExecutionException e) {
+			cancelAll(scores);
+			throw new RuntimeException("scoring " + pendingOps_.size() + " search ops failed", e.getCause());
+		} catch (InterruptedException e) {
+			cancelAll(scores);
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("interrupted while scoring search ops", e);
+		} finally {
+			pendingOps_.clear();
+		}
+	}
+
+	private static void cancelAll(List<Future<Double>> futures) {
+		for (Future<Double> future : futures) {
+			future.cancel(true);
 		}
 	}
 
@@ -414,17 +514,74 @@ public class LocalSearcher {
 	public void initialize(int start) {
 		ActionDiagram ad = gi_.actionDiagram();
 
+		deferScoring_ = NUM_SCORING_THREADS > 1;
 		for (int n = 0; n < ad.numNodes() - 1; n++) {
 			initializeNode(n, start);
 		}
+		deferScoring_ = false;
+		if (pendingOps_.size() > 0) {
+			scorePendingOps();
+		}
 
 		is_initialized_ = true;
 	}
 
+	// Updates the agenda after an op changed the graph. The candidate ops are enumerated
+	// again (cheap), and the ones with an origin or a destination in the changed region are
+	// rescored. The others keep their old score shifted by the change in graph score and are
+	// marked stale, to be rescored if they reach the top; ops that are no longer enumerated
+	// are dropped. The shifted score of an op is not a bound on its new score, so
+	// CHECK_INCREMENTAL_AGENDA compares each choice with a full rescore.
+	private void reinitialize(int dirty_from, Set<Integer> dirty_origins, double score_shift) {
+		agenda_.shift(score_shift);
+		int num_dirty = agenda_.invalidate(dirty_from, dirty_origins);
+		if (GraphScorer.VERBOSE)
+			System.out.println("REINITIALIZE kept " + (agenda_.size() - num_dirty) + " dirty " + num_dirty);
+
+		reuseScores_ = true;
+		initialize();
+		reuseScores_ = false;
+		agenda_.removeUnseen();
+	}
+
+	// Pops the best op, first rescoring any stale op that reaches the top of the agenda.
+	private Pair<Double, SearchOp> pollFreshOp() {
+		int id = agenda_.peek();
+		while (id != -1 && agenda_.isStale(id)) {
+			agenda_.update(id, -1 * scorer_.getGraphScore(agenda_.op(id)));
+			id = agenda_.peek();
+		}
+		if (id == -1) {
+			return null;
+		}
+		Pair<Double, SearchOp> op_pair = new Pair<Double, SearchOp>(agenda_.score(id), agenda_.op(id));
+		agenda_.remove(id);
+		return op_pair;
+	}
+
+	// The op a full rescore of the current graph would choose.
+	private Pair<Double, SearchOp> pollFullyRescoredOp() {
+		LocalSearcher full = new LocalSearcher(gi_, scorer_);
+		full.initialize();
+		return full.pollFreshOp();
+	}
+
+	private void checkChoice(Pair<Double, SearchOp> op_pair, int step) {
+		Pair<Double, SearchOp> full_pair = pollFullyRescoredOp();
+		if (op_pair == null && full_pair == null) {
+			return;
+		}
+		if (op_pair == null || full_pair == null || !op_pair.getSecond().equals(full_pair.getSecond()) ||
+				Math.abs(op_pair.getFirst() - full_pair.getFirst()) > 1e-9) {
+			System.out.println("Incremental agenda mismatch at step " + step + ": " + op_pair + " vs " + full_pair);
+		}
+	}
+
 	public void run() {
 		if (!is_initialized_) {
 			initialize();
 		}
+		steps_ = new ArrayList<SearchOp>();
 		scorer_.changeGraph(gi_);
 		double curr_lprob = -1 * scorer_.getGraphScore();
 		if (scorer_.VERBOSE)
@@ -434,7 +591,10 @@ public class LocalSearcher {
 		double new_lprob = curr_lprob;
 		do {
 			curr_lprob = new_lprob;
-			Pair<Double, SearchOp> op_pair = scoreActiveAgenda_.pollFirst();
+			Pair<Double, SearchOp> op_pair = pollFreshOp();
+			if (INCREMENTAL_AGENDA && CHECK_INCREMENTAL_AGENDA) {
+				checkChoice(op_pair, c);
+			}
 			if (op_pair == null) {
 				break; // no more operations
 			}
@@ -451,12 +611,20 @@ public class LocalSearcher {
 			if (scorer_.VERBOSE)
 				System.out.println("OP CHOICE " + op_pair);
 
-			gi_.applySearchOp(op, scorer_);
+			if (INCREMENTAL_AGENDA) {
+				gi_.clearDirtyRegion();
+				gi_.applySearchOp(op, scorer_);
+				reinitialize(gi_.dirtyFrom(), new HashSet<Integer>(gi_.dirtyOrigins()), 
+						op_pair.getFirst() - curr_lprob);
+			} else {
+				gi_.applySearchOp(op, scorer_);
 
-			scoreActiveAgenda_.clear();
+				agenda_.clear();
 
-			initialize();
+				initialize();
+			}
 			new_lprob = op_pair.getFirst();
+			steps_.add(op);
 			c++;
 
 		} while (Math.abs(new_lprob - curr_lprob) > 0.001);
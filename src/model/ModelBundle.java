@@ -0,0 +1,301 @@
+package model;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import data.RecipeSentenceSegmenter;
+
+/***
+ * Binary bundle of the models of one iteration, read through a memory-mapped buffer instead of
+ * parsing the text model files. All numbers are big-endian:
+ *
+ * int MAGIC, int VERSION
+ * int num_strings, then for each string: int num_bytes, UTF-8 bytes
+ * int num_sections, then for each section: int name (string id), int offset, int length
+ * the section data
+ *
+ * Strings inside the sections are ids into the shared string table. Each model writes and reads
+ * its own section (writeToBundle / readFromBundle), in the same order as its text file.
+ *
+ * To convert:
+ * java ModelBundle tobundle model_prefix iteration bundle_file
+ * java ModelBundle totext bundle_file model_prefix iteration
+ *
+ * where the text models are model_prefix + "conn_model_" + iteration + ".model" etc.
+ */
+public class ModelBundle {
+	public static final int MAGIC = 0x524d4231; // "RMB1"
+	public static final int VERSION = 1;
+
+	public static final String CONN_MODEL = "conn_model";
+	public static final String STR_CLASSIFIER = "str_classifier";
+	public static final String PREF_MODEL = "pref_model";
+	public static final String REV_PREF_MODEL = "rev_pref_model";
+	public static final String MIX_MODEL = "mix_model";
+	public static final String LOC_MODEL = "loc_model";
+	public static final String MIX_AND_LOC_MODEL = "mix_and_loc_model";
+
+	public static String[] MODEL_NAMES = new String[]{CONN_MODEL, STR_CLASSIFIER, PREF_MODEL, REV_PREF_MODEL,
+		MIX_MODEL, LOC_MODEL, MIX_AND_LOC_MODEL};
+
+	public static class Writer {
+		private Map<String, Integer> string_ids_ = new HashMap<String, Integer>();
+		private List<String> strings_ = new ArrayList<String>();
+		private Map<String, ByteArrayOutputStream> sections_ = new LinkedHashMap<String, ByteArrayOutputStream>();
+		private DataOutputStream out_ = null;
+
+		public void beginSection(String name) {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			sections_.put(name, bytes);
+			out_ = new DataOutputStream(bytes);
+			stringId(name);
+		}
+
+		private int stringId(String s) {
+			Integer id = string_ids_.get(s);
+			if (id == null) {
+				id = strings_.size();
+				string_ids_.put(s, id);
+				strings_.add(s);
+			}
+			return id;
+		}
+
+		public void writeInt(int value) throws IOException {
+			out_.writeInt(value);
+		}
+
+		public void writeDouble(double value) throws IOException {
+			out_.writeDouble(value);
+		}
+
+		// null is written as -1
+		public void writeString(String s) throws IOException {
+			out_.writeInt(s == null ? -1 : stringId(s));
+		}
+
+		public void writeStringIntMap(Map<String, Integer> map) throws IOException {
+			out_.writeInt(map.size());
+			for (Map.Entry<String, Integer> entry : map.entrySet()) {
+				writeString(entry.getKey());
+				out_.writeInt(entry.getValue());
+			}
+		}
+
+		public void writeStringDoubleMap(Map<String, Double> map) throws IOException {
+			out_.writeInt(map.size());
+			for (Map.Entry<String, Double> entry : map.entrySet()) {
+				writeString(entry.getKey());
+				out_.writeDouble(entry.getValue());
+			}
+		}
+
+		public void writeToFile(String filename) throws IOException {
+			ByteArrayOutputStream header_bytes = new ByteArrayOutputStream();
+			DataOutputStream header = new DataOutputStream(header_bytes);
+			header.writeInt(MAGIC);
+			header.writeInt(VERSION);
+			header.writeInt(strings_.size());
+			for (String s : strings_) {
+				byte[] bytes = s.getBytes("UTF-8");
+				header.writeInt(bytes.length);
+				header.write(bytes);
+			}
+			header.writeInt(sections_.size());
+			int offset = header.size() + 12 * sections_.size();
+			for (Map.Entry<String, ByteArrayOutputStream> section : sections_.entrySet()) {
+				header.writeInt(string_ids_.get(section.getKey()));
+				header.writeInt(offset);
+				header.writeInt(section.getValue().size());
+				offset += section.getValue().size();
+			}
+
+			// written to a temporary file and renamed, so readers never see a partial bundle
+			File file = new File(filename);
+			File tmp_file = new File(filename + ".tmp");
+			FileOutputStream out = new FileOutputStream(tmp_file);
+			header_bytes.writeTo(out);
+			for (ByteArrayOutputStream section : sections_.values()) {
+				section.writeTo(out);
+			}
+			out.close();
+			if (!tmp_file.renameTo(file)) {
+				file.delete();
+				if (!tmp_file.renameTo(file)) {
+					throw new IOException("Could not rename " + tmp_file + " to " + file);
+				}
+			}
+		}
+	}
+
+	public static class Reader {
+		private ByteBuffer buffer_;
+		private String[] strings_;
+		private Map<String, int[]> sections_ = new HashMap<String, int[]>();
+		private ByteBuffer section_ = null;
+
+		public Reader(String filename) throws IOException {
+			RandomAccessFile file = new RandomAccessFile(filename, "r");
+			FileChannel channel = file.getChannel();
+			buffer_ = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			file.close();
+
+			if (buffer_.getInt() != MAGIC) {
+				throw new IOException(filename + " is not a model bundle");
+			}
+			int version = buffer_.getInt();
+			if (version != VERSION) {
+				throw new IOException(filename + " has bundle version " + version + ", expected " + VERSION);
+			}
+			strings_ = new String[buffer_.getInt()];
+			for (int i = 0; i < strings_.length; i++) {
+				byte[] bytes = new byte[buffer_.getInt()];
+				buffer_.get(bytes);
+				strings_[i] = new String(bytes, "UTF-8");
+			}
+			int num_sections = buffer_.getInt();
+			for (int i = 0; i < num_sections; i++) {
+				String name = strings_[buffer_.getInt()];
+				int offset = buffer_.getInt();
+				int length = buffer_.getInt();
+				sections_.put(name, new int[]{offset, length});
+			}
+		}
+
+		public boolean hasSection(String name) {
+			return sections_.containsKey(name);
+		}
+
+		public void beginSection(String name) throws IOException {
+			int[] section = sections_.get(name);
+			if (section == null) {
+				throw new IOException("No section " + name + " in the model bundle");
+			}
+			ByteBuffer view = buffer_.duplicate();
+			view.position(section[0]);
+			view.limit(section[0] + section[1]);
+			section_ = view.slice();
+		}
+
+		public int readInt() {
+			return section_.getInt();
+		}
+
+		public double readDouble() {
+			return section_.getDouble();
+		}
+
+		public String readString() {
+			int id = section_.getInt();
+			if (id == -1) {
+				return null;
+			}
+			return strings_[id];
+		}
+
+		public void readStringIntMap(Map<String, Integer> map) {
+			int size = section_.getInt();
+			for (int i = 0; i < size; i++) {
+				String key = readString();
+				map.put(key, section_.getInt());
+			}
+		}
+
+		public void readStringDoubleMap(Map<String, Double> map) {
+			int size = section_.getInt();
+			for (int i = 0; i < size; i++) {
+				String key = readString();
+				map.put(key, section_.getDouble());
+			}
+		}
+	}
+
+	// The models GraphScorerHardEMLearner uses to parse recipes, with the mix_model section as
+	// the mixtures model.
+	public static ScoringModels readScoringModels(RecipeSentenceSegmenter chunker, String filename) throws IOException {
+		Reader reader = new Reader(filename);
+		return new ScoringModels(chunker,
+				ThreeWayStringClassifier.readFromBundle(reader, STR_CLASSIFIER),
+				SelectionalPreferenceModel.readFromBundle(reader, PREF_MODEL),
+				RevSelectionalPreferenceModel.readFromBundle(reader, REV_PREF_MODEL),
+				IBM1MixturesModel.readFromBundle(reader, MIX_MODEL),
+				ConnectionsModel.readFromBundle(reader, CONN_MODEL));
+	}
+
+	private static String textFile(String model_prefix, String name, int iter) {
+		return model_prefix + name + "_" + iter + ".model";
+	}
+
+	// Bundles the text models of an iteration; models without a text file are left out.
+	public static void textToBundle(String model_prefix, int iter, String bundle_file) throws IOException {
+		Writer writer = new Writer();
+		for (String name : MODEL_NAMES) {
+			String filename = textFile(model_prefix, name, iter);
+			if (!new File(filename).exists()) {
+				continue;
+			}
+			if (name.equals(CONN_MODEL)) {
+				ConnectionsModel.readFromFile(filename).writeToBundle(writer, name);
+			} else if (name.equals(STR_CLASSIFIER)) {
+				ThreeWayStringClassifier.readPhraseIdentifierFromFile(filename).writeToBundle(writer, name);
+			} else if (name.equals(PREF_MODEL)) {
+				SelectionalPreferenceModel.readModelFromFile(filename).writeToBundle(writer, name);
+			} else if (name.equals(REV_PREF_MODEL)) {
+				RevSelectionalPreferenceModel.readModelFromFile(filename).writeToBundle(writer, name);
+			} else {
+				IBM1MixturesModel.readModelFromFile(filename).writeToBundle(writer, name);
+			}
+		}
+		writer.writeToFile(bundle_file);
+	}
+
+	// Writes the text model files of the models in a bundle.
+	public static void bundleToText(String bundle_file, String model_prefix, int iter) throws IOException {
+		Reader reader = new Reader(bundle_file);
+		for (String name : MODEL_NAMES) {
+			if (!reader.hasSection(name)) {
+				continue;
+			}
+			String filename = textFile(model_prefix, name, iter);
+			if (name.equals(CONN_MODEL)) {
+				ConnectionsModel.readFromBundle(reader, name).writeToFile(filename);
+			} else if (name.equals(STR_CLASSIFIER)) {
+				ThreeWayStringClassifier.readFromBundle(reader, name).writeToFile(filename);
+			} else if (name.equals(PREF_MODEL)) {
+				SelectionalPreferenceModel.readFromBundle(reader, name).writeToFile(filename);
+			} else if (name.equals(REV_PREF_MODEL)) {
+				RevSelectionalPreferenceModel.readFromBundle(reader, name).writeToFile(filename);
+			} else {
+				IBM1MixturesModel.readFromBundle(reader, name).writeToFile(filename);
+			}
+		}
+	}
+
+	public static void main(String args[]) {
+		try {
+			if (args.length == 4 && args[0].equals("tobundle")) {
+				textToBundle(args[1], Integer.parseInt(args[2]), args[3]);
+			} else if (args.length == 4 && args[0].equals("totext")) {
+				bundleToText(args[1], args[2], Integer.parseInt(args[3]));
+			} else {
+				System.out.println("Usage: ModelBundle tobundle model_prefix iteration bundle_file");
+				System.out.println("       ModelBundle totext bundle_file model_prefix iteration");
+				System.exit(1);
+			}
+		} catch (IOException ex) {
+			ex.printStackTrace();
+			System.exit(1);
+		}
+	}
+}
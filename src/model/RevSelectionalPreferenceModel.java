@@ -16,8 +16,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import model.SelectionalPreferenceModel.PrefType;
 import utils.Measurements;
 import utils.Pair;
+import utils.SymbolTable;
 import utils.Utils;
 import data.ActionDiagram;
 import data.IngredientParser;
@@ -113,6 +115,19 @@ public class RevSelectionalPreferenceModel {
 	public static double alpha = 0.01;
 	public static String UNK = "UNK";
 
+	// Log probs indexed by PrefType ordinal. verb_lprobs is indexed by the SymbolTable id of the
+	// verb (null for verbs not seen with any preference type, which get unk_lprobs).
+	private static class PrefTables {
+		public double[][] verb_lprobs;
+		public double[] unk_lprobs;
+		public double[] priors;
+		public boolean[] has_verb_lprobs;
+		public boolean[] has_prior;
+	}
+
+	// built from the maps on first use, and dropped when they change
+	private volatile PrefTables tables_ = null;
+
 
 	public RevSelectionalPreferenceModel() {
 		selectional_pref_to_verb_log_probs = new HashMap<String, Map<String, Double>>();
@@ -121,9 +136,11 @@ public class RevSelectionalPreferenceModel {
 	
 	public void setSelectionalPrefModel(Map<String, Map<String, Double>> probs) {
 		selectional_pref_to_verb_log_probs = probs;
+		tables_ = null;
 	}
 	
 	public void initialize(List<Pair<File, File>> arg_and_fulltext_files) throws IllegalArgumentException, IOException {
+		tables_ = null;
 		int verb_count = 0;
 		int ttl = 0;
 		Set<String> verb_set = new HashSet<String>();
@@ -371,6 +388,30 @@ public class RevSelectionalPreferenceModel {
 		return model;
 	}
 
+	public static RevSelectionalPreferenceModel readFromBundle(ModelBundle.Reader reader, String section) throws IOException {
+		reader.beginSection(section);
+		RevSelectionalPreferenceModel model = new RevSelectionalPreferenceModel();
+		reader.readStringDoubleMap(model.pref_probs);
+		int num_prefs = reader.readInt();
+		for (int v = 0; v < num_prefs; v++) {
+			String pref = reader.readString();
+			Map<String, Double> verb_probs = new HashMap<String, Double>();
+			reader.readStringDoubleMap(verb_probs);
+			model.selectional_pref_to_verb_log_probs.put(pref, verb_probs);
+		}
+		return model;
+	}
+
+	public void writeToBundle(ModelBundle.Writer writer, String section) throws IOException {
+		writer.beginSection(section);
+		writer.writeStringDoubleMap(pref_probs);
+		writer.writeInt(selectional_pref_to_verb_log_probs.size());
+		for (Map.Entry<String, Map<String, Double>> entry : selectional_pref_to_verb_log_probs.entrySet()) {
+			writer.writeString(entry.getKey());
+			writer.writeStringDoubleMap(entry.getValue());
+		}
+	}
+
 	public void writeToFile(String filename) throws IOException {
 		BufferedWriter bw = new BufferedWriter(new FileWriter(filename));
 		bw.write(pref_probs.size() + "\n");
@@ -389,17 +430,94 @@ public class RevSelectionalPreferenceModel {
 		bw.close();
 	}
 	
-	public double lprobVerbGivenPref(String verb, String pref) {
-		Map<String, Double> verb_probs = selectional_pref_to_verb_log_probs.get(pref);
-		Double prob = verb_probs.get(verb);
-		if (prob == null) {
-			return verb_probs.get(UNK);
+	private PrefTables tables() {
+		PrefTables tables = tables_;
+		if (tables == null) {
+			synchronized (this) {
+				if (tables_ == null) {
+					tables_ = buildTables();
+				}
+				tables = tables_;
+			}
 		}
-		return prob;
+		return tables;
 	}
-	
-	public double lprobPrefPrior(String pref) {
-		return pref_probs.get(pref);
+
+	private PrefTables buildTables() {
+		SymbolTable symbols = SymbolTable.GLOBAL;
+		int num_types = PrefType.values().length;
+		PrefTables tables = new PrefTables();
+		tables.unk_lprobs = new double[num_types];
+		tables.priors = new double[num_types];
+		tables.has_verb_lprobs = new boolean[num_types];
+		tables.has_prior = new boolean[num_types];
+		for (Map.Entry<String, Map<String, Double>> pref_entry : selectional_pref_to_verb_log_probs.entrySet()) {
+			PrefType pref = PrefType.fromString(pref_entry.getKey());
+			if (pref == null) {
+				continue;
+			}
+			for (String verb : pref_entry.getValue().keySet()) {
+				symbols.intern(verb);
+			}
+			Double unk = pref_entry.getValue().get(UNK);
+			tables.unk_lprobs[pref.ordinal()] = (unk == null ? Double.NaN : unk);
+			tables.has_verb_lprobs[pref.ordinal()] = true;
+		}
+		tables.verb_lprobs = new double[symbols.size()][];
+		for (Map.Entry<String, Map<String, Double>> pref_entry : selectional_pref_to_verb_log_probs.entrySet()) {
+			PrefType pref = PrefType.fromString(pref_entry.getKey());
+			if (pref == null) {
+				continue;
+			}
+			for (Map.Entry<String, Double> entry : pref_entry.getValue().entrySet()) {
+				if (entry.getKey().equals(UNK)) {
+					continue;
+				}
+				int verb_id = symbols.id(entry.getKey());
+				if (tables.verb_lprobs[verb_id] == null) {
+					tables.verb_lprobs[verb_id] = tables.unk_lprobs.clone();
+				}
+				tables.verb_lprobs[verb_id][pref.ordinal()] = entry.getValue();
+			}
+		}
+		for (Map.Entry<String, Double> entry : pref_probs.entrySet()) {
+			PrefType pref = PrefType.fromString(entry.getKey());
+			if (pref == null) {
+				continue;
+			}
+			tables.priors[pref.ordinal()] = entry.getValue();
+			tables.has_prior[pref.ordinal()] = true;
+		}
+		return tables;
+	}
+
+	public double lprobVerbGivenPref(String verb, PrefType pref) {
+		return lprobVerbGivenPref(verbId(verb), pref);
+	}
+
+	// Id of the verb for lprobVerbGivenPref, once the tables have interned the known verbs.
+	public int verbId(String verb) {
+		tables();
+		return SymbolTable.GLOBAL.id(verb);
+	}
+
+	public double lprobVerbGivenPref(int verb_id, PrefType pref) {
+		PrefTables tables = tables();
+		if (!tables.has_verb_lprobs[pref.ordinal()]) {
+			throw new IllegalStateException("No verb probabilities for selectional preference: " + pref);
+		}
+		if (verb_id == SymbolTable.UNK || verb_id >= tables.verb_lprobs.length || tables.verb_lprobs[verb_id] == null) {
+			return tables.unk_lprobs[pref.ordinal()];
+		}
+		return tables.verb_lprobs[verb_id][pref.ordinal()];
+	}
+
+	public double lprobPrefPrior(PrefType pref) {
+		PrefTables tables = tables();
+		if (!tables.has_prior[pref.ordinal()]) {
+			throw new IllegalStateException("No prior for selectional preference: " + pref);
+		}
+		return tables.priors[pref.ordinal()];
 	}
 
 
@@ -454,5 +572,6 @@ public class RevSelectionalPreferenceModel {
 
 	public void setPriors(Map<String, Double> pref_probs2) {
 		pref_probs = pref_probs2;
+		tables_ = null;
 	}
 }
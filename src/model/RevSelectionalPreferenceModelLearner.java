@@ -1,21 +1,24 @@
 package model;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
-import java.util.Set;
 
-import utils.Utils;
+import model.SelectionalPreferenceModel.PrefType;
 import model.SelectionalPreferenceModel.SelectionalPreference;
+import utils.StringCounts;
 import data.ActionDiagram;
 import data.ActionDiagram.ActionNode;
 
-public class RevSelectionalPreferenceModelLearner {
+public class RevSelectionalPreferenceModelLearner implements SufficientStatistics<RevSelectionalPreferenceModelLearner> {
 
 	public int ttl = 0;
-	public Set<String> verb_set = new HashSet<String>(); 
-	public Map<String, Integer> pref_cnt = new HashMap<String, Integer>();
-	public Map<String, Map<String, Integer>> pref_to_verb_cnt = new HashMap<String, Map<String, Integer>>();
+	// indexed by PrefType ordinal
+	public int[] pref_cnt = new int[PrefType.values().length];
+	// per verb, with a column per PrefType ordinal
+	public StringCounts verb_to_pref_cnt = new StringCounts(PrefType.values().length);
 	
 	public void addData(GraphInfo gi) {
 		ActionDiagram ad = gi.actionDiagram();
@@ -24,30 +27,63 @@ public class RevSelectionalPreferenceModelLearner {
 			ActionNode node = ad.getNodeAtIndex(n);
 			SelectionalPreference pref = gi.getSelectionalPreferencesOfNode(node);
 			String predicate = node.event().predicate();
-			verb_set.add(predicate);
 			
 			ttl++;
-			Utils.incrementStringMapCount(pref_cnt, pref.pref_type);
-			Utils.incrementStringMapValueCount(pref_to_verb_cnt, pref.pref_type, predicate);
+			pref_cnt[pref.pref_type.ordinal()]++;
+			verb_to_pref_cnt.increment(predicate, pref.pref_type.ordinal());
 		}
 	}
-	
+
+	public void merge(RevSelectionalPreferenceModelLearner other) {
+		ttl += other.ttl;
+		for (int i = 0; i < pref_cnt.length; i++) {
+			pref_cnt[i] += other.pref_cnt[i];
+		}
+		verb_to_pref_cnt.merge(other.verb_to_pref_cnt);
+	}
+
+	public void serialize(DataOutputStream out) throws IOException {
+		out.writeInt(ttl);
+		for (int i = 0; i < pref_cnt.length; i++) {
+			out.writeInt(pref_cnt[i]);
+		}
+		verb_to_pref_cnt.serialize(out);
+	}
+
+	public void deserialize(DataInputStream in) throws IOException {
+		ttl = in.readInt();
+		for (int i = 0; i < pref_cnt.length; i++) {
+			pref_cnt[i] = in.readInt();
+		}
+		verb_to_pref_cnt.deserialize(in);
+	}
+
 	public RevSelectionalPreferenceModel computeModel() {
 		RevSelectionalPreferenceModel model = new RevSelectionalPreferenceModel();
 		Map<String, Map<String, Double>> selectional_pref_to_verb_log_probs = new HashMap<String, Map<String, Double>>();
 		Map<String, Double> pref_probs = new HashMap<String, Double>();
-		for (String pref : pref_cnt.keySet()) {
-			Integer ttl_cnt = pref_cnt.get(pref);
-			pref_probs.put(pref, Math.log(ttl_cnt) - Math.log(ttl));
-			Map<String, Integer> verb_cnt = pref_to_verb_cnt.get(pref);
-			double denom = -1*Math.log(ttl_cnt + (RevSelectionalPreferenceModel.alpha*(verb_cnt.size() + 1)));
+		for (PrefType pref : PrefType.values()) {
+			int ttl_cnt = pref_cnt[pref.ordinal()];
+			if (ttl_cnt == 0) {
+				continue;
+			}
+			pref_probs.put(pref.toString(), Math.log(ttl_cnt) - Math.log(ttl));
+			int num_verbs = 0;
+			for (int v = 0; v < verb_to_pref_cnt.size(); v++) {
+				if (verb_to_pref_cnt.get(v, pref.ordinal()) != 0) {
+					num_verbs++;
+				}
+			}
+			double denom = -1*Math.log(ttl_cnt + (RevSelectionalPreferenceModel.alpha*(num_verbs + 1)));
 			Map<String, Double> verb_prob = new HashMap<String, Double>();
 			verb_prob.put(RevSelectionalPreferenceModel.UNK, Math.log(RevSelectionalPreferenceModel.alpha) + denom);
-			for (String verb : verb_cnt.keySet()) {
-				Integer cnt = verb_cnt.get(verb);
-				verb_prob.put(verb, Math.log(RevSelectionalPreferenceModel.alpha + cnt) + denom);
+			for (int v = 0; v < verb_to_pref_cnt.size(); v++) {
+				int cnt = verb_to_pref_cnt.get(v, pref.ordinal());
+				if (cnt != 0) {
+					verb_prob.put(verb_to_pref_cnt.key(v), Math.log(RevSelectionalPreferenceModel.alpha + cnt) + denom);
+				}
 			}
-			selectional_pref_to_verb_log_probs.put(pref, verb_prob);
+			selectional_pref_to_verb_log_probs.put(pref.toString(), verb_prob);
 		}
 		model.setSelectionalPrefModel(selectional_pref_to_verb_log_probs);
 		model.setPriors(pref_probs);
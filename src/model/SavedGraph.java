@@ -0,0 +1,250 @@
+package model;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import model.Connections.Connection;
+import model.ConnectionsModel.CONN_TYPE;
+import utils.Triple;
+import utils.Utils;
+import data.ActionDiagram;
+import data.ActionDiagram.ActionNode;
+import data.RecipeEvent;
+import data.RecipeEvent.Argument;
+
+/***
+ * The committed connections of a parsed recipe, kept from one EM iteration to seed the search
+ * of the next. The recipe's ActionDiagram is rebuilt every iteration, so a connection is kept
+ * by node indices, destination argument and span instead of by its nodes and arguments.
+ * The destination argument is the direct object, the implicit prepositional argument, or an
+ * explicit prepositional argument with the same preposition and string.
+ */
+public class SavedGraph {
+	private static final String DOBJ = "DOBJ";
+	private static final String IMP_PREP = "IMP_PREP";
+	private static final String PREP = "PREP";
+
+	private static class SavedConnection {
+		int origin;
+		int dest;
+		String kind;
+		CONN_TYPE type;
+		String prep;
+		String arg_string;
+		String span;
+	}
+
+	public final String recipe_name;
+	public final int num_nodes;
+	// accepted ops of the search that found the graph
+	public int search_steps = 0;
+	// accepted ops of the last search of the recipe from the linear initialization, or -1
+	public int cold_search_steps = -1;
+	private List<SavedConnection> connections_ = new ArrayList<SavedConnection>();
+
+	private SavedGraph(String recipe_name, int num_nodes) {
+		this.recipe_name = recipe_name;
+		this.num_nodes = num_nodes;
+	}
+
+	public int numConnections() {
+		return connections_.size();
+	}
+
+	public static SavedGraph fromGraph(GraphInfo gi) {
+		ActionDiagram ad = gi.actionDiagram();
+		SavedGraph saved = new SavedGraph(ad.recipeName(), ad.numNodes());
+		Iterator<Triple<ActionNode, Argument, String>> dest_it = gi.connections_.dest_iterator();
+		while (dest_it.hasNext()) {
+			Triple<ActionNode, Argument, String> dest = dest_it.next();
+			Connection conn = gi.connections_.getConnection(dest);
+			Argument arg = dest.getSecond();
+			SavedConnection saved_conn = new SavedConnection();
+			saved_conn.origin = conn.origin.index();
+			saved_conn.dest = dest.getFirst().index();
+			if (arg == dest.getFirst().event().dobj()) {
+				saved_conn.kind = DOBJ;
+			} else if (arg.string().equals("")) {
+				saved_conn.kind = IMP_PREP;
+			} else {
+				saved_conn.kind = PREP;
+			}
+			saved_conn.type = conn.type;
+			saved_conn.prep = (arg.preposition() == null ? "" : arg.preposition());
+			saved_conn.arg_string = arg.string();
+			saved_conn.span = dest.getThird();
+			saved.connections_.add(saved_conn);
+		}
+		return saved;
+	}
+
+	// Argument of the event the connection goes to, or null if the event does not have it.
+	private static Argument findArgument(RecipeEvent event, SavedConnection conn) {
+		if (conn.kind.equals(DOBJ)) {
+			Argument dobj = event.dobj();
+			if (dobj != null && dobj.string().equals(conn.arg_string)) {
+				return dobj;
+			}
+			return null;
+		}
+		Iterator<Argument> prep_it = event.prepositionalArgIterator();
+		while (prep_it.hasNext()) {
+			Argument prep = prep_it.next();
+			if (conn.kind.equals(IMP_PREP)) {
+				if (prep.string().equals("")) {
+					return prep;
+				}
+			} else if (prep.string().equals(conn.arg_string) && conn.prep.equals(prep.preposition())) {
+				return prep;
+			}
+		}
+		return null;
+	}
+
+	// Creates the saved connections in a graph that has none yet, adding the implicit
+	// arguments they go to. Returns false, leaving the graph unchanged, if the recipe does not
+	// match: then the graph should be initialized with LinearGraphInfoInitializer instead.
+	public boolean seed(GraphInfo gi, GraphScorer gs) {
+		ActionDiagram ad = gi.actionDiagram();
+		if (ad.numNodes() != num_nodes || gi.connections_.numConnections() != 0) {
+			return false;
+		}
+		boolean[] has_output = new boolean[num_nodes];
+		for (SavedConnection conn : connections_) {
+			if (conn.origin < 0 || conn.origin >= conn.dest || conn.dest >= num_nodes) {
+				return false;
+			}
+			has_output[conn.origin] = true;
+			RecipeEvent event = ad.getNodeAtIndex(conn.dest).event();
+			Argument arg = findArgument(event, conn);
+			if (arg == null) {
+				// only the empty arguments added by the initializer or the search can be recreated
+				if (conn.kind.equals(PREP) || !conn.arg_string.equals("") || !conn.span.equals("") ||
+						(conn.kind.equals(DOBJ) && event.dobj() != null)) {
+					return false;
+				}
+			} else if (!arg.nonIngredientSpans().contains(conn.span)) {
+				return false;
+			}
+		}
+		for (int n = 0; n < num_nodes - 1; n++) {
+			if (!has_output[n]) {
+				return false;
+			}
+		}
+
+		for (SavedConnection conn : connections_) {
+			ActionNode dest = ad.getNodeAtIndex(conn.dest);
+			RecipeEvent event = dest.event();
+			Argument arg = findArgument(event, conn);
+			if (arg == null) {
+				if (conn.kind.equals(DOBJ)) {
+					arg = event.setDirectObject("");
+				} else {
+					arg = event.addPrepositionalArgument("", conn.prep);
+				}
+				arg.addNonIngredientSpan("");
+			}
+			gi.createConnection(ad.getNodeAtIndex(conn.origin),
+					new Triple<ActionNode, Argument, String>(dest, arg, conn.span), conn.type, gs);
+		}
+		for (int n = 0; n < num_nodes; n++) {
+			gi.updateNode(gs, ad.getNodeAtIndex(n));
+		}
+		return true;
+	}
+
+	// One line per recipe ("RECIPE name num_nodes num_connections search_steps cold_search_steps")
+	// followed by a line per connection, with tab-separated fields.
+	public static void writeToFile(Map<String, SavedGraph> graphs, String filename) throws IOException {
+		BufferedWriter bw = new BufferedWriter(new FileWriter(filename));
+		for (SavedGraph saved : graphs.values()) {
+			bw.write("RECIPE\t" + saved.recipe_name + "\t" + saved.num_nodes + "\t" + saved.connections_.size() + "\t" +
+					saved.search_steps + "\t" + saved.cold_search_steps + "\n");
+			for (SavedConnection conn : saved.connections_) {
+				bw.write(conn.origin + "\t" + conn.dest + "\t" + conn.kind + "\t" + conn.type + "\t" + conn.prep + "\t" +
+						conn.arg_string + "\t" + conn.span + "\n");
+			}
+		}
+		bw.close();
+	}
+
+	public static void readFromFile(String filename, Map<String, SavedGraph> graphs) throws IOException {
+		BufferedReader br = new BufferedReader(new FileReader(filename));
+		String line = null;
+		while ((line = br.readLine()) != null) {
+			String[] header = line.split("\t", -1);
+			SavedGraph saved = new SavedGraph(header[1], Integer.parseInt(header[2]));
+			int num_connections = Integer.parseInt(header[3]);
+			saved.search_steps = Integer.parseInt(header[4]);
+			saved.cold_search_steps = Integer.parseInt(header[5]);
+			for (int c = 0; c < num_connections; c++) {
+				String[] fields = br.readLine().split("\t", -1);
+				SavedConnection conn = new SavedConnection();
+				conn.origin = Integer.parseInt(fields[0]);
+				conn.dest = Integer.parseInt(fields[1]);
+				conn.kind = fields[2];
+				conn.type = CONN_TYPE.valueOf(fields[3]);
+				conn.prep = fields[4];
+				conn.arg_string = fields[5];
+				conn.span = fields[6];
+				saved.connections_.add(conn);
+			}
+			graphs.put(saved.recipe_name, saved);
+		}
+		br.close();
+	}
+
+	// The same, in binary for checkpoints.
+	public static void writeGraphs(DataOutputStream out, Map<String, SavedGraph> graphs) throws IOException {
+		out.writeInt(graphs.size());
+		for (SavedGraph saved : graphs.values()) {
+			Utils.writeString(out, saved.recipe_name);
+			out.writeInt(saved.num_nodes);
+			out.writeInt(saved.search_steps);
+			out.writeInt(saved.cold_search_steps);
+			out.writeInt(saved.connections_.size());
+			for (SavedConnection conn : saved.connections_) {
+				out.writeInt(conn.origin);
+				out.writeInt(conn.dest);
+				Utils.writeString(out, conn.kind);
+				out.writeInt(conn.type.ordinal());
+				Utils.writeString(out, conn.prep);
+				Utils.writeString(out, conn.arg_string);
+				Utils.writeString(out, conn.span);
+			}
+		}
+	}
+
+	public static void readGraphs(DataInputStream in, Map<String, SavedGraph> graphs) throws IOException {
+		int num_graphs = in.readInt();
+		for (int g = 0; g < num_graphs; g++) {
+			String recipe_name = Utils.readString(in);
+			SavedGraph saved = new SavedGraph(recipe_name, in.readInt());
+			saved.search_steps = in.readInt();
+			saved.cold_search_steps = in.readInt();
+			int num_connections = in.readInt();
+			for (int c = 0; c < num_connections; c++) {
+				SavedConnection conn = new SavedConnection();
+				conn.origin = in.readInt();
+				conn.dest = in.readInt();
+				conn.kind = Utils.readString(in);
+				conn.type = CONN_TYPE.values()[in.readInt()];
+				conn.prep = Utils.readString(in);
+				conn.arg_string = Utils.readString(in);
+				conn.span = Utils.readString(in);
+				saved.connections_.add(conn);
+			}
+			graphs.put(saved.recipe_name, saved);
+		}
+	}
+}
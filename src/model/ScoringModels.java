@@ -0,0 +1,28 @@
+package model;
+
+import data.RecipeSentenceSegmenter;
+
+/***
+ * The trained models used to score action graphs. They are not changed after construction,
+ * so one instance can be shared by the GraphScorers of many recipes and threads.
+ */
+public class ScoringModels {
+	public final RecipeSentenceSegmenter chunker;
+	public final ThreeWayStringClassifier str_classifier;
+	public final SelectionalPreferenceModel selectional_pref_model;
+	public final RevSelectionalPreferenceModel rev_selectional_pref_model;
+	public final IBM1MixturesModel mixtures_model;
+	public final ConnectionsModel connection_model;
+
+	public ScoringModels(RecipeSentenceSegmenter chunker, ThreeWayStringClassifier str_classifier, 
+			SelectionalPreferenceModel selectional_pref_model, 
+			RevSelectionalPreferenceModel rev_selectional_pref_model, IBM1MixturesModel mix_model,
+			ConnectionsModel conn_model) {
+		this.chunker = chunker;
+		this.str_classifier = str_classifier;
+		this.selectional_pref_model = selectional_pref_model;
+		this.rev_selectional_pref_model = rev_selectional_pref_model;
+		this.mixtures_model = mix_model;
+		this.connection_model = conn_model;
+	}
+}
@@ -0,0 +1,266 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/***
+ * Agenda of scored search ops for LocalSearcher: an indexed binary heap of op ids keyed by
+ * score, lowest first, with ties broken by the SearchOp order. Each op remembers the range of
+ * its destination node indices and the origin node indices it touches so that the ops in the part
+ * of the graph changed by an accepted op can be invalidated in bulk.
+ *
+ * Scores are stored relative to an offset, so shifting every score by the same amount (as an
+ * accepted op does for the ops it does not touch) is constant time.
+ */
+public class SearchAgenda {
+	private Map<SearchOp, Integer> op_to_id_ = new HashMap<SearchOp, Integer>();
+	private List<SearchOp> ops_ = new ArrayList<SearchOp>();
+	private double[] keys_ = new double[64];
+	// score as computed, returned for ops that are not stale
+	private double[] scores_ = new double[64];
+	private int[] min_dest_ = new int[64];
+	private int[] max_dest_ = new int[64];
+	private int[][] origins_ = new int[64][];
+	// stale: scored before the last shift(); dirty: in the invalidated region, needs rescoring;
+	// seen: enumerated again since the last invalidate()
+	private boolean[] stale_ = new boolean[64];
+	private boolean[] dirty_ = new boolean[64];
+	private boolean[] seen_ = new boolean[64];
+	private int[] heap_pos_ = new int[64];
+	private int[] heap_ = new int[64];
+	private int size_ = 0;
+	private int[] free_ids_ = new int[64];
+	private int num_free_ = 0;
+	private double offset_ = 0.0;
+
+	public int size() {
+		return size_;
+	}
+
+	public void clear() {
+		op_to_id_.clear();
+		ops_.clear();
+		size_ = 0;
+		num_free_ = 0;
+		offset_ = 0.0;
+	}
+
+	// Id of the op, or -1 if it is not on the agenda.
+	public int find(SearchOp op) {
+		Integer id = op_to_id_.get(op);
+		if (id == null) {
+			return -1;
+		}
+		return id;
+	}
+
+	// Ops on the agenda, in heap order.
+	public List<SearchOp> ops() {
+		List<SearchOp> ops = new ArrayList<SearchOp>();
+		for (int pos = 0; pos < size_; pos++) {
+			ops.add(ops_.get(heap_[pos]));
+		}
+		return ops;
+	}
+
+	public SearchOp op(int id) {
+		return ops_.get(id);
+	}
+
+	public double score(int id) {
+		if (stale_[id]) {
+			return keys_[id] + offset_;
+		}
+		return scores_[id];
+	}
+
+	public boolean isStale(int id) {
+		return stale_[id];
+	}
+
+	public boolean isDirty(int id) {
+		return dirty_[id];
+	}
+
+	// Adds the op or, if it is already on the agenda, changes its score.
+	public int put(SearchOp op, double score, int min_dest, Set<Integer> origins) {
+		int id = find(op);
+		if (id == -1) {
+			id = newId(op);
+			op_to_id_.put(op, id);
+			heap_pos_[id] = size_;
+			heap_[size_++] = id;
+		}
+		min_dest_[id] = min_dest;
+		max_dest_[id] = Math.max(min_dest, op.maxDestIndex());
+		int[] origin_arr = new int[origins.size()];
+		int i = 0;
+		for (Integer origin : origins) {
+			origin_arr[i++] = origin;
+		}
+		origins_[id] = origin_arr;
+		stale_[id] = false;
+		dirty_[id] = false;
+		seen_[id] = true;
+		update(id, score);
+		return id;
+	}
+
+	// Changes the score of an op on the agenda.
+	public void update(int id, double score) {
+		keys_[id] = score - offset_;
+		scores_[id] = score;
+		stale_[id] = false;
+		siftUp(heap_pos_[id]);
+		siftDown(heap_pos_[id]);
+	}
+
+	// Marks an op that was enumerated again and keeps its (possibly stale) score.
+	public void keep(int id) {
+		seen_[id] = true;
+	}
+
+	// Lowest scored op, or -1 if the agenda is empty.
+	public int peek() {
+		if (size_ == 0) {
+			return -1;
+		}
+		return heap_[0];
+	}
+
+	public void remove(int id) {
+		int pos = heap_pos_[id];
+		size_--;
+		if (pos != size_) {
+			int moved = heap_[size_];
+			heap_[pos] = moved;
+			heap_pos_[moved] = pos;
+			siftUp(pos);
+			siftDown(heap_pos_[moved]);
+		}
+		op_to_id_.remove(ops_.get(id));
+		ops_.set(id, null);
+		free_ids_[num_free_++] = id;
+	}
+
+	// Adds delta to the score of every op on the agenda.
+	public void shift(double delta) {
+		offset_ += delta;
+	}
+
+	// Marks every op stale and unseen, and the ops that overlap the change as dirty: the nodes
+	// at or after dirty_from and the nodes in dirty_origins. An op overlaps it if one of its
+	// origins or a node in the range of its destinations does.
+	public int invalidate(int dirty_from, Set<Integer> dirty_origins) {
+		int num_dirty = 0;
+		for (int pos = 0; pos < size_; pos++) {
+			int id = heap_[pos];
+			stale_[id] = true;
+			seen_[id] = false;
+			boolean dirty = max_dest_[id] >= dirty_from;
+			for (int origin : origins_[id]) {
+				if (dirty) {
+					break;
+				}
+				dirty = origin >= dirty_from || dirty_origins.contains(origin);
+			}
+			for (int changed : dirty_origins) {
+				if (dirty) {
+					break;
+				}
+				dirty = changed >= min_dest_[id] && changed <= max_dest_[id];
+			}
+			dirty_[id] = dirty;
+			if (dirty) {
+				num_dirty++;
+			}
+		}
+		return num_dirty;
+	}
+
+	// Drops the ops that were not enumerated again since the last invalidate().
+	public void removeUnseen() {
+		List<Integer> unseen = new ArrayList<Integer>();
+		for (int pos = 0; pos < size_; pos++) {
+			if (!seen_[heap_[pos]]) {
+				unseen.add(heap_[pos]);
+			}
+		}
+		for (int id : unseen) {
+			remove(id);
+		}
+	}
+
+	private int newId(SearchOp op) {
+		if (num_free_ > 0) {
+			int id = free_ids_[--num_free_];
+			ops_.set(id, op);
+			return id;
+		}
+		int id = ops_.size();
+		ops_.add(op);
+		if (id == keys_.length) {
+			int capacity = 2 * id;
+			keys_ = Arrays.copyOf(keys_, capacity);
+			scores_ = Arrays.copyOf(scores_, capacity);
+			min_dest_ = Arrays.copyOf(min_dest_, capacity);
+			max_dest_ = Arrays.copyOf(max_dest_, capacity);
+			origins_ = Arrays.copyOf(origins_, capacity);
+			stale_ = Arrays.copyOf(stale_, capacity);
+			dirty_ = Arrays.copyOf(dirty_, capacity);
+			seen_ = Arrays.copyOf(seen_, capacity);
+			heap_pos_ = Arrays.copyOf(heap_pos_, capacity);
+			heap_ = Arrays.copyOf(heap_, capacity);
+			free_ids_ = Arrays.copyOf(free_ids_, capacity);
+		}
+		keys_[id] = Double.POSITIVE_INFINITY;
+		return id;
+	}
+
+	private boolean less(int id1, int id2) {
+		if (keys_[id1] != keys_[id2]) {
+			return keys_[id1] < keys_[id2];
+		}
+		return ops_.get(id1).compareTo(ops_.get(id2)) < 0;
+	}
+
+	private void siftUp(int pos) {
+		int id = heap_[pos];
+		while (pos > 0) {
+			int parent = (pos - 1) / 2;
+			if (!less(id, heap_[parent])) {
+				break;
+			}
+			heap_[pos] = heap_[parent];
+			heap_pos_[heap_[pos]] = pos;
+			pos = parent;
+		}
+		heap_[pos] = id;
+		heap_pos_[id] = pos;
+	}
+
+	private void siftDown(int pos) {
+		int id = heap_[pos];
+		while (true) {
+			int child = 2 * pos + 1;
+			if (child >= size_) {
+				break;
+			}
+			if (child + 1 < size_ && less(heap_[child + 1], heap_[child])) {
+				child++;
+			}
+			if (!less(heap_[child], id)) {
+				break;
+			}
+			heap_[pos] = heap_[child];
+			heap_pos_[heap_[pos]] = pos;
+			pos = child;
+		}
+		heap_[pos] = id;
+		heap_pos_[id] = pos;
+	}
+}
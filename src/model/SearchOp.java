@@ -246,6 +246,14 @@ public class SearchOp implements Comparable<SearchOp> {
 		genString(origin1, origin2, origin3);
 	}
 	
+	// Identity of the op: op code, type, closeness and farness of the new connections, origin node
+	// indices (-1 if none) and destinations. A destination is compared by node and span, or by the
+	// argument type when the span is empty. The string is only built for printing.
+	private int closeness_ = Integer.MAX_VALUE;
+	private int farness_ = 0;
+	private ActionNode origin1_ = null;
+	private ActionNode origin2_ = null;
+	private ActionNode origin3_ = null;
 	private String str_ = null;
 	
 	public boolean isDestSwap() {
@@ -275,317 +283,242 @@ public class SearchOp implements Comparable<SearchOp> {
 	public boolean isChangeType() {
 		return op_ == OP_CHANGE_TYPE_;
 	}
-	
+
+	// Highest node index of the destinations of the op.
+	public int maxDestIndex() {
+		return Math.max(index(node1), Math.max(index(node2), index(node3)));
+	}
+
 	@Override
 	public int compareTo(SearchOp arg0) {
-		return str_.compareTo(arg0.str_);
+		if (closeness_ != arg0.closeness_) {
+			return closeness_ < arg0.closeness_ ? -1 : 1;
+		}
+		if (farness_ != arg0.farness_) {
+			return farness_ < arg0.farness_ ? -1 : 1;
+		}
+		if (op_ != arg0.op_) {
+			return op_ - arg0.op_;
+		}
+		int cmp = typeCode(type_) - typeCode(arg0.type_);
+		if (cmp != 0) {
+			return cmp;
+		}
+		cmp = index(origin1_) - index(arg0.origin1_);
+		if (cmp != 0) {
+			return cmp;
+		}
+		cmp = index(origin2_) - index(arg0.origin2_);
+		if (cmp != 0) {
+			return cmp;
+		}
+		cmp = index(origin3_) - index(arg0.origin3_);
+		if (cmp != 0) {
+			return cmp;
+		}
+		cmp = compareDests(node1, arg1, span1, arg0.node1, arg0.arg1, arg0.span1);
+		if (cmp != 0) {
+			return cmp;
+		}
+		cmp = compareDests(node2, arg2, span2, arg0.node2, arg0.arg2, arg0.span2);
+		if (cmp != 0) {
+			return cmp;
+		}
+		return compareDests(node3, arg3, span3, arg0.node3, arg0.arg3, arg0.span3);
 	}
+
 	public boolean equals(Object o) {
-		return compareTo((SearchOp)o) == 0;
+		if (o instanceof SearchOp) {
+			return compareTo((SearchOp)o) == 0;
+		}
+		return false;
 	}
 	
 	public int hashCode() {
-		return toString().hashCode();
+		int hash = op_;
+		hash = 31 * hash + typeCode(type_);
+		hash = 31 * hash + closeness_;
+		hash = 31 * hash + farness_;
+		hash = 31 * hash + index(origin1_);
+		hash = 31 * hash + index(origin2_);
+		hash = 31 * hash + index(origin3_);
+		hash = 31 * hash + destHash(node1, arg1, span1);
+		hash = 31 * hash + destHash(node2, arg2, span2);
+		hash = 31 * hash + destHash(node3, arg3, span3);
+		return hash;
+	}
+
+	private static int typeCode(CONN_TYPE type) {
+		if (type == CONN_TYPE.FOOD) {
+			return 0;
+		} else if (type == CONN_TYPE.LOC) {
+			return 1;
+		}
+		return 2;
+	}
+
+	private static int index(ActionNode node) {
+		return node == null ? -1 : node.index();
+	}
+
+	private static String destKey(Argument arg, String span) {
+		if (span == null) {
+			return null;
+		}
+		if (span.equals("")) {
+			return arg.type().toString();
+		}
+		return span;
+	}
+
+	private static int compareDests(ActionNode n1, Argument a1, String s1, ActionNode n2, Argument a2, String s2) {
+		int cmp = index(n1) - index(n2);
+		if (cmp != 0) {
+			return cmp;
+		}
+		String k1 = destKey(a1, s1);
+		String k2 = destKey(a2, s2);
+		if (k1 == null || k2 == null) {
+			return (k1 == null ? 0 : 1) - (k2 == null ? 0 : 1);
+		}
+		return k1.compareTo(k2);
+	}
+
+	private static int destHash(ActionNode node, Argument arg, String span) {
+		String key = destKey(arg, span);
+		return 31 * index(node) + (key == null ? 0 : key.hashCode());
+	}
+
+	private void addDistance(ActionNode dest, ActionNode origin) {
+		int c = dest.index() - origin.index();
+		if (c < closeness_) {
+			closeness_ = c;
+		}
+		if (c > farness_) {
+			farness_ = c;
+		}
 	}
 	
 	public String toString() {
+		if (str_ == null) {
+			str_ = buildString();
+		}
 		return str_;
 	}
-	
+
+	// Looks up the origins of the destinations the op moves.
 	public void genString(GraphInfo gi) {
-		int closeness = Integer.MAX_VALUE;
-		int farness = 0;
-		if (isDestSwap()) {
-			str_ = "OP_SWAP:";
-		} else if (isAddDest()) {
-			str_ = "OP_ADD:";
-		} else if (isRemoveDest()) {
-			str_ = "OP_REMOVE:";
-		} else if (isNewDest()) {
-			str_ = "OP_NEW:";
-		} else if (isSplitConn()) {
-			str_ = "OP_SPLIT:";
-		} else if (isThreeWay()) {
-			str_ = "OP_THREE:";
-		} else if (isChangeType()) {
-			str_ = "OP_CHANGE:";
-		}
-		
-		if (type_ == CONN_TYPE.FOOD) {
-			str_ += "FOOD:";
-		} else if (type_ == CONN_TYPE.LOC) {
-			str_ += "LOC:";
-		} else {
-			str_ += "OTHER:";
-		}
 		switch(op_) {
 		case OP_SWAP_DESTS_:
-			String s1 = span1;
-			if (span1.equals("")) {
-				s1 = arg1.type().toString();
-			}
-			String s2 = span2;
-			if (span2.equals("")) {
-				s2 = arg2.type().toString();
-			}
-			ActionNode origin1 = gi.getOrigin(node1, arg1, span1);
-			ActionNode origin2 = gi.getOrigin(node2, arg2, span2);
-			int c = node1.index() - origin2.index();
-			if (c < closeness) {
-				closeness = c;
-			}
-			if (c > farness) {
-				farness = c;
-			}
-			c = node2.index() - origin1.index();
-			if (c < closeness) {
-				closeness = c;
-			}
-			if (c > farness) {
-				farness = c;
-			}
-			str_ += "(" + origin1 + ", " + origin2 + ") <-> (" + node1 + ":" + s1 + ", " + node2 + ":" + s2 + ")";
+			origin1_ = gi.getOrigin(node1, arg1, span1);
+			origin2_ = gi.getOrigin(node2, arg2, span2);
+			addDistance(node1, origin2_);
+			addDistance(node2, origin1_);
 			break;
 		case OP_NEW_DEST_:
-			s1 = span1;
-			if (span1.equals("")) {
-				s1 = arg1.type().toString();
-			}
-			s2 = span2;
-			if (span2.equals("")) {
-				s2 = arg2.type().toString();
-			}
-			ActionNode o1 = gi.getOrigin(node1, arg1, span1);
-			c = node2.index() - o1.index();
-			if (c < closeness) {
-				closeness = c;
-			}
-			if (c > farness) {
-				farness = c;
-			}
-			str_ += "(" + o1 + ") <-> (" + node1 + ":" + s1 + ", " + node2 + ":" + s2 + ")";
+			origin1_ = gi.getOrigin(node1, arg1, span1);
+			addDistance(node2, origin1_);
 			break;
 		case OP_ADD_NEW_OUTPUT_:
-			s1 = span1;
-			if (span1.equals("")) {
-				s1 = arg1.type().toString();
-			}
-			c = node1.index() - origin.index();
-			if (c < closeness) {
-				closeness = c;
+		case OP_REMOVE_OUTPUT_:
+			origin1_ = origin;
+			addDistance(node1, origin);
+			break;
+		case OP_THREE_WAY_:
+			origin1_ = gi.getOrigin(node1, arg1, span1);
+			origin2_ = gi.getOrigin(node2, arg2, span2);
+			origin3_ = gi.getOrigin(node3, arg3, span3);
+			if (origin3_ != null) {
+				addDistance(node1, origin3_);
 			}
-			if (c > farness) {
-				farness = c;
+			addDistance(node3, origin2_);
+			if (origin1_ != null) {
+				addDistance(node2, origin1_);
 			}
-			str_ += origin + " --> + " + node1 + ":" + s1;
 			break;
+		}
+		str_ = null;
+	}
+	
+	public void genString(ActionNode origin1, ActionNode origin2, ActionNode origin3) {
+		switch(op_) {
+		case OP_SWAP_DESTS_:
+			origin1_ = origin1;
+			origin2_ = origin2;
+			addDistance(node1, origin1);
+			addDistance(node2, origin2);
+			break;
+		case OP_NEW_DEST_:
+			origin1_ = origin1;
+			addDistance(node2, origin1);
+			break;
+		case OP_ADD_NEW_OUTPUT_:
 		case OP_REMOVE_OUTPUT_:
-			s1 = span1;
-			if (span1.equals("")) {
-				s1 = arg1.type().toString();
-			}
-			c = node1.index() - origin.index();
-			if (c < closeness) {
-				closeness = c;
-			}
-			if (c > farness) {
-				farness = c;
-			}
-			str_ += origin + " -/-> + " + node1 + ":" + s1;
+			origin1_ = origin;
+			addDistance(node1, origin);
 			break;
-//		case OP_SPLIT_CONN_:
-//			ActionNode or1 = gi.getOrigin(node1, arg1, span1);
-//			ActionNode or2 = gi.getOrigin(node2, arg2, span2);
-//			str_ += "(" + or2 + ") -> " + or1 + ":" + span1;
-//			break;
 		case OP_THREE_WAY_:
-			s1 = span1;
-			if (span1.equals("")) {
-				s1 = arg1.type().toString();
-			}
-			s2 = span2;
-			if (span2.equals("")) {
-				s2 = arg2.type().toString();
-			}
-			String s3 = span3;
-			if (span3.equals("")) {
-				s3 = arg3.type().toString();
-			}
-			ActionNode or1 = gi.getOrigin(node1, arg1, span1);
-			ActionNode or2 = gi.getOrigin(node2, arg2, span2);
-			ActionNode or3 = gi.getOrigin(node3, arg3, span3);
-			if (or3 != null) {
-				c = node1.index() - or3.index();
-				if (c < closeness) {
-					closeness = c;
-				}
-				if (c > farness) {
-					farness = c;
-				}
-			}
-			c = node3.index() - or2.index();
-			if (c < closeness) {
-				closeness = c;
-			}
-			if (c > farness) {
-				farness = c;
+			origin1_ = origin1;
+			origin2_ = origin2;
+			origin3_ = origin3;
+			if (origin3 != null) {
+				addDistance(node1, origin3);
 			}
-			if (or1 != null) {
-				c = node2.index() - or1.index();
-				if (c < closeness) {
-					closeness = c;
-				}
-				if (c > farness) {
-					farness = c;
-				}
+			addDistance(node3, origin2);
+			if (origin1 != null) {
+				addDistance(node2, origin1);
 			}
-			str_ += "(" + or1 + ", " + or2 + ", " + or3 + ") <-> (" + node1 + ":" + s1 + ", " + node2 + ":" + s2 +
-					", " + node3 + ":" + s3 + ")";
 			break;
 		}
-		str_ = closeness + " " + farness + " " + str_;
+		str_ = null;
 	}
-	
-	public void genString(ActionNode origin1, ActionNode origin2, ActionNode origin3) {
-		int closeness = Integer.MAX_VALUE;
-		int farness = 0;
+
+	private String buildString() {
+		String str = "";
 		if (isDestSwap()) {
-			str_ = "OP_SWAP:";
+			str = "OP_SWAP:";
 		} else if (isAddDest()) {
-			str_ = "OP_ADD:";
+			str = "OP_ADD:";
 		} else if (isRemoveDest()) {
-			str_ = "OP_REMOVE:";
+			str = "OP_REMOVE:";
 		} else if (isNewDest()) {
-			str_ = "OP_NEW:";
+			str = "OP_NEW:";
 		} else if (isSplitConn()) {
-			str_ = "OP_SPLIT:";
+			str = "OP_SPLIT:";
 		} else if (isThreeWay()) {
-			str_ = "OP_THREE:";
+			str = "OP_THREE:";
 		} else if (isChangeType()) {
-			str_ = "OP_CHANGE:";
+			str = "OP_CHANGE:";
 		}
+		
 		if (type_ == CONN_TYPE.FOOD) {
-			str_ += "FOOD:";
+			str += "FOOD:";
 		} else if (type_ == CONN_TYPE.LOC) {
-			str_ += "LOC:";
+			str += "LOC:";
 		} else {
-			str_ += "OTHER:";
+			str += "OTHER:";
 		}
 		switch(op_) {
 		case OP_SWAP_DESTS_:
-			String s1 = span1;
-			if (span1.equals("")) {
-				s1 = arg1.type().toString();
-			}
-			String s2 = span2;
-			if (span2.equals("")) {
-				s2 = arg2.type().toString();
-			}
-			int c = node1.index() - origin1.index();
-			if (c < closeness) {
-				closeness = c;
-			}
-			if (c > farness) {
-				farness = c;
-			}
-			c = node2.index() - origin2.index();
-			if (c < closeness) {
-				closeness = c;
-			}
-			if (c > farness) {
-				farness = c;
-			}
-			str_ += "(" + origin1 + ", " + origin2 + ") <-> (" + node1 + ":" + s1 + ", " + node2 + ":" + s2 + ")";
+			str += "(" + origin1_ + ", " + origin2_ + ") <-> (" + node1 + ":" + destKey(arg1, span1) + ", " + 
+					node2 + ":" + destKey(arg2, span2) + ")";
 			break;
 		case OP_NEW_DEST_:
-			s1 = span1;
-			if (span1.equals("")) {
-				s1 = arg1.type().toString();
-			}
-			s2 = span2;
-			if (span2.equals("")) {
-				s2 = arg2.type().toString();
-			}
-			c = node2.index() - origin1.index();
-			if (c < closeness) {
-				closeness = c;
-			}
-			if (c > farness) {
-				farness = c;
-			}
-			str_ += "(" + origin1 + ") <-> (" + node1 + ":" + s1 + ", " + node2 + ":" + s2 + ")";
+			str += "(" + origin1_ + ") <-> (" + node1 + ":" + destKey(arg1, span1) + ", " + 
+					node2 + ":" + destKey(arg2, span2) + ")";
 			break;
 		case OP_ADD_NEW_OUTPUT_:
-			s1 = span1;
-			if (span1.equals("")) {
-				s1 = arg1.type().toString();
-			}
-			c = node1.index() - origin.index();
-			if (c < closeness) {
-				closeness = c;
-			}
-			if (c > farness) {
-				farness = c;
-			}
-			str_ += origin + " --> + " + node1 + ":" + s1;
+			str += origin + " --> + " + node1 + ":" + destKey(arg1, span1);
 			break;
 		case OP_REMOVE_OUTPUT_:
-			s1 = span1;
-			if (span1.equals("")) {
-				s1 = arg1.type().toString();
-			}
-			c = node1.index() - origin.index();
-			if (c < closeness) {
-				closeness = c;
-			}
-			if (c > farness) {
-				farness = c;
-			}
-			str_ += origin + " -/-> + " + node1 + ":" + s1;
+			str += origin + " -/-> + " + node1 + ":" + destKey(arg1, span1);
 			break;
 		case OP_THREE_WAY_:
-			s1 = span1;
-			if (span1.equals("")) {
-				s1 = arg1.type().toString();
-			}
-			s2 = span2;
-			if (span2.equals("")) {
-				s2 = arg2.type().toString();
-			}
-			String s3 = span3;
-			if (span3.equals("")) {
-				s3 = arg3.type().toString();
-			}
-			if (origin3 != null) {
-				c = node1.index() - origin3.index();
-				if (c < closeness) {
-					closeness = c;
-				}
-				if (c > farness) {
-					farness = c;
-				}
-			}
-			c = node3.index() - origin2.index();
-			if (c < closeness) {
-				closeness = c;
-			}
-			if (c > farness) {
-				farness = c;
-			}
-			if (origin1 != null) {
-				c = node2.index() - origin1.index();
-				if (c < closeness) {
-					closeness = c;
-				}
-				if (c > farness) {
-					farness = c;
-				}
-			}
-			str_ += "(" + origin1 + ", " + origin2 + ", " + origin3 + ") <-> (" + node1 + ":" + s1 + ", " + node2 + ":" + s2 +
-					", " + node3 + ":" + s3 + ")";
+			str += "(" + origin1_ + ", " + origin2_ + ", " + origin3_ + ") <-> (" + node1 + ":" + destKey(arg1, span1) + 
+					", " + node2 + ":" + destKey(arg2, span2) + ", " + node3 + ":" + destKey(arg3, span3) + ")";
 			break;
 		}
-		str_ = closeness + " " + farness + " " + str_;
+		return closeness_ + " " + farness_ + " " + str;
 	}
 
 }
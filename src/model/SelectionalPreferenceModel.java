@@ -29,11 +29,58 @@ import data.RecipeEvent.Argument.Type;
 
 public class SelectionalPreferenceModel {
 
-	public static String[] possible_prefs = new String[]{"INGOBJ:PREP", "INGOBJ:NOPREP",
-		"NONINGOBJ:PREP", "NONINGOBJ:NOPREP"};
+	// Preference types, in the order of their strings. Each type is followed by its
+	// :LEAF variant (nodes without incoming connections), so the ordinal's low bit is the leaf bit.
+	public enum PrefType {
+		INGOBJ_NOPREP("INGOBJ:NOPREP"),
+		INGOBJ_NOPREP_LEAF("INGOBJ:NOPREP:LEAF"),
+		INGOBJ_PREP("INGOBJ:PREP"),
+		INGOBJ_PREP_LEAF("INGOBJ:PREP:LEAF"),
+		NONINGOBJ_NOPREP("NONINGOBJ:NOPREP"),
+		NONINGOBJ_NOPREP_LEAF("NONINGOBJ:NOPREP:LEAF"),
+		NONINGOBJ_PREP("NONINGOBJ:PREP"),
+		NONINGOBJ_PREP_LEAF("NONINGOBJ:PREP:LEAF");
+
+		private static final PrefType[] VALUES = values();
+
+		private final String name;
+
+		private PrefType(String s) {
+			name = s;
+		}
+
+		public boolean isLeaf() {
+			return (ordinal() & 1) == 1;
+		}
+
+		public PrefType leaf() {
+			return VALUES[ordinal() | 1];
+		}
+
+		public PrefType nonLeaf() {
+			return VALUES[ordinal() & ~1];
+		}
+
+		// Type with the given string, or null if there is none.
+		public static PrefType fromString(String s) {
+			for (PrefType type : VALUES) {
+				if (type.name.equals(s)) {
+					return type;
+				}
+			}
+			return null;
+		}
+
+		public String toString() {
+			return name;
+		}
+	};
+
+	public static PrefType[] possible_prefs = new PrefType[]{PrefType.INGOBJ_PREP, PrefType.INGOBJ_NOPREP,
+		PrefType.NONINGOBJ_PREP, PrefType.NONINGOBJ_NOPREP};
 
 	public static class SelectionalPreference implements Comparable<SelectionalPreference> {
-		public String pref_type;
+		public PrefType pref_type;
 		public Argument[] arg_arr;
 		public Argument loc = null;
 		public List<Argument> other_args = null;
@@ -357,15 +404,15 @@ public class SelectionalPreferenceModel {
 		if (verb_probs == null) {
 			verb_probs = global_selectional_pref_log_probs;
 		}
-		return verb_probs.get(sp.pref_type);
+		return verb_probs.get(sp.pref_type.toString());
 	}
 
-	public double getLogProbOfPrefType(String predicate, String pref_type) {
+	public double getLogProbOfPrefType(String predicate, PrefType pref_type) {
 		Map<String, Double> selectional_prefs =  verb_to_selectional_pref_log_probs.get(predicate);
 		if (selectional_prefs == null) {
 			selectional_prefs = global_selectional_pref_log_probs;
 		}
-		return selectional_prefs.get(pref_type);
+		return selectional_prefs.get(pref_type.toString());
 	}
 	
 	public boolean doesPredMostLikelyHaveIngObj(String predicate) {
@@ -418,6 +465,48 @@ public class SelectionalPreferenceModel {
 		return model;
 	}
 
+	public static SelectionalPreferenceModel readFromBundle(ModelBundle.Reader reader, String section) throws IOException {
+		reader.beginSection(section);
+		reader.readString();
+		SelectionalPreferenceModel model = new SelectionalPreferenceModel();
+		int num_verbs = reader.readInt();
+		for (int v = 0; v < num_verbs; v++) {
+			String verb = reader.readString();
+			Map<String, Double> prep_cnt_probs = new HashMap<String, Double>();
+			reader.readStringDoubleMap(prep_cnt_probs);
+			model.verb_to_selectional_pref_log_probs.put(verb, prep_cnt_probs);
+		}
+		reader.readStringDoubleMap(model.global_selectional_pref_log_probs);
+		num_verbs = reader.readInt();
+		for (int v = 0; v < num_verbs; v++) {
+			String verb = reader.readString();
+			Map<String, Double> prep_cnt_probs = new HashMap<String, Double>();
+			reader.readStringDoubleMap(prep_cnt_probs);
+			model.verb_to_imp_prep_log_probs.put(verb, prep_cnt_probs);
+		}
+		reader.readStringDoubleMap(model.verb_creates_loc_log_probs);
+		model.global_creates_loc_log_prob = reader.readDouble();
+		return model;
+	}
+
+	public void writeToBundle(ModelBundle.Writer writer, String section) throws IOException {
+		writer.beginSection(section);
+		writer.writeString(ing_classifier_filename_);
+		writer.writeInt(verb_to_selectional_pref_log_probs.size());
+		for (Map.Entry<String, Map<String, Double>> entry : verb_to_selectional_pref_log_probs.entrySet()) {
+			writer.writeString(entry.getKey());
+			writer.writeStringDoubleMap(entry.getValue());
+		}
+		writer.writeStringDoubleMap(global_selectional_pref_log_probs);
+		writer.writeInt(verb_to_imp_prep_log_probs.size());
+		for (Map.Entry<String, Map<String, Double>> entry : verb_to_imp_prep_log_probs.entrySet()) {
+			writer.writeString(entry.getKey());
+			writer.writeStringDoubleMap(entry.getValue());
+		}
+		writer.writeStringDoubleMap(verb_creates_loc_log_probs);
+		writer.writeDouble(global_creates_loc_log_prob);
+	}
+
 	public void removePrepDistinction() {
 		for (String verb : verb_to_selectional_pref_log_probs.keySet()) {
 			Map<String, Double> pref_probs = verb_to_selectional_pref_log_probs.get(verb);
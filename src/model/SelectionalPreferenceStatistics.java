@@ -0,0 +1,164 @@
+package model;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import model.SelectionalPreferenceModel.PrefType;
+import model.SelectionalPreferenceModel.SelectionalPreference;
+import utils.StringCounts;
+import utils.Utils;
+import data.ActionDiagram;
+import data.ActionDiagram.ActionNode;
+import data.RecipeEvent.Argument;
+import data.RecipeEvent.Argument.Type;
+
+/***
+ * Verb counts of the parsed recipes from which the next SelectionalPreferenceModel is learned:
+ * the (non-leaf) preference types of each verb, how often its prepositional arguments are
+ * implicit, and how often its outputs go to other events and to locations.
+ */
+public class SelectionalPreferenceStatistics implements SufficientStatistics<SelectionalPreferenceStatistics> {
+	private static double alpha = 0.01;
+
+	// columns of imp_prep_cnt
+	private static final int IMP = 0;
+	private static final int EVO = 1;
+
+	public StringCounts verb_cnt = new StringCounts();
+	// per verb, with a column per PrefType ordinal
+	public StringCounts pref_cnt = new StringCounts(PrefType.values().length);
+	// per verb, implicit (IMP) and explicit (EVO) prepositional arguments
+	public StringCounts imp_prep_cnt = new StringCounts(2);
+	// per verb, outputs that go to a location and outputs that go to any argument
+	public StringCounts loc_cnt = new StringCounts();
+	public StringCounts verb_origin_cnt = new StringCounts();
+
+	public void addData(GraphInfo gi) {
+		ActionDiagram ad = gi.actionDiagram();
+
+		for (int n = 0; n < ad.numNodes(); n++) {
+			ActionNode node = ad.getNodeAtIndex(n);
+			SelectionalPreference pref = gi.getSelectionalPreferencesOfNode(node);
+			String pred = node.event().predicate();
+
+			verb_cnt.increment(pred);
+			pref_cnt.increment(pred, pref.pref_type.nonLeaf().ordinal());
+
+			for (Argument arg : pref.arg_arr) {
+				if (arg.type() != Type.OBJECT) {
+					imp_prep_cnt.increment(pred, (arg.string().equals("") ? IMP : EVO));
+				}
+				for (String span : arg.nonIngredientSpans()) {
+					ActionNode origin = gi.getOrigin(node, arg, span);
+					if (origin != null) {
+						verb_origin_cnt.increment(origin.event().predicate());
+					}
+				}
+			}
+
+			Argument loc = pref.loc;
+			if (loc != null) {
+				ActionNode origin = gi.getOrigin(node, loc, loc.string());
+				if (origin != null) {
+					verb_origin_cnt.increment(origin.event().predicate());
+					loc_cnt.increment(origin.event().predicate());
+				}
+			}
+		}
+	}
+
+	public void merge(SelectionalPreferenceStatistics other) {
+		verb_cnt.merge(other.verb_cnt);
+		pref_cnt.merge(other.pref_cnt);
+		imp_prep_cnt.merge(other.imp_prep_cnt);
+		loc_cnt.merge(other.loc_cnt);
+		verb_origin_cnt.merge(other.verb_origin_cnt);
+	}
+
+	public void serialize(DataOutputStream out) throws IOException {
+		verb_cnt.serialize(out);
+		pref_cnt.serialize(out);
+		imp_prep_cnt.serialize(out);
+		loc_cnt.serialize(out);
+		verb_origin_cnt.serialize(out);
+	}
+
+	public void deserialize(DataInputStream in) throws IOException {
+		verb_cnt.deserialize(in);
+		pref_cnt.deserialize(in);
+		imp_prep_cnt.deserialize(in);
+		loc_cnt.deserialize(in);
+		verb_origin_cnt.deserialize(in);
+	}
+
+	public SelectionalPreferenceModel computeModel() {
+		SelectionalPreferenceModel new_pref_model = new SelectionalPreferenceModel();
+		Map<String, Integer> global_cnts = new HashMap<String, Integer>();
+		Map<String, Map<String, Double>> probs = new HashMap<String, Map<String, Double>>();
+		Map<String, Map<String, Double>> imp_probs = new HashMap<String, Map<String, Double>>();
+		Map<String, Double> global_probs = new HashMap<String, Double>();
+		Map<String, Double> verb_loc_probs = new HashMap<String, Double>();
+		int global_total_cnt = 0;
+		int ttl_loc = 0;
+		int ttl = 0;
+		for (int v = 0; v < verb_cnt.size(); v++) {
+			String verb = verb_cnt.key(v);
+			int ttl_cnt = verb_cnt.get(v, 0);
+			Map<String, Double> pref_probs = new HashMap<String, Double>();
+
+			for (PrefType pref : SelectionalPreferenceModel.possible_prefs) {
+				int cnt = pref_cnt.get(verb, pref.ordinal());
+				if (cnt == 0) {
+					pref_probs.put(pref.toString(), Math.log(alpha) - Math.log(ttl_cnt + SelectionalPreferenceModel.possible_prefs.length));
+				} else {
+					Utils.incrementStringMapCount(global_cnts, pref.toString(), cnt);
+					pref_probs.put(pref.toString(), Math.log(cnt + alpha) - Math.log(ttl_cnt + SelectionalPreferenceModel.possible_prefs.length));
+				}
+			}
+			Map<String, Double> verb_imp_probs = new HashMap<String, Double>();
+			if (!imp_prep_cnt.containsKey(verb)) {
+				verb_imp_probs.put("IMP", Math.log(0.5));
+				verb_imp_probs.put("EVO", Math.log(0.5));
+			} else {
+				int imp_cnt = imp_prep_cnt.get(verb, IMP);
+				int evo_cnt = imp_prep_cnt.get(verb, EVO);
+				double denom = Math.log(imp_cnt + evo_cnt + (2*alpha));
+				verb_imp_probs.put("IMP", Math.log(imp_cnt + alpha) - denom);
+				verb_imp_probs.put("EVO", Math.log(evo_cnt + alpha) - denom);
+			}
+
+			probs.put(verb, pref_probs);
+			imp_probs.put(verb, verb_imp_probs);
+
+			if (verb_origin_cnt.containsKey(verb)) {
+				int o_cnt = verb_origin_cnt.get(verb);
+				ttl += o_cnt;
+				if (!loc_cnt.containsKey(verb)) {
+					verb_loc_probs.put(verb, Math.log(alpha) - Math.log(o_cnt + (2.0*alpha)));
+				} else {
+					int l_cnt = loc_cnt.get(verb);
+					ttl_loc += l_cnt;
+					verb_loc_probs.put(verb, Math.log(l_cnt + alpha) - Math.log(o_cnt + (2.0*alpha)));
+				}
+			}
+		}
+		double denom = -1 * Math.log(global_total_cnt + alpha*SelectionalPreferenceModel.possible_prefs.length);
+		for (PrefType possible_pref : SelectionalPreferenceModel.possible_prefs) {
+			Integer cnt = global_cnts.get(possible_pref.toString());
+			if (cnt != null) {
+				global_probs.put(possible_pref.toString(), Math.log(cnt.intValue() + alpha) + denom);
+			} else {
+				global_probs.put(possible_pref.toString(), Math.log(alpha) + denom);
+			}
+		}
+		new_pref_model.setGlobalPrefProbs(global_probs);
+		new_pref_model.setVerbPrefProbs(probs);
+		new_pref_model.setVerbImpPrepProbs(imp_probs);
+		new_pref_model.setVerbLocProbs(verb_loc_probs);
+		new_pref_model.setGlobalLocProb(Math.log(ttl_loc + alpha) - Math.log(ttl + (2*alpha)));
+		return new_pref_model;
+	}
+}
@@ -0,0 +1,109 @@
+package model;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import utils.Measurements;
+import utils.Pair;
+import utils.SymbolTable;
+import utils.Utils;
+import edu.stanford.nlp.util.StringUtils;
+
+/***
+ * Terms of GraphScorer.getTextGivenConnectionsLogProb that depend only on the text of a span:
+ * the tokens without the amount, their stems, the WordNet noun checks and the string classifier
+ * scores of the last token. They are computed the first time a span is scored and reused for
+ * the rest of the recipe. The cache is shared by the copies of a GraphInfo, which score ops on
+ * other threads. The SymbolTable ids are resolved once the models have interned their strings,
+ * so a cache belongs to one string classifier and one mixtures model.
+ */
+public class SpanScoreCache {
+
+	public static class SpanTerms {
+		// the span without its amount
+		public final String text;
+		public final String[] tokens;
+		// stem of the last token, or null if there are no tokens
+		public final String last_stem;
+		// stems of the tokens of 3 or more characters that are mostly nouns in WordNet, and the
+		// same stems joined into the mixture string of the IBM1 model
+		public final Set<String> noun_stems;
+		public final String noun_stem_string;
+		// ids of noun_stem_string split into tokens, for IBM1MixturesModel.logProbOfMixGivenIngs
+		public final int[] noun_stem_ids;
+		// str_classifier.lprobPhraseGivenRaw / lprobPhraseGivenMix of the last stem
+		public final double raw_lprob;
+		public final double mix_lprob;
+
+		private SpanTerms(String span, ThreeWayStringClassifier str_classifier) {
+			Pair<String, String> amt_and_ing = Measurements.splitAmountString(span);
+			text = amt_and_ing.getSecond();
+			tokens = text.split(" ");
+			last_stem = (tokens.length == 0 ? null : Utils.stem(tokens[tokens.length - 1]));
+			HashSet<String> stems = new HashSet<String>();
+			for (String s : tokens) {
+				if (s.length() < 3) {
+					continue;
+				}
+				if (!Utils.isMostlyNounInWordNet(s)) {
+					continue;
+				}
+				stems.add(Utils.stem(s));
+			}
+			noun_stems = stems;
+			noun_stem_string = StringUtils.join(stems);
+			noun_stem_ids = SymbolTable.GLOBAL.ids(noun_stem_string.split(" "));
+			// a span that is all spaces is scored as itself
+			String stem = (last_stem == null ? Utils.stem(span) : last_stem);
+			int[] stem_ids = str_classifier.phraseIds(stem, false, true);
+			raw_lprob = str_classifier.lprobPhraseGivenRaw(stem_ids);
+			mix_lprob = str_classifier.lprobPhraseGivenMix(stem_ids);
+		}
+	}
+
+	// stands for a location string with no tokens in loc_stems_
+	private static final String NO_STEM = new String("");
+
+	private final ThreeWayStringClassifier str_classifier_;
+	private final IBM1MixturesModel mixtures_model_;
+	private final ConcurrentHashMap<String, SpanTerms> span_terms_ = new ConcurrentHashMap<String, SpanTerms>();
+	private final ConcurrentHashMap<String, String> loc_stems_ = new ConcurrentHashMap<String, String>();
+
+	public SpanScoreCache(ThreeWayStringClassifier str_classifier, IBM1MixturesModel mixtures_model) {
+		str_classifier_ = str_classifier;
+		mixtures_model_ = mixtures_model;
+	}
+
+	public ThreeWayStringClassifier strClassifier() {
+		return str_classifier_;
+	}
+
+	public IBM1MixturesModel mixturesModel() {
+		return mixtures_model_;
+	}
+
+	public SpanTerms spanTerms(String span) {
+		SpanTerms terms = span_terms_.get(span);
+		if (terms == null) {
+			terms = new SpanTerms(span, str_classifier_);
+			span_terms_.put(span, terms);
+		}
+		return terms;
+	}
+
+	// Stem of the last token of a location string without its amount, or null if it has no tokens.
+	public String locStem(String loc_string) {
+		String stem = loc_stems_.get(loc_string);
+		if (stem == null) {
+			String[] split = Measurements.splitAmountString(loc_string).getSecond().split(" ");
+			stem = (split.length == 0 ? NO_STEM : Utils.stem(split[split.length - 1]));
+			loc_stems_.put(loc_string, stem);
+		}
+		return (stem == NO_STEM ? null : stem);
+	}
+
+	public int size() {
+		return span_terms_.size() + loc_stems_.size();
+	}
+}
@@ -0,0 +1,210 @@
+package model;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import model.SelectionalPreferenceModel.SelectionalPreference;
+import utils.StringCounts;
+import utils.Utils;
+import data.ActionDiagram;
+import data.RecipeEvent;
+import data.ActionDiagram.ActionNode;
+import data.RecipeEvent.Argument;
+
+/***
+ * Token counts of the ingredient, other and location arguments of the parsed recipes, from
+ * which the next ThreeWayStringClassifier is built.
+ */
+public class StringClassifierStatistics implements SufficientStatistics<StringClassifierStatistics> {
+	public StringCounts verb_counts = new StringCounts();
+	public StringCounts ing_tkn_counts = new StringCounts();
+	public int num_tkns_in_ing_phrases = 0;
+	public int num_ing_phrases = 0;
+	public StringCounts noning_tkn_counts = new StringCounts();
+	public int num_tkns_in_noning_phrases = 0;
+	public int num_noning_phrases = 0;
+	public StringCounts loc_tkn_counts = new StringCounts();
+	public int num_tkns_in_loc_phrases = 0;
+	public int num_loc_phrases = 0;
+	// location token counts of each verb, in the order the verbs are first counted
+	public Map<String, StringCounts> verb_to_location_counts = new LinkedHashMap<String, StringCounts>();
+	public StringCounts raw_ing_tkn_counts = new StringCounts();
+	public StringCounts mix_ing_tkn_counts = new StringCounts();
+
+	private StringCounts verbLocationCounts(String predicate) {
+		StringCounts loc_cnts = verb_to_location_counts.get(predicate);
+		if (loc_cnts == null) {
+			loc_cnts = new StringCounts();
+			verb_to_location_counts.put(predicate, loc_cnts);
+		}
+		return loc_cnts;
+	}
+
+	public void addData(GraphInfo gi) {
+		ActionDiagram ad = gi.actionDiagram();
+
+		for (int i = 0; i < ad.numNodes(); i++) {
+			ActionNode node = ad.getNodeAtIndex(i);
+			RecipeEvent event = node.event();
+			String predicate = event.predicate();
+			verb_counts.increment(predicate);
+
+			SelectionalPreference pref = gi.getSelectionalPreferencesOfNode(node);
+
+			for (Argument ing_arg : pref.arg_arr) {
+				if (ing_arg.string().equals("")) {
+					continue;
+				}
+				String arg_str = ing_arg.string();
+				String[] arg_tkns = arg_str.split(" ");
+				for (String arg_tkn : arg_tkns) {
+					if (arg_tkn.trim().equals("")) {
+						continue;
+					}
+					if (!Utils.isMostlyNounInWordNet(arg_tkn)) {
+						 continue;
+					}
+					ing_tkn_counts.increment(Utils.stem(arg_tkn));
+					num_tkns_in_ing_phrases++;
+				}
+
+				for (String span : ing_arg.nonIngredientSpans()) {
+					if (span.trim().equals("")) {
+						continue;
+					}
+					ActionNode origin = gi.getOrigin(node, ing_arg, span);
+					String[] span_tkns = span.split(" ");
+					for (String span_tkn : span_tkns) {
+						if (!Utils.isMostlyNounInWordNet(span_tkn)) {
+							 continue;
+						}
+						if (origin == null) {
+							raw_ing_tkn_counts.increment(Utils.stem(span_tkn));
+						} else {
+							mix_ing_tkn_counts.increment(Utils.stem(span_tkn));
+						}
+					}
+				}
+				for (String span : ing_arg.ingredientSpans()) {
+					String[] span_tkns = span.split(" ");
+					for (String span_tkn : span_tkns) {
+						if (!Utils.isMostlyNounInWordNet(span_tkn)) {
+							 continue;
+						}
+						raw_ing_tkn_counts.increment(Utils.stem(span_tkn));
+					}
+				}
+			}
+			if (pref.loc != null) {
+				String loc_str = pref.loc.string();
+				if (!pref.loc.string().equals("")) {
+					String[] arg_tkns = loc_str.split(" ");
+					String arg_tkn = arg_tkns[arg_tkns.length - 1];
+					loc_tkn_counts.increment(Utils.stem(arg_tkn));
+					num_tkns_in_loc_phrases++;
+					verbLocationCounts(predicate).increment(Utils.stem(arg_tkn));
+				}
+			}
+			for (Argument other_arg : pref.other_args) {
+				String arg_str = other_arg.string();
+				if (other_arg.string().equals("")) {
+					continue;
+				}
+				String[] arg_tkns = arg_str.split(" ");
+				for (String arg_tkn : arg_tkns) {
+					if (arg_tkn.trim().equals("")) {
+						continue;
+					}
+					if (!Utils.isMostlyNounInWordNet(arg_tkn)) {
+						 continue;
+					}
+					noning_tkn_counts.increment(Utils.stem(arg_tkn));
+					num_tkns_in_noning_phrases++;
+				}
+			}
+		}
+	}
+
+	public void merge(StringClassifierStatistics other) {
+		verb_counts.merge(other.verb_counts);
+		ing_tkn_counts.merge(other.ing_tkn_counts);
+		num_tkns_in_ing_phrases += other.num_tkns_in_ing_phrases;
+		num_ing_phrases += other.num_ing_phrases;
+		noning_tkn_counts.merge(other.noning_tkn_counts);
+		num_tkns_in_noning_phrases += other.num_tkns_in_noning_phrases;
+		num_noning_phrases += other.num_noning_phrases;
+		loc_tkn_counts.merge(other.loc_tkn_counts);
+		num_tkns_in_loc_phrases += other.num_tkns_in_loc_phrases;
+		num_loc_phrases += other.num_loc_phrases;
+		for (Map.Entry<String, StringCounts> entry : other.verb_to_location_counts.entrySet()) {
+			verbLocationCounts(entry.getKey()).merge(entry.getValue());
+		}
+		raw_ing_tkn_counts.merge(other.raw_ing_tkn_counts);
+		mix_ing_tkn_counts.merge(other.mix_ing_tkn_counts);
+	}
+
+	public void serialize(DataOutputStream out) throws IOException {
+		verb_counts.serialize(out);
+		ing_tkn_counts.serialize(out);
+		out.writeInt(num_tkns_in_ing_phrases);
+		out.writeInt(num_ing_phrases);
+		noning_tkn_counts.serialize(out);
+		out.writeInt(num_tkns_in_noning_phrases);
+		out.writeInt(num_noning_phrases);
+		loc_tkn_counts.serialize(out);
+		out.writeInt(num_tkns_in_loc_phrases);
+		out.writeInt(num_loc_phrases);
+		out.writeInt(verb_to_location_counts.size());
+		for (Map.Entry<String, StringCounts> entry : verb_to_location_counts.entrySet()) {
+			Utils.writeString(out, entry.getKey());
+			entry.getValue().serialize(out);
+		}
+		raw_ing_tkn_counts.serialize(out);
+		mix_ing_tkn_counts.serialize(out);
+	}
+
+	public void deserialize(DataInputStream in) throws IOException {
+		verb_counts.deserialize(in);
+		ing_tkn_counts.deserialize(in);
+		num_tkns_in_ing_phrases = in.readInt();
+		num_ing_phrases = in.readInt();
+		noning_tkn_counts.deserialize(in);
+		num_tkns_in_noning_phrases = in.readInt();
+		num_noning_phrases = in.readInt();
+		loc_tkn_counts.deserialize(in);
+		num_tkns_in_loc_phrases = in.readInt();
+		num_loc_phrases = in.readInt();
+		int num_verbs = in.readInt();
+		verb_to_location_counts = new LinkedHashMap<String, StringCounts>();
+		for (int v = 0; v < num_verbs; v++) {
+			String predicate = Utils.readString(in);
+			verbLocationCounts(predicate).deserialize(in);
+		}
+		raw_ing_tkn_counts.deserialize(in);
+		mix_ing_tkn_counts.deserialize(in);
+	}
+
+	// The classifier with these counts.
+	public ThreeWayStringClassifier classifier() {
+		ThreeWayStringClassifier classifier = new ThreeWayStringClassifier();
+		classifier.verb_counts_ = verb_counts.toMap();
+		classifier.ing_tkn_counts_ = ing_tkn_counts.toMap();
+		classifier.num_tkns_in_ing_phrases_ = num_tkns_in_ing_phrases;
+		classifier.num_ing_phrases_ = num_ing_phrases;
+		classifier.noning_tkn_counts_ = noning_tkn_counts.toMap();
+		classifier.num_tkns_in_noning_phrases_ = num_tkns_in_noning_phrases;
+		classifier.num_noning_phrases_ = num_noning_phrases;
+		classifier.loc_tkn_counts_ = loc_tkn_counts.toMap();
+		classifier.num_tkns_in_loc_phrases_ = num_tkns_in_loc_phrases;
+		classifier.num_loc_phrases_ = num_loc_phrases;
+		for (Map.Entry<String, StringCounts> entry : verb_to_location_counts.entrySet()) {
+			classifier.verb_to_location_counts_.put(entry.getKey(), entry.getValue().toMap());
+		}
+		classifier.raw_ing_tkn_counts_ = raw_ing_tkn_counts.toMap();
+		classifier.mix_ing_tkn_counts_ = mix_ing_tkn_counts.toMap();
+		return classifier;
+	}
+}
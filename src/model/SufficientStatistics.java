@@ -0,0 +1,21 @@
+package model;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/***
+ * Counts a learner collects from parsed recipes in the E-step. Each thread or process fills
+ * its own with no locks, and they are combined with merge() in a tree of any shape, as long as
+ * each merge adds the counts of later recipes to those of earlier ones. serialize() and
+ * deserialize() move them between processes and into checkpoints.
+ */
+public interface SufficientStatistics<T extends SufficientStatistics<T>> {
+	// Adds the counts of other, collected from recipes that come after these.
+	public void merge(T other);
+
+	public void serialize(DataOutputStream out) throws IOException;
+
+	// Replaces the counts with those written by serialize().
+	public void deserialize(DataInputStream in) throws IOException;
+}
@@ -8,6 +8,9 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -19,9 +22,11 @@ import java.util.SortedSet;
 import java.util.TreeSet;
 
 import model.SelectionalPreferenceModel.SelectionalPreference;
+import utils.IntDoubleMap;
 import utils.IntPair;
 import utils.Measurements;
 import utils.Pair;
+import utils.SymbolTable;
 import utils.TokenCounter;
 import utils.Utils;
 import data.ActionDiagram;
@@ -80,33 +85,151 @@ public class ThreeWayStringClassifier {
 	}
 
 	private boolean initialized = false;
-	
-	public double lprobPhraseGivenIng(String phrase, boolean stem) {
-		double lprob = 0.0;
+
+	// Token log-prob terms keyed by SymbolTable ids. For each count map, a token's term is
+	// log(alpha + cnt) + denom, and missing is the term of a token without a count.
+	private static class TokenTables {
+		public BitSet tokens = new BitSet();
+		public IntDoubleMap ing_terms, noning_terms, loc_terms, raw_terms, mix_terms;
+		public double ing_missing, noning_missing, loc_missing, raw_missing, mix_missing;
+		public IntDoubleMap raw_counts, mix_counts;
+		// per predicate id (null if none): location token terms and the term of a missing token
+		public IntDoubleMap[] verb_loc_terms;
+		public double[] verb_loc_missing;
+	}
+
+	// built from the count maps on first use, and dropped when the counts change
+	private volatile TokenTables tables_ = null;
+
+	private TokenTables tables() {
+		TokenTables tables = tables_;
+		if (tables == null) {
+			synchronized (this) {
+				if (tables_ == null) {
+					tables_ = buildTables();
+				}
+				tables = tables_;
+			}
+		}
+		return tables;
+	}
+
+	private TokenTables buildTables() {
+		SymbolTable symbols = SymbolTable.GLOBAL;
+		TokenTables tables = new TokenTables();
+		for (String token : tokens_) {
+			tables.tokens.set(symbols.intern(token));
+		}
+		tables.ing_missing = Math.log(alpha) + -1 * Math.log((alpha*tokens_.size()) + num_tkns_in_ing_phrases_);
+		tables.ing_terms = termTable(ing_tkn_counts_, -1 * Math.log((alpha*tokens_.size()) + num_tkns_in_ing_phrases_));
+		tables.noning_missing = Math.log(alpha) + -1 * Math.log((alpha*tokens_.size()) + num_tkns_in_noning_phrases_);
+		tables.noning_terms = termTable(noning_tkn_counts_, -1 * Math.log((alpha*tokens_.size()) + num_tkns_in_noning_phrases_));
+		tables.loc_missing = Math.log(alpha) + -1 * Math.log((alpha*tokens_.size()) + num_tkns_in_loc_phrases_);
+		tables.loc_terms = termTable(loc_tkn_counts_, -1 * Math.log((alpha*tokens_.size()) + num_tkns_in_loc_phrases_));
+		tables.raw_missing = Math.log(alpha) + -1 * Math.log((alpha*tokens_.size()) + total_raw_cnt);
+		tables.raw_terms = termTable(raw_ing_tkn_counts_, -1 * Math.log((alpha*tokens_.size()) + total_raw_cnt));
+		tables.mix_missing = tables.raw_missing;
+		tables.mix_terms = termTable(mix_ing_tkn_counts_, -1 * Math.log((alpha*tokens_.size()) + total_raw_cnt));
+		tables.raw_counts = countTable(raw_ing_tkn_counts_);
+		tables.mix_counts = countTable(mix_ing_tkn_counts_);
+
+		for (String predicate : verb_to_location_counts_.keySet()) {
+			symbols.intern(predicate);
+		}
+		tables.verb_loc_terms = new IntDoubleMap[symbols.size()];
+		tables.verb_loc_missing = new double[symbols.size()];
+		for (String predicate : verb_to_location_counts_.keySet()) {
+			Integer ttl_cnt = verb_counts_.get(predicate);
+			if (ttl_cnt == null) {
+				continue;
+			}
+			Map<String, Integer> loc_cnts = verb_to_location_counts_.get(predicate);
+			double denom = -1 * Math.log(ttl_cnt + alpha*(loc_cnts.size() + 1));
+			IntDoubleMap terms = new IntDoubleMap(loc_cnts.size());
+			for (Map.Entry<String, Integer> entry : loc_cnts.entrySet()) {
+				terms.put(symbols.intern(entry.getKey()), Math.log(alpha + entry.getValue().intValue()) + denom);
+			}
+			int id = symbols.id(predicate);
+			tables.verb_loc_terms[id] = terms;
+			tables.verb_loc_missing[id] = Math.log(alpha) + denom;
+		}
+		return tables;
+	}
+
+	private IntDoubleMap termTable(Map<String, Integer> counts, double denom) {
+		IntDoubleMap terms = new IntDoubleMap(counts.size());
+		for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+			terms.put(SymbolTable.GLOBAL.intern(entry.getKey()), Math.log(alpha + entry.getValue().doubleValue()) + denom);
+		}
+		return terms;
+	}
+
+	private static IntDoubleMap countTable(Map<String, Integer> counts) {
+		IntDoubleMap table = new IntDoubleMap(counts.size());
+		for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+			table.put(SymbolTable.GLOBAL.intern(entry.getKey()), entry.getValue());
+		}
+		return table;
+	}
+
+	// Ids of the tokens of the phrase that the lprobPhrase* methods score, in order: the tokens
+	// that are mostly nouns in WordNet if nouns_only, stemmed if stem, and at least 3 characters
+	// long. Tokens that are not in tokens_ are UNK.
+	public int[] phraseIds(String phrase, boolean stem, boolean nouns_only) {
+		BitSet known_tokens = tables().tokens;
 		String[] tokens = phrase.split(" ");
-		double denom = -1 * Math.log((alpha*tokens_.size()) + num_tkns_in_ing_phrases_);
+		int[] ids = new int[tokens.length];
+		int num_ids = 0;
 		for (String token : tokens) {
+			if (nouns_only && !Utils.isMostlyNounInWordNet(token)) {
+				continue;
+			}
 			if (stem) {
 				token = Utils.stem(token);
 			}
-//			System.out.println(tokens_.contains(token) + " " + token);
-			if (!tokens_.contains(token)) {
-				continue;
-			}
 			if (token.length() < 3) {
 				continue;
 			}
-			Integer cnt = ing_tkn_counts_.get(token);
-//			System.out.println(token + " " + cnt);
-			if (cnt == null) {
-				lprob += Math.log(alpha) + denom;
-			} else {
-				lprob += Math.log(alpha + cnt.doubleValue()) + denom;
+			int id = SymbolTable.GLOBAL.id(token);
+			ids[num_ids++] = (id != SymbolTable.UNK && known_tokens.get(id) ? id : SymbolTable.UNK);
+		}
+		return Arrays.copyOf(ids, num_ids);
+	}
+
+	// Ids of the tokens, in iteration order, for lprobTknsGivenLoc.
+	public int[] tokenIds(Collection<String> tkns, boolean stem) {
+		tables();
+		int[] ids = new int[tkns.size()];
+		int i = 0;
+		for (String tkn : tkns) {
+			ids[i++] = SymbolTable.GLOBAL.id(stem ? Utils.stem(tkn) : tkn);
+		}
+		return ids;
+	}
+
+	// Id of the predicate, for lprobTknsGivenLoc.
+	public int predicateId(String predicate) {
+		tables();
+		return SymbolTable.GLOBAL.id(predicate);
+	}
+
+	// Sum of the terms of the known tokens of a phrase, from phraseIds.
+	private static double lprobPhrase(int[] phrase_ids, IntDoubleMap terms, double missing) {
+		double lprob = 0.0;
+		for (int id : phrase_ids) {
+			if (id == SymbolTable.UNK) {
+				continue;
 			}
+			lprob += terms.get(id, missing);
 		}
 		return lprob;
 	}
 	
+	public double lprobPhraseGivenIng(String phrase, boolean stem) {
+		TokenTables tables = tables();
+		return lprobPhrase(phraseIds(phrase, stem, false), tables.ing_terms, tables.ing_missing);
+	}
+	
 	public boolean isPhraseMoreLikelyToBeIng(String phrase, boolean all_else_even, boolean stem) {
 		double ing_prob = lprobPhraseGivenIng(phrase, stem);
 		double noning_prob = lprobPhraseGivenNonIng(phrase, stem);
@@ -158,138 +281,55 @@ public class ThreeWayStringClassifier {
 	}
 	
 	public double lprobTknsGivenLoc(String predicate, Set<String> phrase, boolean stem) {
+		return lprobTknsGivenLoc(predicateId(predicate), tokenIds(phrase, stem));
+	}
+
+	// pred_id and tkn_ids from predicateId and tokenIds
+	public double lprobTknsGivenLoc(int pred_id, int[] tkn_ids) {
 		double lprob = 0.0;
 		if (verb_to_location_counts_.size() == 0) {
 			return Math.log(0.00000001);
 		}
-		Map<String, Integer> loc_cnts = verb_to_location_counts_.get(predicate);
-		if (loc_cnts == null) {
+		TokenTables tables = tables();
+		if (pred_id == SymbolTable.UNK || pred_id >= tables.verb_loc_terms.length || tables.verb_loc_terms[pred_id] == null) {
 			return Math.log(0.00000001);
 		}
-		Integer ttl_cnt = verb_counts_.get(predicate);
-		double denom = -1 * Math.log(ttl_cnt + alpha*(loc_cnts.size() + 1));
-		for (String tkn : phrase) {
-			if (stem) {
-				tkn = Utils.stem(tkn);
-			}
-			Integer cnt = loc_cnts.get(tkn);
-			if (cnt == null) {
-				lprob += Math.log(alpha) + denom;
-			} else {
-				lprob += Math.log(alpha + cnt.intValue()) + denom;
-			}
+		IntDoubleMap terms = tables.verb_loc_terms[pred_id];
+		double missing = tables.verb_loc_missing[pred_id];
+		for (int tkn_id : tkn_ids) {
+			lprob += terms.get(tkn_id, missing);
 		}
 		return lprob;
 	}
 	
 	public double lprobPhraseGivenNonIng(String phrase, boolean stem) {
-		double lprob = 0.0;
-		String[] tokens = phrase.split(" ");
-		double denom = -1 * Math.log((alpha*tokens_.size()) + num_tkns_in_noning_phrases_);
-		for (String token : tokens) {
-			if (stem) {
-				token = Utils.stem(token);
-			}
-			if (!tokens_.contains(token)) {
-				continue;
-			}
-			if (token.length() < 3) {
-				continue;
-			}
-			Integer cnt = noning_tkn_counts_.get(token);
-//			System.out.println(token + " " + cnt);
-			if (cnt == null) {
-				lprob += Math.log(alpha) + denom;
-			} else {
-				lprob += Math.log(alpha + cnt.doubleValue()) + denom;
-			}
-		}
-		return lprob;
+		TokenTables tables = tables();
+		return lprobPhrase(phraseIds(phrase, stem, false), tables.noning_terms, tables.noning_missing);
 	}
 	
 	public double lprobPhraseGivenRaw(String phrase, boolean stem) {
-		double lprob = 0.0;
-		String[] tokens = phrase.split(" ");
-		double denom = -1 * Math.log((alpha*tokens_.size()) + total_raw_cnt);
-		for (String token : tokens) {
-			if (!Utils.isMostlyNounInWordNet(token)) {
-				continue;
-			}
-			if (stem) {
-				token = Utils.stem(token);
-			}
-			if (!tokens_.contains(token)) {
-				continue;
-			}
-			if (token.length() < 3) {
-				continue;
-			}
-			Integer cnt = raw_ing_tkn_counts_.get(token);
-//			System.out.println(token + " " + cnt);
-			if (cnt == null) {
-				lprob += Math.log(alpha) + denom;
-//				return Double.NEGATIVE_INFINITY;
-			} else {
-				lprob += Math.log(alpha + cnt.doubleValue()) + denom;
-//				lprob += Math.log(cnt.doubleValue()) + denom;
-			}
-		}
-		return lprob;
+		return lprobPhraseGivenRaw(phraseIds(phrase, stem, true));
+	}
+
+	// phrase_ids from phraseIds(phrase, stem, true)
+	public double lprobPhraseGivenRaw(int[] phrase_ids) {
+		TokenTables tables = tables();
+		return lprobPhrase(phrase_ids, tables.raw_terms, tables.raw_missing);
 	}
 	
 	public double lprobPhraseGivenMix(String phrase, boolean stem) {
-		double lprob = 0.0;
-		String[] tokens = phrase.split(" ");
-		double denom = -1 * Math.log((alpha*tokens_.size()) + total_raw_cnt);
-		for (String token : tokens) {
-			if (!Utils.isMostlyNounInWordNet(token)) {
-				continue;
-			}
-			if (stem) {
-				token = Utils.stem(token);
-			}
-			if (!tokens_.contains(token)) {
-				continue;
-			}
-			if (token.length() < 3) {
-				continue;
-			}
-			Integer cnt = mix_ing_tkn_counts_.get(token);
-//			System.out.println(token + " " + cnt);
-			if (cnt == null) {
-				lprob += Math.log(alpha) + denom;
-//				return Double.NEGATIVE_INFINITY;
-			} else {
-				lprob += Math.log(alpha + cnt.doubleValue()) + denom;
-//				lprob += Math.log(cnt.doubleValue()) + denom;
-			}
-		}
-		return lprob;
+		return lprobPhraseGivenMix(phraseIds(phrase, stem, true));
+	}
+
+	// phrase_ids from phraseIds(phrase, stem, true)
+	public double lprobPhraseGivenMix(int[] phrase_ids) {
+		TokenTables tables = tables();
+		return lprobPhrase(phrase_ids, tables.mix_terms, tables.mix_missing);
 	}
 	
 	public double lprobPhraseGivenLoc(String phrase, boolean stem) {
-		double lprob = 0.0;
-		String[] tokens = phrase.split(" ");
-		double denom = -1 * Math.log((alpha*tokens_.size()) + num_tkns_in_loc_phrases_);
-		for (String token : tokens) {
-			if (stem) {
-				token = Utils.stem(token);
-			}
-			if (!tokens_.contains(token)) {
-				continue;
-			}
-			if (token.length() < 3) {
-				continue;
-			}
-			Integer cnt = loc_tkn_counts_.get(token);
-//			System.out.println(token + " " + cnt);
-			if (cnt == null) {
-				lprob += Math.log(alpha) + denom;
-			} else {
-				lprob += Math.log(alpha + cnt.doubleValue()) + denom;
-			}
-		}
-		return lprob;
+		TokenTables tables = tables();
+		return lprobPhrase(phraseIds(phrase, stem, false), tables.loc_terms, tables.loc_missing);
 	}
 	
 	public double lprobLocGivenPhrase(String phrase, boolean stem) {
@@ -304,6 +344,7 @@ public class ThreeWayStringClassifier {
 	
 	public void initialize(List<Pair<File, File>> arg_and_fulltext_files,
 			SelectionalPreferenceModel pref_model) throws IllegalArgumentException, IOException {
+		tables_ = null;
 		int verb_count = 0;
 		Set<String> verbs = new HashSet<String>();
 
@@ -532,108 +573,6 @@ public class ThreeWayStringClassifier {
 	}
 
 
-	public void addData(GraphInfo gi) {
-		ActionDiagram ad = gi.actionDiagram();
-
-		for (int i = 0; i < ad.numNodes(); i++) {
-			ActionNode node = ad.getNodeAtIndex(i);
-			RecipeEvent event = node.event();
-			String predicate = event.predicate();
-			Utils.incrementStringMapCount(verb_counts_, predicate);
-
-			SelectionalPreference pref = gi.getSelectionalPreferencesOfNode(node);
-			
-			for (Argument ing_arg : pref.arg_arr) {
-				if (ing_arg.string().equals("")) {
-					continue;
-				}
-				String arg_str = ing_arg.string();
-				String[] arg_tkns = arg_str.split(" ");
-				for (String arg_tkn : arg_tkns) {
-					if (arg_tkn.trim().equals("")) {
-						continue;
-					}
-					if (!Utils.isMostlyNounInWordNet(arg_tkn)) {
-						 continue;
-					}
-					Utils.incrementStringMapCount(ing_tkn_counts_, Utils.stem(arg_tkn));
-					num_tkns_in_ing_phrases_++;
-				}
-				
-				for (String span : ing_arg.nonIngredientSpans()) {
-					if (span.trim().equals("")) {
-						continue;
-					}
-					ActionNode origin = gi.getOrigin(node, ing_arg, span);
-					if (origin == null) {
-						String[] span_tkns = span.split(" ");
-						for (String span_tkn : span_tkns) {
-							if (!Utils.isMostlyNounInWordNet(span_tkn)) {
-								 continue;
-							}
-//							if (Utils.stem(span_tkn).equals("ingredi")) {
-//								System.out.println(ad.recipeName());
-//								System.exit(1);
-//							}
-							Utils.incrementStringMapCount(raw_ing_tkn_counts_, Utils.stem(span_tkn));
-						}
-					} else {
-						String[] span_tkns = span.split(" ");
-						for (String span_tkn : span_tkns) {
-							if (!Utils.isMostlyNounInWordNet(span_tkn)) {
-								 continue;
-							}
-							Utils.incrementStringMapCount(mix_ing_tkn_counts_, Utils.stem(span_tkn));
-						}
-					}
-				}
-				for (String span : ing_arg.ingredientSpans()) {
-					String[] span_tkns = span.split(" ");
-					for (String span_tkn : span_tkns) {
-						if (!Utils.isMostlyNounInWordNet(span_tkn)) {
-							 continue;
-						}
-						Utils.incrementStringMapCount(raw_ing_tkn_counts_, Utils.stem(span_tkn));
-					}
-				}
-			}
-			if (pref.loc != null) {
-				String loc_str = pref.loc.string();
-				if (!pref.loc.string().equals("")) {
-					String[] arg_tkns = loc_str.split(" ");
-					String arg_tkn = arg_tkns[arg_tkns.length - 1];
-//						if (arg_tkn.trim().equals("")) {
-//							continue;
-//						}
-//						if (!Utils.isMostlyNounInWordNet(arg_tkn)) {
-//							 continue;
-//						}
-						Utils.incrementStringMapCount(loc_tkn_counts_, Utils.stem(arg_tkn));
-						num_tkns_in_loc_phrases_++;
-						Utils.incrementStringMapValueCount(verb_to_location_counts_, predicate, Utils.stem(arg_tkn));
-//					}
-				}
-			}
-			for (Argument other_arg : pref.other_args) {
-				String arg_str = other_arg.string();
-				if (other_arg.string().equals("")) {
-					continue;
-				}
-				String[] arg_tkns = arg_str.split(" ");
-				for (String arg_tkn : arg_tkns) {
-					if (arg_tkn.trim().equals("")) {
-						continue;
-					}
-					if (!Utils.isMostlyNounInWordNet(arg_tkn)) {
-						 continue;
-					}
-					Utils.incrementStringMapCount(noning_tkn_counts_, Utils.stem(arg_tkn));
-					num_tkns_in_noning_phrases_++;
-				}
-			}
-		}
-	}
-
 	private static void populateHashMap(BufferedReader br, int num_entries, Map<String, Integer> map) throws IOException {
 		for (int i = 0; i < num_entries; i++) {
 			String line = br.readLine();
@@ -713,6 +652,75 @@ public class ThreeWayStringClassifier {
 	public int total_raw_cnt = 0;
 	public int total_mix_cnt = 0;
 
+	public static ThreeWayStringClassifier readFromBundle(ModelBundle.Reader reader, String section) throws IOException {
+		reader.beginSection(section);
+		ThreeWayStringClassifier identifier = new ThreeWayStringClassifier();
+		identifier.alpha = reader.readDouble();
+
+		reader.readStringIntMap(identifier.ing_tkn_counts_);
+		identifier.tokens_.addAll(identifier.ing_tkn_counts_.keySet());
+		identifier.num_tkns_in_ing_phrases_ = reader.readInt();
+		identifier.num_ing_phrases_ = reader.readInt();
+
+		reader.readStringIntMap(identifier.noning_tkn_counts_);
+		identifier.tokens_.addAll(identifier.noning_tkn_counts_.keySet());
+		identifier.num_tkns_in_noning_phrases_ = reader.readInt();
+		identifier.num_noning_phrases_ = reader.readInt();
+
+		reader.readStringIntMap(identifier.loc_tkn_counts_);
+		identifier.tokens_.addAll(identifier.loc_tkn_counts_.keySet());
+		identifier.num_tkns_in_loc_phrases_ = reader.readInt();
+		identifier.num_loc_phrases_ = reader.readInt();
+
+		reader.readStringIntMap(identifier.verb_counts_);
+		identifier.predicate_tokens_.addAll(identifier.verb_counts_.keySet());
+
+		int num_entries = reader.readInt();
+		for (int j = 0; j < num_entries; j++) {
+			String verb = reader.readString();
+			Map<String, Integer> location_counts = new HashMap<String, Integer>();
+			reader.readStringIntMap(location_counts);
+			identifier.verb_to_location_counts_.put(verb, location_counts);
+		}
+
+		identifier.raw_ing_tkn_counts_ = new HashMap<String, Integer>();
+		reader.readStringIntMap(identifier.raw_ing_tkn_counts_);
+		for (Integer cnt : identifier.raw_ing_tkn_counts_.values()) {
+			identifier.total_raw_cnt += cnt;
+		}
+
+		identifier.mix_ing_tkn_counts_ = new HashMap<String, Integer>();
+		reader.readStringIntMap(identifier.mix_ing_tkn_counts_);
+		for (Integer cnt : identifier.mix_ing_tkn_counts_.values()) {
+			identifier.total_mix_cnt += cnt;
+		}
+
+		identifier.initialized = true;
+		return identifier;
+	}
+
+	public void writeToBundle(ModelBundle.Writer writer, String section) throws IOException {
+		writer.beginSection(section);
+		writer.writeDouble(alpha);
+		writer.writeStringIntMap(ing_tkn_counts_);
+		writer.writeInt(num_tkns_in_ing_phrases_);
+		writer.writeInt(num_ing_phrases_);
+		writer.writeStringIntMap(noning_tkn_counts_);
+		writer.writeInt(num_tkns_in_noning_phrases_);
+		writer.writeInt(num_noning_phrases_);
+		writer.writeStringIntMap(loc_tkn_counts_);
+		writer.writeInt(num_tkns_in_loc_phrases_);
+		writer.writeInt(num_loc_phrases_);
+		writer.writeStringIntMap(verb_counts_);
+		writer.writeInt(verb_to_location_counts_.size());
+		for (Map.Entry<String, Map<String, Integer>> entry : verb_to_location_counts_.entrySet()) {
+			writer.writeString(entry.getKey());
+			writer.writeStringIntMap(entry.getValue());
+		}
+		writer.writeStringIntMap(raw_ing_tkn_counts_ == null ? new HashMap<String, Integer>() : raw_ing_tkn_counts_);
+		writer.writeStringIntMap(mix_ing_tkn_counts_ == null ? new HashMap<String, Integer>() : mix_ing_tkn_counts_);
+	}
+
 	public void writeToFile(String filename) throws IOException {
 		BufferedWriter bw = new BufferedWriter(new FileWriter(filename));
 		bw.write(alpha + "\n");
@@ -775,6 +783,7 @@ public class ThreeWayStringClassifier {
 		double total = Math.log(total_mix_cnt + total_raw_cnt);
 		double raw = Math.log(total_raw_cnt) - total;
 		double mix = Math.log(total_mix_cnt) - total;
+		TokenTables tables = tables();
 		
 		String[] split = phrase.split(" ");
 		for (String s : split) {
@@ -784,11 +793,12 @@ public class ThreeWayStringClassifier {
 			if (stem) {
 				s = Utils.stem(s);
 			}
-			Integer raw_cnt = raw_ing_tkn_counts_.get(s);
-			Integer mix_cnt = mix_ing_tkn_counts_.get(s);
+			int id = SymbolTable.GLOBAL.id(s);
+			double raw_cnt = tables.raw_counts.get(id, -1);
+			double mix_cnt = tables.mix_counts.get(id, -1);
 //			System.out.println(raw_cnt + " " + mix_cnt);
-			if (raw_cnt == null) {
-				if (mix_cnt == null) {
+			if (raw_cnt == -1) {
+				if (mix_cnt == -1) {
 					raw += Math.log(0.5);
 					mix += Math.log(0.5);
 				} else {
@@ -800,7 +810,7 @@ public class ThreeWayStringClassifier {
 //					mix += 0.0;
 				}
 			} else {
-				if (mix_cnt == null) {
+				if (mix_cnt == -1) {
 					double denom = Math.log((2.0*alpha) + raw_cnt);
 					raw += Math.log(alpha + raw_cnt) - denom;
 					mix += Math.log(alpha) - denom;
@@ -0,0 +1,96 @@
+package utils;
+
+import java.util.Arrays;
+
+/***
+ * Open-addressing hash map from int keys (>= 0) to doubles, with no boxing.
+ * Not synchronized; the scoring models fill one when they build their tables and only read it after.
+ */
+public class IntDoubleMap {
+	private static final int EMPTY = -1;
+
+	private int[] keys_;
+	private double[] values_;
+	private int size_ = 0;
+
+	public IntDoubleMap() {
+		this(8);
+	}
+
+	public IntDoubleMap(int expected_size) {
+		int capacity = 8;
+		while (capacity < 2 * expected_size) {
+			capacity *= 2;
+		}
+		keys_ = new int[capacity];
+		Arrays.fill(keys_, EMPTY);
+		values_ = new double[capacity];
+	}
+
+	public int size() {
+		return size_;
+	}
+
+	private int slot(int key) {
+		int h = key * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & (keys_.length - 1);
+	}
+
+	public boolean containsKey(int key) {
+		if (key < 0) {
+			return false;
+		}
+		for (int i = slot(key); ; i = (i + 1) & (keys_.length - 1)) {
+			if (keys_[i] == key) {
+				return true;
+			}
+			if (keys_[i] == EMPTY) {
+				return false;
+			}
+		}
+	}
+
+	// Value of the key, or missing if the key is not in the map.
+	public double get(int key, double missing) {
+		if (key < 0) {
+			return missing;
+		}
+		for (int i = slot(key); ; i = (i + 1) & (keys_.length - 1)) {
+			if (keys_[i] == key) {
+				return values_[i];
+			}
+			if (keys_[i] == EMPTY) {
+				return missing;
+			}
+		}
+	}
+
+	public void put(int key, double value) {
+		if (2 * (size_ + 1) > keys_.length) {
+			grow();
+		}
+		int i = slot(key);
+		while (keys_[i] != EMPTY && keys_[i] != key) {
+			i = (i + 1) & (keys_.length - 1);
+		}
+		if (keys_[i] == EMPTY) {
+			keys_[i] = key;
+			size_++;
+		}
+		values_[i] = value;
+	}
+
+	private void grow() {
+		int[] old_keys = keys_;
+		double[] old_values = values_;
+		keys_ = new int[2 * old_keys.length];
+		Arrays.fill(keys_, EMPTY);
+		values_ = new double[keys_.length];
+		size_ = 0;
+		for (int i = 0; i < old_keys.length; i++) {
+			if (old_keys[i] != EMPTY) {
+				put(old_keys[i], old_values[i]);
+			}
+		}
+	}
+}
@@ -361,14 +361,34 @@ public class Stemmer
       i_end = k+1; i = 0;
    }
    
+   /**
+    * Clears the word being stemmed.
+    */
+   public void reset() { i = 0; i_end = 0; }
+
+   /* one stemmer per thread, reused by stemWord */
+   private static final ThreadLocal<Stemmer> local_stemmer = new ThreadLocal<Stemmer>() {
+	   protected Stemmer initialValue() {
+		   return new Stemmer();
+	   }
+   };
+
+   /**
+    * Stem of a word, or the word itself if it has a character that is not a letter. Uses the
+    * calling thread's stemmer, so it is safe to call from several threads and only allocates
+    * the result.
+    */
    public static String stemWord(String word) {
-	   Stemmer s = new Stemmer();
-	   for (int c = 0; c < word.length(); c++) {
-		   int ch = word.charAt(c);
-		   if (!Character.isLetter((char) ch)) {
+	   int len = word.length();
+	   for (int c = 0; c < len; c++) {
+		   if (!Character.isLetter(word.charAt(c))) {
 			   return word;
 		   }
-		   s.add((char) ch);
+	   }
+	   Stemmer s = local_stemmer.get();
+	   s.reset();
+	   for (int c = 0; c < len; c++) {
+		   s.add(word.charAt(c));
 	   }
 	   s.stem();
 	   return s.toString();	         
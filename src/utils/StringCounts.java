@@ -0,0 +1,160 @@
+package utils;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/***
+ * Counts keyed by string, with a fixed number of int columns per key, kept in one int array
+ * indexed by the id of the key. Ids are given in the order keys are first counted, so merging,
+ * iterating and serializing follow that order and not the string hashes.
+ * Not synchronized; each thread or process counts into its own and they are merged after.
+ */
+public class StringCounts {
+	private final int width_;
+	private Map<String, Integer> ids_ = new HashMap<String, Integer>();
+	private List<String> keys_ = new ArrayList<String>();
+	private int[] counts_;
+
+	public StringCounts() {
+		this(1);
+	}
+
+	public StringCounts(int width) {
+		width_ = width;
+		counts_ = new int[8 * width];
+	}
+
+	public int width() {
+		return width_;
+	}
+
+	public int size() {
+		return keys_.size();
+	}
+
+	public String key(int id) {
+		return keys_.get(id);
+	}
+
+	// Id of the key, or -1 if it has not been counted.
+	public int id(String key) {
+		Integer id = ids_.get(key);
+		if (id == null) {
+			return -1;
+		}
+		return id;
+	}
+
+	public boolean containsKey(String key) {
+		return ids_.containsKey(key);
+	}
+
+	private int intern(String key) {
+		Integer id = ids_.get(key);
+		if (id != null) {
+			return id;
+		}
+		int new_id = keys_.size();
+		keys_.add(key);
+		ids_.put(key, new_id);
+		if ((new_id + 1) * width_ > counts_.length) {
+			counts_ = Arrays.copyOf(counts_, 2 * counts_.length);
+		}
+		return new_id;
+	}
+
+	public void increment(String key) {
+		increment(key, 0, 1);
+	}
+
+	public void increment(String key, int column) {
+		increment(key, column, 1);
+	}
+
+	public void increment(String key, int column, int num) {
+		int id = intern(key);
+		counts_[id * width_ + column] += num;
+	}
+
+	public int get(int id, int column) {
+		return counts_[id * width_ + column];
+	}
+
+	// Count of the key in the column, 0 if the key has not been counted.
+	public int get(String key, int column) {
+		int id = id(key);
+		if (id == -1) {
+			return 0;
+		}
+		return get(id, column);
+	}
+
+	public int get(String key) {
+		return get(key, 0);
+	}
+
+	// Copy of the counts of the key, or null if it has not been counted.
+	public int[] row(String key) {
+		int id = id(key);
+		if (id == -1) {
+			return null;
+		}
+		return Arrays.copyOfRange(counts_, id * width_, (id + 1) * width_);
+	}
+
+	// The first column as a map, for the models that are keyed by string.
+	public Map<String, Integer> toMap() {
+		Map<String, Integer> map = new HashMap<String, Integer>();
+		for (int id = 0; id < keys_.size(); id++) {
+			map.put(keys_.get(id), counts_[id * width_]);
+		}
+		return map;
+	}
+
+	// Adds the counts of other; its new keys get ids after these.
+	public void merge(StringCounts other) {
+		for (int other_id = 0; other_id < other.keys_.size(); other_id++) {
+			int id = intern(other.keys_.get(other_id));
+			for (int c = 0; c < width_; c++) {
+				counts_[id * width_ + c] += other.counts_[other_id * width_ + c];
+			}
+		}
+	}
+
+	public void serialize(DataOutputStream out) throws IOException {
+		out.writeInt(width_);
+		out.writeInt(keys_.size());
+		for (int id = 0; id < keys_.size(); id++) {
+			Utils.writeString(out, keys_.get(id));
+			for (int c = 0; c < width_; c++) {
+				out.writeInt(counts_[id * width_ + c]);
+			}
+		}
+	}
+
+	// Replaces the counts with those written by serialize().
+	public void deserialize(DataInputStream in) throws IOException {
+		int width = in.readInt();
+		if (width != width_) {
+			throw new IOException("Counts have " + width + " columns, expected " + width_);
+		}
+		int size = in.readInt();
+		ids_ = new HashMap<String, Integer>(2 * size);
+		keys_ = new ArrayList<String>(size);
+		counts_ = new int[Math.max(8, size) * width_];
+		for (int id = 0; id < size; id++) {
+			String key = Utils.readString(in);
+			keys_.add(key);
+			ids_.put(key, id);
+			for (int c = 0; c < width_; c++) {
+				counts_[id * width_ + c] = in.readInt();
+			}
+		}
+	}
+}
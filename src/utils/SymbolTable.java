@@ -0,0 +1,69 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/***
+ * Shared table of int ids for the strings the scoring models are keyed by (predicates, stems,
+ * preference types, mixture tokens). Models intern their keys when they build their tables, so
+ * scoring can look a string up once and index primitive tables with the id.
+ * Lookups are safe from any thread; interning is synchronized. Lookups never intern: a string
+ * no model has interned gets the UNK id, which indexes no table.
+ */
+public class SymbolTable {
+	public static final SymbolTable GLOBAL = new SymbolTable();
+
+	public static final int UNK = -1;
+
+	private ConcurrentHashMap<String, Integer> ids_ = new ConcurrentHashMap<String, Integer>();
+	private List<String> symbols_ = new ArrayList<String>();
+
+	// Id of the string, or UNK if it has not been interned.
+	public int id(String symbol) {
+		Integer id = ids_.get(symbol);
+		if (id == null) {
+			return UNK;
+		}
+		return id;
+	}
+
+	// Ids of the strings, in order.
+	public int[] ids(String[] symbols) {
+		int[] ids = new int[symbols.length];
+		for (int i = 0; i < symbols.length; i++) {
+			ids[i] = id(symbols[i]);
+		}
+		return ids;
+	}
+
+	// Ids of the strings, in iteration order.
+	public int[] ids(Collection<String> symbols) {
+		int[] ids = new int[symbols.size()];
+		int i = 0;
+		for (String symbol : symbols) {
+			ids[i++] = id(symbol);
+		}
+		return ids;
+	}
+
+	public synchronized int intern(String symbol) {
+		Integer id = ids_.get(symbol);
+		if (id != null) {
+			return id;
+		}
+		int new_id = symbols_.size();
+		symbols_.add(symbol);
+		ids_.put(symbol, new_id);
+		return new_id;
+	}
+
+	public synchronized String symbol(int id) {
+		return symbols_.get(id);
+	}
+
+	public int size() {
+		return ids_.size();
+	}
+}
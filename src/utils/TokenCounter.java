@@ -13,7 +13,8 @@ import preprocessing.Lemmatizer;
 
 public class TokenCounter {
 
-	public static Lemmatizer lemmatizer_ = new Lemmatizer();
+	// loads the CoreNLP tagger models, so it is only created when tokens are first tagged
+	private static volatile Lemmatizer lemmatizer_ = null;
 	public static Map<String, Integer> token_counts_ = null; //new HashMap<String, Integer>();
 	public static Set<String> nouns_ = null; //new HashSet<String>();
 
@@ -39,10 +40,21 @@ public class TokenCounter {
 	
 	// nouns, adjectives, verbs
 	private static boolean nva_only_ = true;
+
+	public static Lemmatizer lemmatizer() {
+		if (lemmatizer_ == null) {
+			synchronized (TokenCounter.class) {
+				if (lemmatizer_ == null) {
+					lemmatizer_ = new Lemmatizer();
+				}
+			}
+		}
+		return lemmatizer_;
+	}
 	
 	public static Pair<List<String>, List<String>> addTokens(String str) {
 		str = str.trim();
-		Pair<List<String>, List<String>> tagsAndTokens = lemmatizer_.tagAndTokenize(str);
+		Pair<List<String>, List<String>> tagsAndTokens = lemmatizer().tagAndTokenize(str);
 		List<String> tags = tagsAndTokens.getFirst();
 		List<String> tokens = tagsAndTokens.getSecond();
 //		System.out.println(tagsAndTokens);
@@ -95,7 +107,7 @@ public class TokenCounter {
 	public static Set<String> extractImportantTokens(String str) {
 		Set<String> important_tokens = new HashSet<String>();
 		str = str.trim();
-		Pair<List<String>, List<String>> tagsAndTokens = lemmatizer_.tagAndTokenize(str);
+		Pair<List<String>, List<String>> tagsAndTokens = lemmatizer().tagAndTokenize(str);
 		List<String> tags = tagsAndTokens.getFirst();
 		List<String> tokens = tagsAndTokens.getSecond();
 		
@@ -2,6 +2,8 @@ package utils;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
@@ -11,8 +13,11 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
 
 import preprocessing.Lemmatizer;
 import data.ProjectParameters;
@@ -31,11 +36,52 @@ public class Utils {
 			+ "cooled|chopp ed|sliced|boiled|large|small|big|medium|and|or|in|at|taste|minute|minutes|hour|hours|with|by|from|on|up|no|yes|cup|cups";
 	//	public static String ignoredRegex = "";
 
-	public static Lemmatizer lemmatizer_ = new Lemmatizer();
+	// loads the CoreNLP parser models, so it is only created when a tag is first asked for
+	private static volatile Lemmatizer lemmatizer_ = null;
 	static {
 		System.setProperty("wordnet.database.dir", "/usr/local/WordNet-3.0/dict");
 	}
 	private static WordNetDatabase database = WordNetDatabase.getFileInstance();
+	// JAWS reads the database files through shared readers, so lookups are made one at a time
+	private static final Object database_lock_ = new Object();
+
+	// answers the WordNet predicates for the words it has; the others go to the database
+	public static boolean USE_WORDNET_LEXICON = true;
+	private static volatile WordNetLexicon lexicon_ = null;
+	private static volatile boolean lexicon_loaded_ = false;
+
+	// memo of stem(), shared by all threads. Words are split by hash into STEM_CACHE_STRIPES
+	// stripes, each locked on its own and holding at most its share of STEM_CACHE_SIZE words;
+	// a full stripe drops its least recently used word.
+	public static int STEM_CACHE_SIZE = 200000;
+	private static final int STEM_CACHE_STRIPES = 16;
+	private static final StemCacheStripe[] stem_cache_ = new StemCacheStripe[STEM_CACHE_STRIPES];
+	static {
+		for (int i = 0; i < STEM_CACHE_STRIPES; i++) {
+			stem_cache_[i] = new StemCacheStripe();
+		}
+	}
+	private static LongAdder stem_cache_hits_ = new LongAdder();
+	private static LongAdder stem_cache_misses_ = new LongAdder();
+
+	private static class StemCacheStripe extends LinkedHashMap<String, String> {
+		private static final long serialVersionUID = 1L;
+
+		public StemCacheStripe() {
+			super(16, 0.75f, true);
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+			return size() > Math.max(1, STEM_CACHE_SIZE / STEM_CACHE_STRIPES);
+		}
+	}
+
+	private static StemCacheStripe stemCacheStripe(String word) {
+		int h = word.hashCode();
+		h ^= (h >>> 16);
+		return stem_cache_[(h & 0x7fffffff) % STEM_CACHE_STRIPES];
+	}
 
 	/**
 	 * Returns the number of words that overlap between two strings.
@@ -54,7 +100,7 @@ public class Utils {
 		str1 = str1.toLowerCase();
 		Pair<String, String> remove_amounts = Measurements.splitAmountString(str1);
 		str1 = remove_amounts.getSecond();
-		Pair<List<String>, List<String>> tagsAndTokens = lemmatizer_.tagAndTokenize(str1);
+		Pair<List<String>, List<String>> tagsAndTokens = lemmatizer().tagAndTokenize(str1);
 		String new_ingredient_str = "";
 		List<String> tags = tagsAndTokens.getFirst();
 		List<String> tokens = tagsAndTokens.getSecond();
@@ -68,7 +114,7 @@ public class Utils {
 		str2 = str2.toLowerCase();
 		remove_amounts = Measurements.splitAmountString(str2);
 		str2 = remove_amounts.getSecond();
-		tagsAndTokens = lemmatizer_.tagAndTokenize(str2);
+		tagsAndTokens = lemmatizer().tagAndTokenize(str2);
 		new_ingredient_str = "";
 		tags = tagsAndTokens.getFirst();
 		tokens = tagsAndTokens.getSecond();
@@ -163,6 +209,55 @@ public class Utils {
 		incrementStringMapCount(inner_map, inner_key, num);
 	}
 
+	// Binary counts for checkpoints. Strings are an int length and UTF-8, so they may be longer
+	// than writeUTF allows. Maps and sets are read back into HashMaps and HashSets in the order
+	// they were written.
+	public static void writeString(DataOutputStream out, String s) throws IOException {
+		byte[] bytes = s.getBytes("UTF-8");
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	public static String readString(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, "UTF-8");
+	}
+
+	public static void writeStringSet(DataOutputStream out, Set<String> set) throws IOException {
+		out.writeInt(set.size());
+		for (String s : set) {
+			writeString(out, s);
+		}
+	}
+
+	public static Set<String> readStringSet(DataInputStream in) throws IOException {
+		int size = in.readInt();
+		Set<String> set = new HashSet<String>();
+		for (int i = 0; i < size; i++) {
+			set.add(readString(in));
+		}
+		return set;
+	}
+
+	public static void writeStringMapCounts(DataOutputStream out, Map<String, Integer> map) throws IOException {
+		out.writeInt(map.size());
+		for (Map.Entry<String, Integer> entry : map.entrySet()) {
+			writeString(out, entry.getKey());
+			out.writeInt(entry.getValue());
+		}
+	}
+
+	public static Map<String, Integer> readStringMapCounts(DataInputStream in) throws IOException {
+		int size = in.readInt();
+		Map<String, Integer> map = new HashMap<String, Integer>();
+		for (int i = 0; i < size; i++) {
+			String key = readString(in);
+			map.put(key, in.readInt());
+		}
+		return map;
+	}
+
 	public static void incrementIntMapValueCount(Map<String, Map<Integer, Integer>> map, 
 			String outer_key, Integer inner_key) {
 		Map<Integer, Integer> inner_map = map.get(outer_key);
@@ -659,7 +754,7 @@ public class Utils {
 		str1 = str1.toLowerCase();
 		Pair<String, String> remove_amounts = Measurements.splitAmountString(str1);
 		str1 = remove_amounts.getSecond();
-		Pair<List<String>, List<String>> tagsAndTokens = lemmatizer_.tagAndTokenize(str1);
+		Pair<List<String>, List<String>> tagsAndTokens = lemmatizer().tagAndTokenize(str1);
 		String new_ingredient_str = "";
 		List<String> tags = tagsAndTokens.getFirst();
 		List<String> tokens = tagsAndTokens.getSecond();
@@ -673,7 +768,7 @@ public class Utils {
 		str2 = str2.toLowerCase();
 		remove_amounts = Measurements.splitAmountString(str2);
 		str2 = remove_amounts.getSecond();
-		tagsAndTokens = lemmatizer_.tagAndTokenize(str2);
+		tagsAndTokens = lemmatizer().tagAndTokenize(str2);
 		new_ingredient_str = "";
 		tags = tagsAndTokens.getFirst();
 		tokens = tagsAndTokens.getSecond();
@@ -785,35 +880,147 @@ public class Utils {
 		}
 	}
 
-	public static boolean canWordBeVerbInWordNet(String word) {
-		Synset[] synsets = database.getSynsets(word, SynsetType.VERB);
-		if (synsets.length == 0) {
-			return false;
-		} else {
-			return true;
+	// Reads DEFAULT_DATA_DIRECTORY + WORDNET_LEXICON_FILE the first time it is needed. Without
+	// it every predicate goes to the database.
+	private static WordNetLexicon lexicon() {
+		if (!lexicon_loaded_) {
+			synchronized (Utils.class) {
+				if (!lexicon_loaded_) {
+					String filename = ProjectParameters.DEFAULT_DATA_DIRECTORY + ProjectParameters.WORDNET_LEXICON_FILE;
+					if (USE_WORDNET_LEXICON && new File(filename).exists()) {
+						try {
+							lexicon_ = WordNetLexicon.readFromFile(filename);
+						} catch (IOException ex) {
+							ex.printStackTrace();
+							System.exit(1);
+						}
+					}
+					lexicon_loaded_ = true;
+				}
+			}
+		}
+		return lexicon_;
+	}
+
+	public static Lemmatizer lemmatizer() {
+		if (lemmatizer_ == null) {
+			synchronized (Utils.class) {
+				if (lemmatizer_ == null) {
+					lemmatizer_ = new Lemmatizer();
+				}
+			}
+		}
+		return lemmatizer_;
+	}
+
+	public static synchronized void setWordNetLexicon(WordNetLexicon lexicon) {
+		lexicon_ = lexicon;
+		lexicon_loaded_ = true;
+	}
+
+	// Id of the word in the lexicon, or -1 if it has to be looked up in the database. The lexicon
+	// is read once by the caller, so all its lookups of a word go to the same lexicon.
+	private static int lexiconId(WordNetLexicon lexicon, String word) {
+		if (lexicon == null) {
+			return -1;
+		}
+		return lexicon.id(word);
+	}
+
+	private static int numSynsets(String word, int pos) {
+		WordNetLexicon lexicon = lexicon();
+		return numSynsets(lexicon, lexiconId(lexicon, word), word, pos);
+	}
+
+	private static int numSynsets(WordNetLexicon lexicon, int lexicon_id, String word, int pos) {
+		if (lexicon_id != -1) {
+			return lexicon.numSynsets(lexicon_id, pos);
+		}
+		switch (pos) {
+		case WordNetLexicon.NOUN:
+			return numSynsetsInWordNet(word, SynsetType.NOUN);
+		case WordNetLexicon.VERB:
+			return numSynsetsInWordNet(word, SynsetType.VERB);
+		case WordNetLexicon.ADJECTIVE:
+			return numSynsetsInWordNet(word, SynsetType.ADJECTIVE);
+		case WordNetLexicon.ADVERB:
+			return numSynsetsInWordNet(word, SynsetType.ADVERB);
+		default:
+			return numSynsetsInWordNet(word, null);
+		}
+	}
+
+	// Synsets of the word of the given type (all types if null) in the database.
+	static int numSynsetsInWordNet(String word, SynsetType type) {
+		synchronized (database_lock_) {
+			if (type == null) {
+				return database.getSynsets(word).length;
+			}
+			return database.getSynsets(word, type).length;
+		}
+	}
+
+	static String[] baseNounsInWordNet(String word) {
+		synchronized (database_lock_) {
+			return database.getBaseFormCandidates(word, SynsetType.NOUN);
 		}
+	}
 
+	public static boolean canWordBeVerbInWordNet(String word) {
+		return numSynsets(word, WordNetLexicon.VERB) != 0;
 	}
 
 	public static String[] getBaseNoun(String word) {
-		return database.getBaseFormCandidates(word, SynsetType.NOUN);
+		WordNetLexicon lexicon = lexicon();
+		int id = lexiconId(lexicon, word);
+		if (id != -1) {
+			return lexicon.baseNouns(id);
+		}
+		return baseNounsInWordNet(word);
 	}
 
 	public static String stem(String word) {
-		return Stemmer.stemWord(word);
+		StemCacheStripe stripe = stemCacheStripe(word);
+		String stem;
+		synchronized (stripe) {
+			stem = stripe.get(word);
+		}
+		if (stem != null) {
+			stem_cache_hits_.increment();
+			return stem;
+		}
+		stem_cache_misses_.increment();
+		// stemmed outside the lock; two threads may stem the same word, with the same result
+		stem = Stemmer.stemWord(word);
+		synchronized (stripe) {
+			stripe.put(word, stem);
+		}
+		return stem;
 	}
 
-	public static boolean canWordBeNounInWordNet(String word) {
-		Synset[] synsets = database.getSynsets(word, SynsetType.NOUN);
-		if (synsets.length == 0) {
-			//			synsets = database.getSynsets(word);
-			//			if (synsets.length == 0) {
-			//				return true;
-			//			}
-			return false;
-		} else {
-			return true;
+	public static String stemCacheStats() {
+		int size = 0;
+		for (StemCacheStripe stripe : stem_cache_) {
+			synchronized (stripe) {
+				size += stripe.size();
+			}
+		}
+		return "stem cache: " + size + " words, " + stem_cache_hits_.sum() + " hits, " +
+				stem_cache_misses_.sum() + " misses";
+	}
+
+	public static void clearStemCache() {
+		for (StemCacheStripe stripe : stem_cache_) {
+			synchronized (stripe) {
+				stripe.clear();
+			}
 		}
+		stem_cache_hits_.reset();
+		stem_cache_misses_.reset();
+	}
+
+	public static boolean canWordBeNounInWordNet(String word) {
+		return numSynsets(word, WordNetLexicon.NOUN) != 0;
 	}
 
 	public static boolean isSymbolOrWordInWordNet(String word) {
@@ -821,11 +1028,7 @@ public class Utils {
 		if (!cleaned.equals(word)) {
 			return true;
 		}
-		Synset[] synsets = database.getSynsets(word);
-		if (synsets.length == 0) {
-			return false;
-		}
-		return true;
+		return numSynsets(word, WordNetLexicon.ALL) != 0;
 	}
 
 	public static boolean isUpperCase(String word) {
@@ -841,63 +1044,54 @@ public class Utils {
 	}
 
 	public static boolean isMostlyNounInWordNet(String word) {
-		Synset[] synsets = database.getSynsets(word);
-		if (synsets.length == 0) {
+		WordNetLexicon lexicon = lexicon();
+		int id = lexiconId(lexicon, word);
+		if (numSynsets(lexicon, id, word, WordNetLexicon.ALL) == 0) {
 			return true;
 		}
-		Synset[] n_synsets = database.getSynsets(word, SynsetType.NOUN);
-		Synset[] v_synsets = database.getSynsets(word, SynsetType.VERB);
-		Synset[] a_synsets = database.getSynsets(word, SynsetType.ADJECTIVE);
-		Synset[] ad_synsets = database.getSynsets(word, SynsetType.ADVERB);
-		//		System.out.println(word + " " + n_synsets.length + " " + a_synsets.length + ad_synsets.length);
-		if (n_synsets.length != 0 && n_synsets.length > a_synsets.length && 
-				n_synsets.length > ad_synsets.length) {// && n_synsets.length > v_synsets.length) {
+		int n_synsets = numSynsets(lexicon, id, word, WordNetLexicon.NOUN);
+		int a_synsets = numSynsets(lexicon, id, word, WordNetLexicon.ADJECTIVE);
+		int ad_synsets = numSynsets(lexicon, id, word, WordNetLexicon.ADVERB);
+		//		System.out.println(word + " " + n_synsets + " " + a_synsets + ad_synsets);
+		if (n_synsets != 0 && n_synsets > a_synsets && 
+				n_synsets > ad_synsets) {// && n_synsets > v_synsets) {
 			return true;
 		}
 		return false;
 	}
 
 	public static boolean isMostlyAdjectiveInWordNet(String word) {
-		Synset[] synsets = database.getSynsets(word);
-		if (synsets.length == 0) {
+		WordNetLexicon lexicon = lexicon();
+		int id = lexiconId(lexicon, word);
+		if (numSynsets(lexicon, id, word, WordNetLexicon.ALL) == 0) {
 			return true;
 		}
-		Synset[] n_synsets = database.getSynsets(word, SynsetType.NOUN);
-		Synset[] v_synsets = database.getSynsets(word, SynsetType.VERB);
-		Synset[] a_synsets = database.getSynsets(word, SynsetType.ADJECTIVE);
-		Synset[] ad_synsets = database.getSynsets(word, SynsetType.ADVERB);
-		//		System.out.println(word + " " + n_synsets.length + " " + a_synsets.length + ad_synsets.length);
-		if (a_synsets.length != 0 && a_synsets.length > n_synsets.length && 
-				a_synsets.length > ad_synsets.length && a_synsets.length > v_synsets.length) {
+		int n_synsets = numSynsets(lexicon, id, word, WordNetLexicon.NOUN);
+		int v_synsets = numSynsets(lexicon, id, word, WordNetLexicon.VERB);
+		int a_synsets = numSynsets(lexicon, id, word, WordNetLexicon.ADJECTIVE);
+		int ad_synsets = numSynsets(lexicon, id, word, WordNetLexicon.ADVERB);
+		//		System.out.println(word + " " + n_synsets + " " + a_synsets + ad_synsets);
+		if (a_synsets != 0 && a_synsets > n_synsets && 
+				a_synsets > ad_synsets && a_synsets > v_synsets) {
 			return true;
 		}
 		return false;
 	}
 
 	public static boolean isAdverb(String word) {
-		Synset[] a_synsets = database.getSynsets(word, SynsetType.ADVERB);
-		if (a_synsets.length != 0) {
-			return true;
-		}
-		return false;
+		return numSynsets(word, WordNetLexicon.ADVERB) != 0;
 	}
 
 	public static boolean canWordBeNounOrAdjInWordNet(String word) {
-		Synset[] synsets = database.getSynsets(word, SynsetType.NOUN);
-		if (synsets.length == 0) {
-			synsets = database.getSynsets(word, SynsetType.ADJECTIVE);
-			if (synsets.length == 0) {
-				synsets = database.getSynsets(word);
-				if (synsets.length == 0 && word.length() > 3) {
-					return true;
-				}
-				return false;
-			} else {
-				return true;
-			}
-		} else {
+		WordNetLexicon lexicon = lexicon();
+		int id = lexiconId(lexicon, word);
+		if (numSynsets(lexicon, id, word, WordNetLexicon.NOUN) != 0) {
 			return true;
 		}
+		if (numSynsets(lexicon, id, word, WordNetLexicon.ADJECTIVE) != 0) {
+			return true;
+		}
+		return numSynsets(lexicon, id, word, WordNetLexicon.ALL) == 0 && word.length() > 3;
 	}
 
 	public static boolean canWordBeNounOrAdjOrVerbInWordNet(String word) {
@@ -905,45 +1099,56 @@ public class Utils {
 	}
 	
 	public static boolean goodVerb(String word) {
-		Synset[] w = database.getSynsets(word, SynsetType.VERB);
-		boolean is_first = false;
-		for (Synset s : w) {
-			String[] words = s.getWordForms();
-			if (words[0].equals(word)) {
-				is_first = true;
-				break;
-			}
+		WordNetLexicon lexicon = lexicon();
+		int id = lexiconId(lexicon, word);
+		if (id != -1) {
+			return lexicon.goodVerb(id);
 		}
-		if (!is_first) {
-			for (Synset s : w) {
+		return goodVerbInWordNet(word);
+	}
 
+	static boolean goodVerbInWordNet(String word) {
+		synchronized (database_lock_) {
+			Synset[] w = database.getSynsets(word, SynsetType.VERB);
+			boolean is_first = false;
+			for (Synset s : w) {
 				String[] words = s.getWordForms();
-				boolean all_zero = true;
-				for (String word_form : words) {
+				if (words[0].equals(word)) {
+					is_first = true;
+					break;
+				}
+			}
+			if (!is_first) {
+				for (Synset s : w) {
+
+					String[] words = s.getWordForms();
+					boolean all_zero = true;
+					for (String word_form : words) {
+						try {
+							int cnt = s.getTagCount(word_form);
+							if (cnt != 0) {
+								all_zero = false;
+								break;
+							}
+						} catch (Exception e) {
+
+						}
+					}
 					try {
-						int cnt = s.getTagCount(word_form);
-						if (cnt != 0) {
-							all_zero = false;
+						int cnt = s.getTagCount(word);
+						if (cnt != 0 || all_zero) {
+							is_first = true;
 							break;
 						}
 					} catch (Exception e) {
-
 					}
 				}
-				try {
-					int cnt = s.getTagCount(word);
-					if (cnt != 0 || all_zero) {
-						is_first = true;
-						break;
-					}
-				} catch (Exception e) {
-				}
 			}
-		}
-		if (!is_first) {
-			return false;
-		} else {
-			return true;
+			if (!is_first) {
+				return false;
+			} else {
+				return true;
+			}
 		}
 	}
 
@@ -952,15 +1157,15 @@ public class Utils {
 		System.out.println(Utils.logsumexp(arr));
 		System.out.println(Math.log(Math.exp(2) + Math.exp(3) + Math.exp(200000)));
 
-		System.out.println(lemmatizer_.tag("flour"));
-		System.out.println(lemmatizer_.tag("combine"));
-		System.out.println(lemmatizer_.tag("salt"));
-		System.out.println(lemmatizer_.tag("stir"));
-		System.out.println(lemmatizer_.tag("whisk"));
-		System.out.println(lemmatizer_.tag("add"));
-		System.out.println(lemmatizer_.tag("place"));
-		System.out.println(lemmatizer_.tag("chop"));
-		System.out.println(lemmatizer_.tag("peel"));
+		System.out.println(lemmatizer().tag("flour"));
+		System.out.println(lemmatizer().tag("combine"));
+		System.out.println(lemmatizer().tag("salt"));
+		System.out.println(lemmatizer().tag("stir"));
+		System.out.println(lemmatizer().tag("whisk"));
+		System.out.println(lemmatizer().tag("add"));
+		System.out.println(lemmatizer().tag("place"));
+		System.out.println(lemmatizer().tag("chop"));
+		System.out.println(lemmatizer().tag("peel"));
 
 		//		Synset[] synsets = database.getSynsets("sour", SynsetType.NOUN);
 		//		if (synsets == null) {
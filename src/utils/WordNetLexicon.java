@@ -0,0 +1,233 @@
+package utils;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import data.ProjectParameters;
+import edu.smu.tspell.wordnet.SynsetType;
+
+/***
+ * WordNet facts the Utils predicates need, precomputed for the words of the corpus: the number of
+ * synsets of each word by POS, whether goodVerb holds and its noun base forms. The file is
+ * memory-mapped and the entries are read from the mapped buffer. All numbers are big-endian:
+ *
+ * int MAGIC, int VERSION, int num_words, int num_strings
+ * for each string: int num_bytes, UTF-8 bytes (the words come first)
+ * int[num_words * ENTRY_SIZE] entries
+ * int num_base_forms, int[num_base_forms] string ids of the base forms
+ *
+ * To build:
+ * java WordNetLexicon lexicon_file
+ *
+ * which reads the chunked and full text recipes of every recipe type in ALL_RECIPE_TYPES.
+ */
+public class WordNetLexicon {
+	public static final int MAGIC = 0x574e4c31; // "WNL1"
+	public static final int VERSION = 1;
+
+	// synset counts by POS, indexed as in an entry
+	public static final int ALL = 0;
+	public static final int NOUN = 1;
+	public static final int VERB = 2;
+	public static final int ADJECTIVE = 3;
+	public static final int ADVERB = 4;
+	private static final int FLAGS = 5;
+	private static final int BASE_START = 6;
+	private static final int NUM_BASE = 7;
+	private static final int ENTRY_SIZE = 8;
+
+	private static final int GOOD_VERB = 1;
+
+	private static final SynsetType[] TYPES = new SynsetType[]{null, SynsetType.NOUN, SynsetType.VERB,
+		SynsetType.ADJECTIVE, SynsetType.ADVERB};
+
+	private Map<String, Integer> word_ids_;
+	private String[] strings_;
+	private IntBuffer entries_;
+	private IntBuffer base_forms_;
+
+	public static WordNetLexicon readFromFile(String filename) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(filename, "r");
+		FileChannel channel = file.getChannel();
+		ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		file.close();
+
+		if (buffer.getInt() != MAGIC) {
+			throw new IOException(filename + " is not a WordNet lexicon");
+		}
+		int version = buffer.getInt();
+		if (version != VERSION) {
+			throw new IOException(filename + " has lexicon version " + version + ", expected " + VERSION);
+		}
+		WordNetLexicon lexicon = new WordNetLexicon();
+		int num_words = buffer.getInt();
+		lexicon.strings_ = new String[buffer.getInt()];
+		lexicon.word_ids_ = new HashMap<String, Integer>(2 * num_words);
+		for (int i = 0; i < lexicon.strings_.length; i++) {
+			byte[] bytes = new byte[buffer.getInt()];
+			buffer.get(bytes);
+			lexicon.strings_[i] = new String(bytes, "UTF-8");
+			if (i < num_words) {
+				lexicon.word_ids_.put(lexicon.strings_[i], i);
+			}
+		}
+		ByteBuffer entries = buffer.slice();
+		entries.limit(num_words * ENTRY_SIZE * 4);
+		lexicon.entries_ = entries.asIntBuffer();
+		buffer.position(buffer.position() + num_words * ENTRY_SIZE * 4);
+		int num_base_forms = buffer.getInt();
+		ByteBuffer base_forms = buffer.slice();
+		base_forms.limit(num_base_forms * 4);
+		lexicon.base_forms_ = base_forms.asIntBuffer();
+		return lexicon;
+	}
+
+	public int numWords() {
+		return word_ids_.size();
+	}
+
+	// Id of the word, or -1 if it is not in the lexicon.
+	public int id(String word) {
+		Integer id = word_ids_.get(word);
+		if (id == null) {
+			return -1;
+		}
+		return id;
+	}
+
+	public int numSynsets(int id, int pos) {
+		return entries_.get(id * ENTRY_SIZE + pos);
+	}
+
+	public boolean goodVerb(int id) {
+		return (entries_.get(id * ENTRY_SIZE + FLAGS) & GOOD_VERB) != 0;
+	}
+
+	public String[] baseNouns(int id) {
+		int start = entries_.get(id * ENTRY_SIZE + BASE_START);
+		String[] base_nouns = new String[entries_.get(id * ENTRY_SIZE + NUM_BASE)];
+		for (int i = 0; i < base_nouns.length; i++) {
+			base_nouns[i] = strings_[base_forms_.get(start + i)];
+		}
+		return base_nouns;
+	}
+
+	// Looks the words up in WordNet through the same calls as the Utils predicates and writes the
+	// lexicon.
+	public static void build(Set<String> words, String filename) throws IOException {
+		Map<String, Integer> string_ids = new HashMap<String, Integer>();
+		List<String> strings = new ArrayList<String>();
+		for (String word : words) {
+			string_ids.put(word, strings.size());
+			strings.add(word);
+		}
+		int[] entries = new int[words.size() * ENTRY_SIZE];
+		List<Integer> base_forms = new ArrayList<Integer>();
+		int w = 0;
+		for (String word : words) {
+			int offset = w * ENTRY_SIZE;
+			for (int pos = ALL; pos <= ADVERB; pos++) {
+				entries[offset + pos] = Utils.numSynsetsInWordNet(word, TYPES[pos]);
+			}
+			if (Utils.goodVerbInWordNet(word)) {
+				entries[offset + FLAGS] |= GOOD_VERB;
+			}
+			String[] base_nouns = Utils.baseNounsInWordNet(word);
+			entries[offset + BASE_START] = base_forms.size();
+			entries[offset + NUM_BASE] = base_nouns.length;
+			for (String base : base_nouns) {
+				Integer id = string_ids.get(base);
+				if (id == null) {
+					id = strings.size();
+					string_ids.put(base, id);
+					strings.add(base);
+				}
+				base_forms.add(id);
+			}
+			w++;
+		}
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(words.size());
+		out.writeInt(strings.size());
+		for (String s : strings) {
+			byte[] s_bytes = s.getBytes("UTF-8");
+			out.writeInt(s_bytes.length);
+			out.write(s_bytes);
+		}
+		for (int entry : entries) {
+			out.writeInt(entry);
+		}
+		out.writeInt(base_forms.size());
+		for (Integer id : base_forms) {
+			out.writeInt(id);
+		}
+		out.close();
+
+		FileOutputStream file = new FileOutputStream(filename);
+		bytes.writeTo(file);
+		file.close();
+	}
+
+	// Tokens of the chunked and full text recipes, as written and lowercased.
+	public static Set<String> corpusVocabulary() throws IOException {
+		Set<String> words = new TreeSet<String>();
+		for (String category : ProjectParameters.ALL_RECIPE_TYPES) {
+			String[] suffixes = new String[]{ProjectParameters.CHUNKED_SUFFIX, ProjectParameters.FULLTEXT_SUFFIX};
+			for (String suffix : suffixes) {
+				String directory_name = ProjectParameters.DEFAULT_DATA_DIRECTORY + category + "/" + category + suffix + "/";
+				if (!new File(directory_name).exists()) {
+					continue;
+				}
+				for (File file : Utils.getInputFiles(directory_name, "txt")) {
+					BufferedReader br = new BufferedReader(new FileReader(file));
+					String line;
+					while ((line = br.readLine()) != null) {
+						for (String tkn : line.trim().split("\\s+")) {
+							if (tkn.equals("")) {
+								continue;
+							}
+							words.add(tkn);
+							words.add(tkn.toLowerCase());
+						}
+					}
+					br.close();
+				}
+			}
+		}
+		return words;
+	}
+
+	public static void main(String args[]) {
+		if (args.length != 1) {
+			System.out.println("Usage: WordNetLexicon lexicon_file");
+			System.exit(1);
+		}
+		try {
+			Set<String> words = corpusVocabulary();
+			System.out.println("words: " + words.size());
+			build(words, args[0]);
+		} catch (IOException ex) {
+			ex.printStackTrace();
+			System.exit(1);
+		}
+	}
+}